@@ -0,0 +1,17 @@
+package net.example;
+
+//#if mc >= 1.20 && fabric
+import net.minecraft.util.Identifier;
+//#else
+//$$ import net.minecraft.resources.ResourceLocation;
+//#endif
+
+public class Example {
+    //#if mc >= 1.21
+    //$$ public static final String VERSION = "1.21";
+    //#elseif mc >= 1.20
+    public static final String VERSION = "1.20";
+    //#else
+    //$$ public static final String VERSION = "legacy";
+    //#endif
+}
@@ -0,0 +1,4 @@
+package net.example;
+
+public class Plain {
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Synthetic, reproducible benchmark sources. The same parameters always produce the very same lines, so results can be compared across commits.
+ */
+public final class Corpus {
+    private static final long SEED = 278L;
+
+    /**
+     * the vars all generated conditions refer to
+     */
+    public static final Map<String, Object> VARS = Map.of(
+            "mc", "12004",
+            "fabric", "1",
+            "forge", "0",
+            "debug", "0"
+    );
+
+    private static final String[] CONDITIONS = {
+            "fabric",
+            "forge",
+            "mc >= 12004",
+            "mc < 11904",
+            "fabric && mc >= 12002",
+            "forge || mc == 12004",
+            "debug || forge && mc > 11802"
+    };
+
+    private static final String[] CODE = {
+            "import net.minecraft.world.entity.Entity;",
+            "final ResourceLocation id = new ResourceLocation(\"example\", \"path\");",
+            "if (entity.level().isClientSide()) {",
+            "    return InteractionResult.SUCCESS;",
+            "}",
+            "private static final Logger LOGGER = LoggerFactory.getLogger(\"example\");",
+            "// plain comment",
+            ""
+    };
+
+    private Corpus() {
+    }
+
+    /**
+     * @param lines            the amount of lines
+     * @param directiveDensity the share of lines that open an if-block
+     * @param nesting          the maximum depth of nested if-blocks
+     * @return a java-like source
+     */
+    public static @NotNull List<String> source(int lines, double directiveDensity, int nesting) {
+        Random random = new Random(SEED);
+        List<String> source = new ArrayList<>(lines + nesting * 2);
+        int depth = 0;
+        boolean elseFound = false;
+        while (source.size() < lines) {
+            String indent = "    ".repeat(depth + 1);
+            double roll = random.nextDouble();
+            if (roll < directiveDensity && depth < nesting) {
+                source.add(indent + "//#if " + CONDITIONS[random.nextInt(CONDITIONS.length)]);
+                depth++;
+                elseFound = false;
+            } else if (roll < directiveDensity * 1.5 && depth > 0 && !elseFound) {
+                source.add("    ".repeat(depth) + (random.nextBoolean() ? "//#else" : "//#elseif " + CONDITIONS[random.nextInt(CONDITIONS.length)]));
+                elseFound = true;
+            } else if (roll < directiveDensity * 2 && depth > 0) {
+                source.add("    ".repeat(depth) + "//#endif");
+                depth--;
+                elseFound = true;
+            } else if (depth > 0 && random.nextInt(4) == 0) {
+                source.add(indent + "//$$ " + CODE[random.nextInt(CODE.length)]);
+            } else {
+                source.add(indent + CODE[random.nextInt(CODE.length)]);
+            }
+        }
+        while (depth > 0) {
+            source.add("    ".repeat(depth) + "//#endif");
+            depth--;
+        }
+        return source;
+    }
+
+    /**
+     * @param size    the amount of entries
+     * @param literal if the keys shall be plain strings instead of regular expressions
+     * @return a remap table, containing some keys that occur in the {@link #source(int, double, int)}
+     */
+    public static @NotNull Map<String, String> remap(int size, boolean literal) {
+        Map<String, String> remap = new LinkedHashMap<>();
+        String[] hits = {"net.minecraft.world.entity", "ResourceLocation", "InteractionResult", "isClientSide"};
+        for (int i = 0; i < size; i++) {
+            String key = i < hits.length ? hits[i] : "com.example.Missing" + i;
+            remap.put(literal ? key : key.replace(".", "\\."), key + "Mapped");
+        }
+        return remap;
+    }
+
+    /**
+     * @return all conditions the generated sources use
+     */
+    public static String @NotNull [] conditions() {
+        return CONDITIONS.clone();
+    }
+}
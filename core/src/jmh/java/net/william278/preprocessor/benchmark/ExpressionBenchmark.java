@@ -0,0 +1,56 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.benchmark;
+
+import net.william278.preprocessor.util.PreProcessor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of all conditions the {@link Corpus} uses
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExpressionBenchmark {
+    private final String[] conditions = Corpus.conditions();
+    private PreProcessor preProcessor;
+
+    @Setup
+    public void setup() {
+        preProcessor = new PreProcessor(Corpus.VARS);
+    }
+
+    /**
+     * as on every directive but the first with the same condition
+     */
+    @Benchmark
+    public void evalExpression(Blackhole blackhole) {
+        for (String condition : conditions) {
+            blackhole.consume(preProcessor.evalExpression(condition, 1, "Benchmark.java"));
+        }
+    }
+
+    /**
+     * with a new engine, so every condition is compiled again
+     */
+    @Benchmark
+    public void evalExpressionCold(Blackhole blackhole) {
+        PreProcessor preProcessor = new PreProcessor(Corpus.VARS);
+        for (String condition : conditions) {
+            blackhole.consume(preProcessor.evalExpression(condition, 1, "Benchmark.java"));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.benchmark;
+
+import net.william278.preprocessor.util.PreProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link PreProcessor#convertSource(List, String)}, per file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreProcessorBenchmark {
+    @Param({"1000", "100000"})
+    public int lines;
+
+    @Param({"0.0", "0.02", "0.2"})
+    public double directiveDensity;
+
+    @Param({"1", "8"})
+    public int nesting;
+
+    @Param({"false", "true"})
+    public boolean removeComments;
+
+    private PreProcessor preProcessor;
+    private List<String> source;
+
+    @Setup
+    public void setup() {
+        preProcessor = new PreProcessor(removeComments, Corpus.VARS);
+        source = Corpus.source(lines, directiveDensity, nesting);
+    }
+
+    @Benchmark
+    public List<String> convertSource() {
+        return preProcessor.convertSource(source, "Benchmark.java");
+    }
+}
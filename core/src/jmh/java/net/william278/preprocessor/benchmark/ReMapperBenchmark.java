@@ -0,0 +1,50 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.benchmark;
+
+import net.william278.preprocessor.util.ReMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link ReMapper#convertSource(List)}, per file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReMapperBenchmark {
+    @Param({"1000", "100000"})
+    public int lines;
+
+    @Param({"0", "10", "150"})
+    public int remapSize;
+
+    @Param({"false", "true"})
+    public boolean literal;
+
+    private ReMapper reMapper;
+    private List<String> source;
+
+    @Setup
+    public void setup() {
+        reMapper = new ReMapper(Corpus.remap(remapSize, literal), literal);
+        source = Corpus.source(lines, 0.02, 2);
+    }
+
+    @Benchmark
+    public List<String> convertSource() {
+        return reMapper.convertSource(source);
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.cli;
+
+import net.william278.preprocessor.data.Keywords;
+import net.william278.preprocessor.util.BinaryDetector;
+import net.william278.preprocessor.util.ParallelExecutor;
+import net.william278.preprocessor.util.ParseException;
+import net.william278.preprocessor.util.PerformanceReport;
+import net.william278.preprocessor.util.PreProcessor;
+import net.william278.preprocessor.util.ReMapper;
+import net.william278.preprocessor.util.SourceFilter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Command line entry point, preprocessing input/output directory pairs without Gradle.
+ * <p>
+ * Startup is kept short on purpose: no reflection, no option library and nothing is loaded but the engine itself.
+ * The classes loaded by a run can be archived with AppCDS, see the {@code cdsArchive} task of the core module.
+ */
+public final class Main {
+    static final String USAGE = """
+            Usage: preprocessor [options] <input> <output> [<input> <output> ...]
+
+            Preprocesses every file of each input directory into the output directory next to it.
+            An input may also be a single file, its output is a file then.
+
+            Options:
+              --vars <file>          vars to use, one 'name=value' per line
+              --var <name>=<value>   a single var, overrides the vars file
+              --remap <file>         remap replacements, one 'key=value' per line, applied in file order
+              --remap-literal        the remap keys are plain strings instead of regular expressions
+              --remap-tokens         the remap keys are identifiers and qualified names, that only replace whole names in code.
+                                     Can't be combined with --remap-literal
+              --keywords <file>      custom keywords, one '<extension>=<if> <elseif> <else> <endif> <eval>' per line
+              --include <glob>       only preprocess files matching the pattern, relative to the input (repeatable)
+              --exclude <glob>       skip files matching the pattern, 'dir/' skips a whole folder (repeatable)
+              --remove-comments      remove the preprocessor comments
+              --organize-imports     remove imports of Java files, that are unused after preprocessing
+              --charset <name>       the charset of text files (default: UTF-8)
+              --threads <n>          amount of threads to convert files with (default: amount of processors)
+              --report <file>        write a JSON performance report
+              -h, --help             show this help
+            """;
+
+    private Main() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * @param args the command line arguments
+     * @param out  where the summary is printed to
+     * @param err  where errors are printed to
+     * @return the exit code: 0 on success, 1 if a file could not be preprocessed and 2 for invalid arguments
+     */
+    public static int run(@NotNull String[] args, @NotNull PrintStream out, @NotNull PrintStream err) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException | IOException e) {
+            err.println("error: " + e.getMessage());
+            err.print(USAGE);
+            return 2;
+        }
+        if (options == null) {
+            out.print(USAGE);
+            return 0;
+        }
+
+        long startTime = System.nanoTime();
+        PerformanceReport report = new PerformanceReport(10);
+        PreProcessor preProcessor = new PreProcessor(options.removeComments, options.vars, options.keywords,
+                new BinaryDetector(BinaryDetector.DEFAULT_TEXT_EXTENSIONS, BinaryDetector.DEFAULT_BINARY_EXTENSIONS, options.charset), options.organizeImports);
+        ReMapper reMapper = new ReMapper(options.remap, options.remapMode);
+
+        List<Job> jobs = new ArrayList<>();
+        long walkStart = System.nanoTime();
+        try {
+            for (int i = 0; i < options.paths.size(); i += 2) {
+                collectJobs(options.paths.get(i), options.paths.get(i + 1), options.filter, options.threads, jobs);
+            }
+        } catch (IOException e) {
+            err.println("error: " + e.getMessage());
+            return 1;
+        }
+        report.addTime(PerformanceReport.Phase.WALK, System.nanoTime() - walkStart);
+
+        // keep going after a broken file, so a single run lists all of them
+        Queue<String> errors = new ConcurrentLinkedQueue<>();
+        ParallelExecutor.forEach(jobs, options.threads, job -> {
+            long start = System.nanoTime();
+            try {
+                PreProcessor.FileResult result = preProcessor.convertFile(reMapper, job.in, job.out, report);
+                report.addFile(job.relPath, result, job.in.length(), job.out.length(), System.nanoTime() - start);
+            } catch (ParseException e) {
+                errors.add(e.getMessage());
+            } catch (RuntimeException e) {
+                errors.add(job.in + ": " + e);
+            }
+        });
+
+        if (options.report != null) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("inputs", options.paths.size() / 2);
+            info.put("threads", options.threads);
+            try {
+                Files.writeString(options.report, report.toJson(info, System.nanoTime() - startTime), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                errors.add("could not write the report: " + e.getMessage());
+            }
+        }
+
+        for (String error : errors) {
+            err.println("error: " + error);
+        }
+        out.printf("Preprocessed %d files (%d passed through unchanged) in %d ms%n", report.getFiles(),
+                report.getFiles(PreProcessor.FileResult.PASSTHROUGH), (System.nanoTime() - startTime) / 1_000_000);
+        return errors.isEmpty() ? 0 : 1;
+    }
+
+    private static void collectJobs(@NotNull Path input, @NotNull Path output, @NotNull SourceFilter filter, int threads, @NotNull List<Job> jobs) throws IOException {
+        if (Files.isRegularFile(input)) {
+            jobs.add(new Job(input.getFileName().toString(), input.toFile(), output.toFile()));
+            return;
+        }
+        if (!Files.isDirectory(input)) {
+            throw new IOException("input " + input + " does not exist");
+        }
+        for (Path relPath : filter.walk(input, threads)) {
+            jobs.add(new Job(relPath.toString().replace(File.separatorChar, '/'), input.resolve(relPath).toFile(), output.resolve(relPath).toFile()));
+        }
+    }
+
+    /**
+     * Reads a file of 'key=value' lines in order. Blank lines and lines starting with '#' are skipped
+     */
+    static @NotNull Map<String, String> readPairs(@NotNull Path file) throws IOException {
+        Map<String, String> pairs = new LinkedHashMap<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            int separator = trimmed.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException(file + ":" + lineNumber + ": expected 'key=value'");
+            }
+            pairs.put(trimmed.substring(0, separator).trim(), trimmed.substring(separator + 1).trim());
+        }
+        return pairs;
+    }
+
+    private static final class Job {
+        private final String relPath;
+        private final File in;
+        private final File out;
+
+        private Job(String relPath, File in, File out) {
+            this.relPath = relPath;
+            this.in = in;
+            this.out = out;
+        }
+    }
+
+    static final class Options {
+        final Map<String, Object> vars = new LinkedHashMap<>();
+        final Map<String, String> remap = new LinkedHashMap<>();
+        final Map<String, Keywords> keywords = new LinkedHashMap<>();
+        final List<Path> paths = new ArrayList<>();
+        final List<String> includes = new ArrayList<>();
+        final List<String> excludes = new ArrayList<>();
+        SourceFilter filter = SourceFilter.ALL;
+        ReMapper.Mode remapMode = ReMapper.Mode.REGEX;
+        boolean removeComments = false;
+        boolean organizeImports = false;
+        Charset charset = StandardCharsets.UTF_8;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path report = null;
+
+        /**
+         * @return the parsed options, or null if the help was requested
+         */
+        static Options parse(@NotNull String[] args) throws IOException {
+            Options options = new Options();
+            Map<String, Object> singleVars = new LinkedHashMap<>();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-h", "--help" -> {
+                        return null;
+                    }
+                    case "--vars" -> options.vars.putAll(readPairs(Paths.get(value(args, ++i, arg))));
+                    case "--var" -> {
+                        String var = value(args, ++i, arg);
+                        int separator = var.indexOf('=');
+                        if (separator <= 0) {
+                            throw new IllegalArgumentException("expected '--var <name>=<value>', got '" + var + "'");
+                        }
+                        singleVars.put(var.substring(0, separator), var.substring(separator + 1));
+                    }
+                    case "--remap" -> options.remap.putAll(readPairs(Paths.get(value(args, ++i, arg))));
+                    case "--remap-literal", "--remap-tokens" -> {
+                        ReMapper.Mode mode = arg.equals("--remap-literal") ? ReMapper.Mode.LITERAL : ReMapper.Mode.TOKENS;
+                        if (options.remapMode != ReMapper.Mode.REGEX && options.remapMode != mode) {
+                            throw new IllegalArgumentException("'--remap-literal' and '--remap-tokens' can't be combined");
+                        }
+                        options.remapMode = mode;
+                    }
+                    case "--keywords" -> {
+                        Path file = Paths.get(value(args, ++i, arg));
+                        for (Map.Entry<String, String> entry : readPairs(file).entrySet()) {
+                            String[] words = entry.getValue().split("\\s+");
+                            if (words.length != 5) {
+                                throw new IllegalArgumentException(file + ": expected 5 keywords for '" + entry.getKey() + "', got " + words.length);
+                            }
+                            options.keywords.put(entry.getKey(), new Keywords(words[0], words[1], words[2], words[3], words[4]));
+                        }
+                    }
+                    case "--include" -> options.includes.add(value(args, ++i, arg));
+                    case "--exclude" -> options.excludes.add(value(args, ++i, arg));
+                    case "--remove-comments" -> options.removeComments = true;
+                    case "--organize-imports" -> options.organizeImports = true;
+                    case "--charset" -> options.charset = Charset.forName(value(args, ++i, arg));
+                    case "--threads" -> {
+                        String threads = value(args, ++i, arg);
+                        try {
+                            options.threads = Integer.parseInt(threads);
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("invalid amount of threads '" + threads + "'");
+                        }
+                        if (options.threads < 1) {
+                            throw new IllegalArgumentException("the amount of threads must be at least 1, got " + threads);
+                        }
+                    }
+                    case "--report" -> options.report = Paths.get(value(args, ++i, arg));
+                    default -> {
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("unknown option '" + arg + "'");
+                        }
+                        options.paths.add(Paths.get(arg));
+                    }
+                }
+            }
+            options.vars.putAll(singleVars);
+            // invalid patterns are reported before anything is walked
+            options.filter = SourceFilter.of(options.includes, options.excludes);
+            if (options.paths.isEmpty() || options.paths.size() % 2 != 0) {
+                throw new IllegalArgumentException("expected pairs of input and output paths");
+            }
+            return options;
+        }
+
+        private static @NotNull String value(@NotNull String[] args, int index, @NotNull String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("missing value for '" + option + "'");
+            }
+            return args[index];
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decides whether a file is binary and has to be copied instead of being preprocessed.
+ * <p>
+ * Files with a binary extension are always binary, files with a text extension never are.
+ * Any other file is probed: it is binary if its first bytes contain a NUL byte or can't be decoded with the text charset.
+ */
+public final class BinaryDetector {
+    private static final int PROBE_SIZE = 8 * 1024;
+
+    /**
+     * Extensions of files that are always preprocessed
+     */
+    public static final Set<String> DEFAULT_TEXT_EXTENSIONS = Set.of(
+            "java", "kt", "kts", "groovy", "json", "json5", "mcmeta", "txt", "properties", "yml", "yaml", "toml",
+            "xml", "md", "lang", "cfg", "conf", "html", "css", "js", "sql", "glsl", "fsh", "vsh");
+    /**
+     * Extensions of files that are always copied
+     */
+    public static final Set<String> DEFAULT_BINARY_EXTENSIONS = Set.of(
+            "png", "jpg", "jpeg", "gif", "bmp", "ico", "webp", "ogg", "wav", "mp3", "ttf", "otf", "woff", "woff2",
+            "zip", "jar", "class", "nbt", "mca", "bin", "dat");
+    /**
+     * The default extensions and UTF-8
+     */
+    public static final BinaryDetector DEFAULT = new BinaryDetector(DEFAULT_TEXT_EXTENSIONS, DEFAULT_BINARY_EXTENSIONS, StandardCharsets.UTF_8);
+
+    private final Set<String> textExtensions;
+    private final Set<String> binaryExtensions;
+    private final Charset charset;
+
+    /**
+     * @param textExtensions   extensions (without dot) of files that are always preprocessed
+     * @param binaryExtensions extensions (without dot) of files that are always copied
+     * @param charset          the charset text files are encoded with
+     */
+    public BinaryDetector(@NotNull Collection<String> textExtensions, @NotNull Collection<String> binaryExtensions, @NotNull Charset charset) {
+        this.textExtensions = normalize(textExtensions);
+        this.binaryExtensions = normalize(binaryExtensions);
+        this.charset = charset;
+    }
+
+    private static @NotNull Set<String> normalize(@NotNull Collection<String> extensions) {
+        Set<String> normalized = new HashSet<>();
+        for (String extension : extensions) {
+            normalized.add(extension.trim().toLowerCase(Locale.ROOT).replaceFirst("^\\.", ""));
+        }
+        return Set.copyOf(normalized);
+    }
+
+    /**
+     * @return the charset text files are encoded with
+     */
+    public @NotNull Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @param path      the file to check
+     * @param extension the lower case extension of the file, without dot
+     * @return if the file is binary
+     * @throws IOException if the probe can't be read
+     */
+    public boolean isBinary(@NotNull Path path, @NotNull String extension) throws IOException {
+        if (binaryExtensions.contains(extension)) {
+            return true;
+        }
+        if (textExtensions.contains(extension)) {
+            return false;
+        }
+
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+        boolean complete;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (probe.hasRemaining() && channel.read(probe) >= 0) {
+                // fill the probe
+            }
+            complete = channel.size() <= PROBE_SIZE;
+        }
+        probe.flip();
+
+        for (int i = probe.position(); i < probe.limit(); i++) {
+            if (probe.get(i) == 0) {
+                return true;
+            }
+        }
+
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // a char sequence cut off at the end of the probe is no error
+        return decoder.decode(probe, CharBuffer.allocate(PROBE_SIZE), complete).isError();
+    }
+}
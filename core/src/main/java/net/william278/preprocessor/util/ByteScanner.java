@@ -0,0 +1,167 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Checks raw file contents for a set of byte sequences (keywords, remap keys), without decoding them
+ */
+final class ByteScanner {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * the needles, grouped by their first byte
+     */
+    private final byte[][][] needles = new byte[256][][];
+    private final int maxLength;
+
+    /**
+     * @param needles the byte sequences to search for. Empty ones are ignored
+     */
+    ByteScanner(@NotNull Collection<byte[]> needles) {
+        List<List<byte[]>> grouped = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            grouped.add(new ArrayList<>());
+        }
+        int maxLength = 1;
+        for (byte[] needle : needles) {
+            if (needle.length > 0) {
+                grouped.get(needle[0] & 0xFF).add(needle);
+                maxLength = Math.max(maxLength, needle.length);
+            }
+        }
+        for (int i = 0; i < 256; i++) {
+            if (!grouped.get(i).isEmpty()) {
+                this.needles[i] = grouped.get(i).toArray(new byte[0][]);
+            }
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @param path the file to scan
+     * @return true if the file contains none of the needles, no {@code \r} and is empty or ends with {@code \n},
+     * so preprocessing it line by line would produce the very same bytes
+     * @throws IOException if reading fails
+     */
+    boolean isUnchangedByConversion(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE + maxLength);
+            byte last = '\n';
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                int filled = buffer.position();
+                // needles starting in the tail might not be read completely yet
+                int scanTo = eof ? filled : Math.max(0, filled - (maxLength - 1));
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < scanTo; i++) {
+                    byte b = bytes[i];
+                    if (b == '\r') {
+                        return false;
+                    }
+                    byte[][] candidates = needles[b & 0xFF];
+                    if (candidates != null) {
+                        for (byte[] needle : candidates) {
+                            if (matches(bytes, i, filled, needle)) {
+                                return false;
+                            }
+                        }
+                    }
+                }
+                if (filled > 0) {
+                    last = bytes[filled - 1];
+                }
+                // keep the unscanned tail
+                System.arraycopy(bytes, scanTo, bytes, 0, filled - scanTo);
+                buffer.position(filled - scanTo);
+            }
+            return last == '\n';
+        }
+    }
+
+    /**
+     * @param path the file to scan
+     * @return if the file contains any needle
+     * @throws IOException if reading fails
+     */
+    boolean containsAny(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE + maxLength);
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                int filled = buffer.position();
+                // needles starting in the tail might not be read completely yet
+                int scanTo = eof ? filled : Math.max(0, filled - (maxLength - 1));
+                byte[] bytes = buffer.array();
+                if (containsAny(bytes, 0, scanTo, filled)) {
+                    return true;
+                }
+                // keep the unscanned tail
+                System.arraycopy(bytes, scanTo, bytes, 0, filled - scanTo);
+                buffer.position(filled - scanTo);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param bytes the bytes to scan
+     * @param from  the first index to scan
+     * @param to    the index behind the last byte to scan
+     * @return if any needle lies completely within the range
+     */
+    boolean containsAny(byte @NotNull [] bytes, int from, int to) {
+        return containsAny(bytes, from, to, to);
+    }
+
+    /**
+     * @param limit the index behind the last byte a needle may cover
+     */
+    private boolean containsAny(byte @NotNull [] bytes, int from, int to, int limit) {
+        for (int i = from; i < to; i++) {
+            byte[][] candidates = needles[bytes[i] & 0xFF];
+            if (candidates != null) {
+                for (byte[] needle : candidates) {
+                    if (matches(bytes, i, limit, needle)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(byte @NotNull [] bytes, int offset, int limit, byte @NotNull [] needle) {
+        if (offset + needle.length > limit) {
+            return false;
+        }
+        for (int i = 1; i < needle.length; i++) {
+            if (bytes[offset + i] != needle[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import net.william278.preprocessor.data.Keywords;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The lines of a file, each one classified as directive or text, with the bounds of its trimmed content.
+ * <p>
+ * A skeleton doesn't depend on any vars, so it can be parsed once and then be evaluated for any amount of var sets, see {@link PreProcessor#parse(java.util.List, String)}.
+ */
+public final class DirectiveSkeleton {
+    static final byte IF = 0;
+    static final byte ELSEIF = 1;
+    static final byte ELSE = 2;
+    static final byte ENDIF = 3;
+    /**
+     * a line, that starts with the eval keyword
+     */
+    static final byte EVAL = 4;
+    static final byte TEXT = 5;
+
+    final Keywords keywords;
+    final @Nullable String fileName;
+    final String[] lines;
+    final byte[] kinds;
+    final int[] starts;
+    final int[] ends;
+    final int[] indentations;
+
+    DirectiveSkeleton(@NotNull Keywords keywords, @Nullable String fileName, String @NotNull [] lines) {
+        this.keywords = keywords;
+        this.fileName = fileName;
+        this.lines = lines;
+        this.kinds = new byte[lines.length];
+        this.starts = new int[lines.length];
+        this.ends = new int[lines.length];
+        this.indentations = new int[lines.length];
+    }
+
+    /**
+     * @return the amount of lines
+     */
+    public int getLineCount() {
+        return lines.length;
+    }
+
+    /**
+     * @return the amount of if and elseif directives, which are the lines whose output depends on the vars
+     */
+    public int getConditionCount() {
+        int conditions = 0;
+        for (byte kind : kinds) {
+            if (kind == IF || kind == ELSEIF) {
+                conditions++;
+            }
+        }
+        return conditions;
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A compiled if-condition. Conditions are tokenized and parsed once into an immutable tree and can then be evaluated any number of times.
+ * <p>
+ * Precedence (lowest first): {@code ||}, {@code &&}, comparisons ({@code == != <= >= < >}), parentheses, variables / literals.
+ * Operands are names or literals without whitespace, or quoted strings ({@code "..."} or {@code '...'}), which may contain anything but their quote.
+ * <p>
+ * The tree is bound to one {@link Vars} snapshot: all comparisons and variables are resolved on compilation, so evaluating only walks the {@code ||} and {@code &&} nodes.
+ * Errors (e.g. comparing an undefined variable) are kept until the comparison is actually evaluated, so short-circuited parts never fail.
+ * A condition, that can't be parsed at all, fails whenever it is evaluated.
+ */
+public abstract class Expression {
+    private static final String[] OPERATORS = {"==", "!=", "<=", ">=", "<", ">"};
+    /**
+     * the largest int, that is compared with a version as its major version. Larger ones are most likely versions encoded as int (e.g. 12004)
+     */
+    private static final int MAX_MAJOR_VERSION = 9999;
+
+    private Expression() {
+    }
+
+    /**
+     * @param lineNumber required for error throwing
+     * @param fileName   required for error throwing
+     * @return the value of the evaluated condition
+     */
+    public abstract boolean eval(int lineNumber, @Nullable String fileName);
+
+    /**
+     * @param condition the condition text, as found behind the if-keyword
+     * @param vars      the vars the condition refers to
+     * @return the compiled condition
+     */
+    public static @NotNull Expression compile(@NotNull String condition, @NotNull Vars vars) {
+        List<Token> tokens;
+        try {
+            tokens = tokenize(condition);
+        } catch (IllegalArgumentException e) {
+            return new Constant(false, "Invalid condition: " + condition + " (" + e.getMessage() + ")");
+        }
+        // an empty condition has always been false
+        if (tokens.isEmpty()) {
+            return new Constant(false, null);
+        }
+        Parser parser = new Parser(tokens, vars);
+        try {
+            Expression expression = parser.parseOr();
+            if (parser.position < tokens.size()) {
+                throw parser.unexpected();
+            }
+            return expression;
+        } catch (IllegalArgumentException e) {
+            return new Constant(false, "Invalid condition: " + condition + " (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    private static @NotNull List<Token> tokenize(@NotNull String condition) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < condition.length()) {
+            char c = condition.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                int end = condition.indexOf(c, i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("unclosed quote at " + (i + 1));
+                }
+                tokens.add(new Token(TokenType.QUOTED, condition.substring(i + 1, end), i));
+                i = end + 1;
+                continue;
+            }
+            Token symbol = symbol(condition, i);
+            if (symbol != null) {
+                tokens.add(symbol);
+                i += symbol.text.length();
+                continue;
+            }
+            // a name or literal ends at whitespace, a quote or any symbol
+            int start = i;
+            while (i < condition.length() && !Character.isWhitespace(condition.charAt(i)) && condition.charAt(i) != '"'
+                    && condition.charAt(i) != '\'' && symbol(condition, i) == null) {
+                i++;
+            }
+            tokens.add(new Token(TokenType.WORD, condition.substring(start, i), start));
+        }
+        return tokens;
+    }
+
+    private static @Nullable Token symbol(@NotNull String condition, int index) {
+        if (condition.startsWith("||", index)) {
+            return new Token(TokenType.OR, "||", index);
+        }
+        if (condition.startsWith("&&", index)) {
+            return new Token(TokenType.AND, "&&", index);
+        }
+        for (String operator : OPERATORS) {
+            if (condition.startsWith(operator, index)) {
+                return new Token(TokenType.OPERATOR, operator, index);
+            }
+        }
+        char c = condition.charAt(index);
+        if (c == '(') {
+            return new Token(TokenType.OPEN, "(", index);
+        }
+        if (c == ')') {
+            return new Token(TokenType.CLOSE, ")", index);
+        }
+        return null;
+    }
+
+    /**
+     * Numbers and versions can be compared with each other, booleans only with booleans and only for (in)equality.
+     * An int is only compared with a version, if it is a plausible major version. Quoted strings are compared by text, only for (in)equality
+     */
+    private static @NotNull Expression compare(@NotNull String operator, @NotNull Token lhsToken, @NotNull Token rhsToken, @NotNull Vars vars) {
+        String lhsText = lhsToken.toString();
+        String rhsText = rhsToken.toString();
+        Vars.Value lhs = lhsToken.type == TokenType.QUOTED ? Vars.Value.parse(lhsToken.text) : operand(lhsToken.text, vars);
+        Vars.Value rhs = rhsToken.type == TokenType.QUOTED ? Vars.Value.parse(rhsToken.text) : operand(rhsToken.text, vars);
+        if (lhs == null || rhs == null) {
+            return new Constant(false, "Undefined variable: " + (lhs == null ? lhsText : rhsText));
+        }
+        if (lhsToken.type == TokenType.QUOTED || rhsToken.type == TokenType.QUOTED) {
+            if (operator.equals("==")) {
+                return new Constant(lhs.getText().equals(rhs.getText()), null);
+            } else if (operator.equals("!=")) {
+                return new Constant(!lhs.getText().equals(rhs.getText()), null);
+            }
+            return new Constant(false, "Strings can only be compared with == and !=: " + lhsText + " " + operator + " " + rhsText);
+        }
+        for (Vars.Value value : new Vars.Value[]{lhs, rhs}) {
+            if (value.getType() == Vars.Type.STRING) {
+                return new Constant(false, "Not a number, version or boolean: " + (value == lhs ? lhsText : rhsText) + " = " + value);
+            }
+        }
+
+        if (lhs.isNumeric() && rhs.isNumeric()) {
+            if (lhs.getType() != rhs.getType()) {
+                Vars.Value integer = lhs.getType() == Vars.Type.INT ? lhs : rhs;
+                if (Math.abs(Long.parseLong(integer.getText())) > MAX_MAJOR_VERSION) {
+                    return new Constant(false, "Can't compare int " + (integer == lhs ? lhsText : rhsText) + " = " + integer + " with version "
+                            + (integer == lhs ? rhsText : lhsText) + ", write versions with dots (e.g. 1.20.4)");
+                }
+            }
+            int compare = lhs.compareTo(rhs);
+            switch (operator) {
+                case "==":
+                    return new Constant(compare == 0, null);
+                case "!=":
+                    return new Constant(compare != 0, null);
+                case ">=":
+                    return new Constant(compare >= 0, null);
+                case "<=":
+                    return new Constant(compare <= 0, null);
+                case ">":
+                    return new Constant(compare > 0, null);
+                default:
+                    return new Constant(compare < 0, null);
+            }
+        }
+        if (lhs.getType() == Vars.Type.BOOLEAN && rhs.getType() == Vars.Type.BOOLEAN) {
+            if (operator.equals("==")) {
+                return new Constant(lhs.isTruthy() == rhs.isTruthy(), null);
+            } else if (operator.equals("!=")) {
+                return new Constant(lhs.isTruthy() != rhs.isTruthy(), null);
+            }
+            return new Constant(false, "Booleans can only be compared with == and !=: " + lhsText + " " + operator + " " + rhsText);
+        }
+        return new Constant(false, "Can't compare " + lhs.getType().name().toLowerCase(Locale.ROOT) + " " + lhsText
+                + " with " + rhs.getType().name().toLowerCase(Locale.ROOT) + " " + rhsText);
+    }
+
+    /**
+     * @return the value of the var or else of the literal, null if it is neither a defined var nor a number, version or boolean
+     */
+    private static @Nullable Vars.Value operand(@NotNull String text, @NotNull Vars vars) {
+        Vars.Value value = vars.get(text);
+        if (value != null) {
+            return value;
+        }
+        value = Vars.Value.parse(text);
+        return value.getType() == Vars.Type.STRING ? null : value;
+    }
+
+    private enum TokenType {
+        OR, AND, OPERATOR, OPEN, CLOSE, WORD, QUOTED
+    }
+
+    private static final class Token {
+        private final TokenType type;
+        private final String text;
+        private final int position;
+
+        private Token(TokenType type, String text, int position) {
+            this.type = type;
+            this.text = text;
+            this.position = position;
+        }
+
+        @Override
+        public String toString() {
+            return type == TokenType.QUOTED ? '"' + text + '"' : text;
+        }
+    }
+
+    /**
+     * A recursive descent parser, one method per precedence level
+     */
+    private static final class Parser {
+        private final List<Token> tokens;
+        private final Vars vars;
+        private int position = 0;
+
+        private Parser(List<Token> tokens, Vars vars) {
+            this.tokens = tokens;
+            this.vars = vars;
+        }
+
+        private @NotNull Expression parseOr() {
+            List<Expression> children = new ArrayList<>();
+            children.add(parseAnd());
+            while (accept(TokenType.OR)) {
+                children.add(parseAnd());
+            }
+            return children.size() == 1 ? children.get(0) : new Or(children.toArray(new Expression[0]));
+        }
+
+        private @NotNull Expression parseAnd() {
+            List<Expression> children = new ArrayList<>();
+            children.add(parseComparison());
+            while (accept(TokenType.AND)) {
+                children.add(parseComparison());
+            }
+            return children.size() == 1 ? children.get(0) : new And(children.toArray(new Expression[0]));
+        }
+
+        private @NotNull Expression parseComparison() {
+            if (accept(TokenType.OPEN)) {
+                Expression expression = parseOr();
+                if (!accept(TokenType.CLOSE)) {
+                    throw unexpected();
+                }
+                return expression;
+            }
+            Token lhs = operand();
+            if (position < tokens.size() && tokens.get(position).type == TokenType.OPERATOR) {
+                String operator = tokens.get(position++).text;
+                return compare(operator, lhs, operand(), vars);
+            }
+            if (lhs.type == TokenType.QUOTED) {
+                return new Constant(false, "A string is no condition: " + lhs);
+            }
+            // a bare var is true if it is defined and truthy
+            Vars.Value value = vars.get(lhs.text);
+            return new Constant(value != null && value.isTruthy(), null);
+        }
+
+        private @NotNull Token operand() {
+            if (position < tokens.size() && (tokens.get(position).type == TokenType.WORD || tokens.get(position).type == TokenType.QUOTED)) {
+                return tokens.get(position++);
+            }
+            throw unexpected();
+        }
+
+        private boolean accept(@NotNull TokenType type) {
+            if (position < tokens.size() && tokens.get(position).type == type) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private @NotNull IllegalArgumentException unexpected() {
+            if (position >= tokens.size()) {
+                return new IllegalArgumentException("unexpected end");
+            }
+            Token token = tokens.get(position);
+            return new IllegalArgumentException("unexpected " + token + " at " + (token.position + 1));
+        }
+    }
+
+    private static final class Or extends Expression {
+        private final Expression[] children;
+
+        private Or(Expression[] children) {
+            this.children = children;
+        }
+
+        @Override
+        public boolean eval(int lineNumber, @Nullable String fileName) {
+            for (Expression child : children) {
+                if (child.eval(lineNumber, fileName)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class And extends Expression {
+        private final Expression[] children;
+
+        private And(Expression[] children) {
+            this.children = children;
+        }
+
+        @Override
+        public boolean eval(int lineNumber, @Nullable String fileName) {
+            for (Expression child : children) {
+                if (!child.eval(lineNumber, fileName)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A comparison or bare var, already resolved against the vars
+     */
+    private static final class Constant extends Expression {
+        private final boolean value;
+        private final @Nullable String error;
+
+        private Constant(boolean value, @Nullable String error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        @Override
+        public boolean eval(int lineNumber, @Nullable String fileName) {
+            if (error != null) {
+                throw new ParseException(error, lineNumber, fileName);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds out which lines a change of the vars would affect, without writing anything: every directive is evaluated for the current and
+ * the candidate vars, and the text lines whose active state differs are reported as blocks.
+ * <p>
+ * Only the directives are evaluated, no line is converted or remapped. All methods are thread-safe, so the files can be analyzed in parallel.
+ */
+public final class ImpactAnalyzer {
+    private final PreProcessor current;
+    private final PreProcessor candidate;
+    private final @Nullable ParseCache cache;
+    private final LongAdder analyzedFiles = new LongAdder();
+    private final LongAdder activatedLines = new LongAdder();
+    private final LongAdder deactivatedLines = new LongAdder();
+    /**
+     * by path, the blocks of the files with any changed line
+     */
+    private final Map<String, List<Block>> impacts = new ConcurrentSkipListMap<>();
+    private final Queue<String> errors = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param current   the engine with the vars in use
+     * @param candidate the engine with the vars to compare with, using the same keywords and charset
+     * @param cache     to reuse the skeletons of files, that have been parsed before. May be null
+     */
+    public ImpactAnalyzer(@NotNull PreProcessor current, @NotNull PreProcessor candidate, @Nullable ParseCache cache) {
+        this.current = current;
+        this.candidate = candidate;
+        this.cache = cache;
+    }
+
+    /**
+     * @param skeleton the parsed file, see {@link PreProcessor#parse(List, String)}
+     * @return the blocks of lines, whose active state differs between the current and the candidate vars, in order
+     * @throws ParseException if a directive can't be evaluated for either vars
+     */
+    public @NotNull List<Block> compare(@NotNull DirectiveSkeleton skeleton) {
+        BitSet before = current.activeLines(skeleton);
+        BitSet changed = candidate.activeLines(skeleton);
+        changed.xor(before);
+
+        List<Block> blocks = new ArrayList<>();
+        // directive lines are never active, so every block lies within a single branch
+        for (int from = changed.nextSetBit(0); from >= 0; from = changed.nextSetBit(from)) {
+            int to = changed.nextClearBit(from);
+            blocks.add(new Block(from + 1, to, !before.get(from)));
+            from = to;
+        }
+        return blocks;
+    }
+
+    /**
+     * Analyzes a file and adds it to the results. Binaries, files without any keyword and files, that can't be decoded, are never affected by the vars
+     *
+     * @param path   the path of the file in the results
+     * @param inFile the file to analyze
+     * @return the blocks of lines, whose active state differs, in order. Empty if the file is not affected or can't be evaluated, see {@link #getErrors()}
+     */
+    public @NotNull List<Block> analyzeFile(@NotNull String path, @NotNull File inFile) {
+        analyzedFiles.increment();
+        List<Block> blocks;
+        try {
+            if (current.isBinary(inFile.toPath())) {
+                return List.of();
+            }
+            // most files contain no directive at all, no need to decode and parse them
+            if (!current.mayContainDirectives(inFile.toPath())) {
+                return List.of();
+            }
+            DirectiveSkeleton skeleton;
+            if (cache != null) {
+                skeleton = cache.getSkeleton(current, inFile.getName(), Files.readAllBytes(inFile.toPath()));
+            } else {
+                skeleton = current.parse(Files.readAllLines(inFile.toPath(), current.getCharset()), inFile.getName());
+            }
+            blocks = compare(skeleton);
+        } catch (CharacterCodingException e) {
+            // copied as is by the preprocessor
+            return List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ParseException e) {
+            errors.add(e.getMessage());
+            return List.of();
+        }
+
+        if (!blocks.isEmpty()) {
+            for (Block block : blocks) {
+                (block.activated ? activatedLines : deactivatedLines).add(block.getLines());
+            }
+            impacts.put(path, Collections.unmodifiableList(blocks));
+        }
+        return blocks;
+    }
+
+    /**
+     * @return the amount of analyzed files
+     */
+    public long getAnalyzedFiles() {
+        return analyzedFiles.sum();
+    }
+
+    /**
+     * @return by path in sorted order, the blocks of all analyzed files with any changed line
+     */
+    public @NotNull Map<String, List<Block>> getImpacts() {
+        return Collections.unmodifiableMap(impacts);
+    }
+
+    /**
+     * @return the amount of lines, that become active with the candidate vars
+     */
+    public long getActivatedLines() {
+        return activatedLines.sum();
+    }
+
+    /**
+     * @return the amount of lines, that become inactive with the candidate vars
+     */
+    public long getDeactivatedLines() {
+        return deactivatedLines.sum();
+    }
+
+    /**
+     * @return the messages of the directives, that couldn't be evaluated
+     */
+    public @NotNull List<String> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * @param info additional top-level values (strings, numbers, booleans or lists of them), written before the results
+     * @return the results as JSON object
+     */
+    public @NotNull String toJson(@NotNull Map<String, ?> info) {
+        return toJson(info, List.of(this));
+    }
+
+    /**
+     * @param info      additional top-level values (strings, numbers, booleans or lists of them), written before the results
+     * @param analyzers analyzers of distinct files, e.g. one per source set, whose results are merged
+     * @return the merged results as JSON object
+     */
+    public static @NotNull String toJson(@NotNull Map<String, ?> info, @NotNull Collection<ImpactAnalyzer> analyzers) {
+        long analyzedFiles = 0;
+        long activatedLines = 0;
+        long deactivatedLines = 0;
+        List<String> errors = new ArrayList<>();
+        Map<String, List<Block>> impacts = new TreeMap<>();
+        for (ImpactAnalyzer analyzer : analyzers) {
+            analyzedFiles += analyzer.getAnalyzedFiles();
+            activatedLines += analyzer.getActivatedLines();
+            deactivatedLines += analyzer.getDeactivatedLines();
+            errors.addAll(analyzer.getErrors());
+            impacts.putAll(analyzer.impacts);
+        }
+
+        StringBuilder json = new StringBuilder("{\n");
+        for (Map.Entry<String, ?> entry : info.entrySet()) {
+            json.append("  ");
+            PerformanceReport.string(json, entry.getKey()).append(": ");
+            PerformanceReport.value(json, entry.getValue()).append(",\n");
+        }
+
+        json.append("  \"files\": {\n")
+                .append("    \"analyzed\": ").append(analyzedFiles).append(",\n")
+                .append("    \"affected\": ").append(impacts.size()).append("\n")
+                .append("  },\n");
+        json.append("  \"lines\": {\n")
+                .append("    \"activated\": ").append(activatedLines).append(",\n")
+                .append("    \"deactivated\": ").append(deactivatedLines).append("\n")
+                .append("  },\n");
+        json.append("  \"errors\": ");
+        PerformanceReport.value(json, errors).append(",\n");
+
+        json.append("  \"affectedFiles\": [");
+        boolean first = true;
+        for (Map.Entry<String, List<Block>> impact : impacts.entrySet()) {
+            json.append(first ? "\n" : ",\n").append("    {\"path\": ");
+            PerformanceReport.string(json, impact.getKey()).append(", \"blocks\": [");
+            for (int i = 0; i < impact.getValue().size(); i++) {
+                Block block = impact.getValue().get(i);
+                json.append(i == 0 ? "" : ", ").append("{\"from\": ").append(block.from).append(", \"to\": ").append(block.to)
+                        .append(", \"activated\": ").append(block.activated).append('}');
+            }
+            json.append("]}");
+            first = false;
+        }
+        return json.append(first ? "]" : "\n  ]").append("\n}\n").toString();
+    }
+
+    /**
+     * Consecutive lines of a file, whose active state flips the same way
+     */
+    public static final class Block {
+        private final int from;
+        private final int to;
+        private final boolean activated;
+
+        private Block(int from, int to, boolean activated) {
+            this.from = from;
+            this.to = to;
+            this.activated = activated;
+        }
+
+        /**
+         * @return the number of the first line, starting at 1
+         */
+        public int getFrom() {
+            return from;
+        }
+
+        /**
+         * @return the number of the last line, inclusive
+         */
+        public int getTo() {
+            return to;
+        }
+
+        /**
+         * @return if the lines become active with the candidate vars, otherwise they are commented out
+         */
+        public boolean isActivated() {
+            return activated;
+        }
+
+        /**
+         * @return the amount of lines
+         */
+        public int getLines() {
+            return to - from + 1;
+        }
+
+        @Override
+        public String toString() {
+            return from + "-" + to + (activated ? " activated" : " deactivated");
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Removes the imports of a Java file, that are no longer used after preprocessing, e.g. as the only code using them is in an inactive branch.
+ * <p>
+ * The file is read once: the imports are collected from its header, every identifier of the code after it is put into a set, and each import is
+ * looked up in that set. Identifiers in string literals and line comments (including disabled code) don't count as usage, while block comments do,
+ * so imports referenced by javadoc links are kept. Wildcard imports are always kept, static imports are kept if their member name is used.
+ * <p>
+ * Every run of consecutive import lines is sorted (static imports last) and duplicates are removed. Removed imports leave empty lines behind,
+ * so all other lines keep their line number.
+ */
+public final class ImportManager {
+    private static final int CODE = 0;
+    private static final int BLOCK_COMMENT = 1;
+    private static final int TEXT_BLOCK = 2;
+
+    private ImportManager() {
+    }
+
+    /**
+     * @param fileName the name of a file
+     * @return if the imports of the file can be organized, which is the case for Java files
+     */
+    public static boolean isSupported(@Nullable String fileName) {
+        return fileName != null && fileName.toLowerCase(Locale.ROOT).endsWith(".java");
+    }
+
+    /**
+     * @param lines the lines of a Java file, usually already preprocessed
+     * @return the lines without unused imports, the very same list if nothing changed. The amount of lines is always the same
+     */
+    public static @NotNull List<String> organizeImports(@NotNull List<String> lines) {
+        List<Import> imports = new ArrayList<>();
+        Set<String> identifiers = new HashSet<>();
+        int state = CODE;
+        boolean header = true;
+
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n);
+            if (header && state == CODE) {
+                String trimmed = line.trim();
+                if (trimmed.startsWith("import ") || trimmed.startsWith("import\t")) {
+                    Import parsed = Import.parse(n, trimmed);
+                    if (parsed != null) {
+                        imports.add(parsed);
+                        continue;
+                    }
+                } else if (trimmed.startsWith("package ") || trimmed.isEmpty() || trimmed.startsWith("//")) {
+                    continue;
+                } else if (!trimmed.startsWith("/*")) {
+                    header = false;
+                }
+            }
+            state = collectIdentifiers(line, state, identifiers);
+        }
+        if (imports.isEmpty()) {
+            return lines;
+        }
+
+        List<String> organized = new ArrayList<>(lines);
+        Set<String> seen = new HashSet<>();
+        boolean changed = false;
+        int runStart = 0;
+        for (int i = 1; i <= imports.size(); i++) {
+            // runs of import lines are organized on their own, so directives around imports stay where they are
+            if (i < imports.size() && imports.get(i).line == imports.get(i - 1).line + 1) {
+                continue;
+            }
+            List<Import> run = imports.subList(runStart, i);
+            List<Import> kept = new ArrayList<>(run.size());
+            for (Import anImport : run) {
+                if (anImport.isUsed(identifiers) && seen.add(anImport.key())) {
+                    kept.add(anImport);
+                }
+            }
+            Collections.sort(kept);
+            int line = run.get(0).line;
+            for (int k = 0; k < run.size(); k++) {
+                String replacement = k < kept.size() ? kept.get(k).text : "";
+                if (!replacement.equals(organized.get(line + k))) {
+                    organized.set(line + k, replacement);
+                    changed = true;
+                }
+            }
+            runStart = i;
+        }
+        return changed ? organized : lines;
+    }
+
+    /**
+     * Adds the identifiers of a line outside of string literals and line comments
+     *
+     * @return the lexer state at the end of the line
+     */
+    private static int collectIdentifiers(@NotNull String line, int state, @NotNull Set<String> identifiers) {
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (state == TEXT_BLOCK) {
+                if (c == '\\') {
+                    i += 2;
+                } else if (line.startsWith("\"\"\"", i)) {
+                    state = CODE;
+                    i += 3;
+                } else {
+                    i++;
+                }
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i++;
+                while (i < length && Character.isJavaIdentifierPart(line.charAt(i))) {
+                    i++;
+                }
+                identifiers.add(line.substring(start, i));
+            } else if (state == BLOCK_COMMENT) {
+                if (c == '*' && i + 1 < length && line.charAt(i + 1) == '/') {
+                    state = CODE;
+                    i += 2;
+                } else {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && line.charAt(i + 1) == '/') {
+                break;
+            } else if (c == '/' && i + 1 < length && line.charAt(i + 1) == '*') {
+                state = BLOCK_COMMENT;
+                i += 2;
+            } else if (c == '"') {
+                if (line.startsWith("\"\"\"", i)) {
+                    state = TEXT_BLOCK;
+                    i += 3;
+                } else {
+                    i = skipQuoted(line, i + 1, '"');
+                }
+            } else if (c == '\'') {
+                i = skipQuoted(line, i + 1, '\'');
+            } else if (c >= '0' && c <= '9') {
+                // numbers like 0xFF or 1L are no identifiers
+                while (i < length && Character.isJavaIdentifierPart(line.charAt(i))) {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+        }
+        return state;
+    }
+
+    private static int skipQuoted(@NotNull String line, int i, char quote) {
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return line.length();
+    }
+
+    private static final class Import implements Comparable<Import> {
+        private final int line;
+        private final String text;
+        private final boolean isStatic;
+        private final String name;
+        /**
+         * the simple name or static member, that has to be used for the import to be needed. Null for wildcard imports
+         */
+        private final @Nullable String usedName;
+
+        private Import(int line, String text, boolean isStatic, String name) {
+            this.line = line;
+            this.text = text;
+            this.isStatic = isStatic;
+            this.name = name;
+            this.usedName = name.endsWith(".*") ? null : name.substring(name.lastIndexOf('.') + 1);
+        }
+
+        /**
+         * @param trimmed the trimmed import line
+         * @return the import, or null if the line is no single import declaration (e.g. several statements in one line)
+         */
+        private static @Nullable Import parse(int line, @NotNull String trimmed) {
+            if (!trimmed.endsWith(";") || trimmed.indexOf(';') != trimmed.length() - 1) {
+                return null;
+            }
+            String declaration = trimmed.substring("import".length(), trimmed.length() - 1).trim();
+            boolean isStatic = declaration.startsWith("static ") || declaration.startsWith("static\t");
+            if (isStatic) {
+                declaration = declaration.substring("static".length()).trim();
+            }
+            // whitespace is allowed around the dots
+            StringBuilder name = new StringBuilder(declaration.length());
+            for (int i = 0; i < declaration.length(); i++) {
+                char c = declaration.charAt(i);
+                if (c == '.' || c == '*' || Character.isJavaIdentifierPart(c)) {
+                    name.append(c);
+                } else if (!Character.isWhitespace(c)) {
+                    return null;
+                }
+            }
+            if (name.length() == 0) {
+                return null;
+            }
+            return new Import(line, trimmed, isStatic, name.toString());
+        }
+
+        private boolean isUsed(@NotNull Set<String> identifiers) {
+            return usedName == null || identifiers.contains(usedName);
+        }
+
+        private @NotNull String key() {
+            return (isStatic ? "static " : "") + name;
+        }
+
+        @Override
+        public int compareTo(@NotNull Import o) {
+            if (isStatic != o.isStatic) {
+                return isStatic ? 1 : -1;
+            }
+            return name.compareTo(o.name);
+        }
+    }
+}
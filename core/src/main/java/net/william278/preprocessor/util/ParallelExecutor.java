@@ -0,0 +1,57 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Runs the per-file work of the tasks on a bounded fork-join pool
+ */
+public final class ParallelExecutor {
+    private ParallelExecutor() {
+    }
+
+    /**
+     * @param items       the work items, each one is handed to exactly one thread
+     * @param parallelism the maximum amount of threads. Values below 2 run everything on the calling thread
+     * @param action      the work to be done per item
+     * @param <T>         the type of the work items
+     */
+    public static <T> void forEach(@NotNull Collection<T> items, int parallelism, @NotNull Consumer<T> action) {
+        if (parallelism < 2 || items.size() < 2) {
+            items.forEach(action);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> items.parallelStream().forEach(action)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            // rethrow parse errors & co. as they would have been thrown by a sequential run
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
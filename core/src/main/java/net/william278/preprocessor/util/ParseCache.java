@@ -0,0 +1,355 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import net.william278.preprocessor.data.Keywords;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Keeps engines with their compiled conditions, remap tables and parsed files between builds, as long as the plugin stays loaded.
+ * <p>
+ * The entries are weighed by their estimated memory usage. If all of them exceed the budget, the least recently used ones are evicted.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class ParseCache {
+    /**
+     * the default memory budget, 64 MiB
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    private static final ParseCache SHARED = new ParseCache(DEFAULT_MAX_BYTES);
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * What is cached
+     */
+    public enum Kind {
+        /**
+         * engines, each with the conditions compiled for its vars
+         */
+        ENGINE,
+        /**
+         * remap tables with their compiled patterns or automaton
+         */
+        REMAPPER,
+        /**
+         * the skeletons of files, by their content hash
+         */
+        SKELETON
+    }
+
+    /**
+     * least recently used first
+     */
+    private final LinkedHashMap<List<Object>, Slot> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private final long[] hits = new long[Kind.values().length];
+    private final long[] misses = new long[Kind.values().length];
+    private long evictions = 0;
+    private long usedBytes = 0;
+    private long maxBytes;
+
+    /**
+     * @param maxBytes the memory budget, 0 disables the cache
+     */
+    public ParseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cache shared by all builds in this JVM, e.g. the Gradle daemon
+     */
+    public static @NotNull ParseCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param maxBytes the new memory budget, 0 disables the cache. Entries are evicted right away, if they exceed it
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * @return if values are kept at all. A disabled cache creates every value again
+     */
+    public synchronized boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @return an engine for the settings, with all conditions it has compiled before
+     * @see PreProcessor#PreProcessor(boolean, Map, Map, BinaryDetector)
+     */
+    public @NotNull PreProcessor getPreProcessor(boolean removeComments, @NotNull Map<String, Object> vars, @NotNull Map<String, Keywords> keywords,
+                                                 @NotNull Collection<String> textExtensions, @NotNull Collection<String> binaryExtensions, @NotNull Charset charset) {
+        return getPreProcessor(removeComments, vars, keywords, textExtensions, binaryExtensions, charset, false);
+    }
+
+    /**
+     * @return an engine for the settings, with all conditions it has compiled before
+     * @see PreProcessor#PreProcessor(boolean, Map, Map, BinaryDetector, boolean)
+     */
+    public @NotNull PreProcessor getPreProcessor(boolean removeComments, @NotNull Map<String, Object> vars, @NotNull Map<String, Keywords> keywords,
+                                                 @NotNull Collection<String> textExtensions, @NotNull Collection<String> binaryExtensions, @NotNull Charset charset,
+                                                 boolean organizeImports) {
+        List<Object> key = List.of(Kind.ENGINE, removeComments, new HashMap<>(vars), new HashMap<>(keywords),
+                new HashSet<>(textExtensions), new HashSet<>(binaryExtensions), charset.name(), organizeImports);
+        return get(key, () -> new PreProcessor(removeComments, vars, keywords, new BinaryDetector(textExtensions, binaryExtensions, charset), organizeImports));
+    }
+
+    /**
+     * @return a ReMapper for the settings, that has been compiled before
+     * @see ReMapper#ReMapper(Map, boolean)
+     */
+    public @NotNull ReMapper getReMapper(@NotNull Map<String, String> map, boolean literal) {
+        return getReMapper(map, literal ? ReMapper.Mode.LITERAL : ReMapper.Mode.REGEX);
+    }
+
+    /**
+     * @return a ReMapper for the settings, that has been compiled before
+     * @see ReMapper#ReMapper(Map, ReMapper.Mode)
+     */
+    public @NotNull ReMapper getReMapper(@NotNull Map<String, String> map, @NotNull ReMapper.Mode mode) {
+        // the order of the replacements matters
+        List<List<String>> replacements = new ArrayList<>();
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            replacements.add(List.of(entry.getKey(), entry.getValue()));
+        }
+        return get(List.of(Kind.REMAPPER, replacements, mode), () -> new ReMapper(map, mode));
+    }
+
+    /**
+     * @param preProcessor the engine, that will convert the skeleton
+     * @param fileName     the file name for error throwing and choosing the keywords
+     * @param content      the content of the file
+     * @return the skeleton of the content, which is only parsed if the same content hasn't been parsed before
+     * @throws IOException if the content can't be decoded
+     * @see PreProcessor#parse(List, String)
+     */
+    public @NotNull DirectiveSkeleton getSkeleton(@NotNull PreProcessor preProcessor, @NotNull String fileName, byte @NotNull [] content) throws IOException {
+        MessageDigest digest = DIGEST.get();
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest(content));
+        List<Object> key = List.of(Kind.SKELETON, fileName, preProcessor.getKeywords(fileName), preProcessor.getCharset().name(), hash);
+        try {
+            return get(key, () -> {
+                try {
+                    return preProcessor.parse(readLines(content, preProcessor.getCharset()), fileName);
+                } catch (IOException e) {
+                    throw new DecodingException(e);
+                }
+            });
+        } catch (DecodingException e) {
+            throw (IOException) e.getCause();
+        }
+    }
+
+    /**
+     * @return the statistics since the cache has been created
+     */
+    public synchronized @NotNull Stats getStats() {
+        return new Stats(hits.clone(), misses.clone(), evictions, slots.size(), usedBytes, maxBytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> @NotNull T get(@NotNull List<Object> key, @NotNull Supplier<T> supplier) {
+        int kind = ((Kind) key.get(0)).ordinal();
+        synchronized (this) {
+            Slot slot = slots.get(key);
+            if (slot != null) {
+                hits[kind]++;
+                // engines grow with every compiled condition and converter, while the other values never change
+                if (slot.value instanceof PreProcessor) {
+                    long weight = weigh(slot.value);
+                    usedBytes += weight - slot.weight;
+                    slot.weight = weight;
+                    evict();
+                }
+                return (T) slot.value;
+            }
+            misses[kind]++;
+        }
+
+        // created without holding the lock, as parsing may take a while
+        T value = supplier.get();
+        synchronized (this) {
+            if (maxBytes <= 0) {
+                return value;
+            }
+            Slot slot = slots.get(key);
+            if (slot != null) {
+                return (T) slot.value;
+            }
+            slot = new Slot(value, weigh(value));
+            slots.put(key, slot);
+            usedBytes += slot.weight;
+            evict();
+        }
+        return value;
+    }
+
+    private void evict() {
+        Iterator<Slot> iterator = slots.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            usedBytes -= iterator.next().weight;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * @return the estimated amount of bytes the value occupies
+     */
+    private static long weigh(@NotNull Object value) {
+        if (value instanceof PreProcessor) {
+            PreProcessor preProcessor = (PreProcessor) value;
+            // a converter holds the automaton of the literal remap keys
+            return 2048 + 512L * preProcessor.getCompiledConditions() + 8192L * preProcessor.getCachedConverters();
+        } else if (value instanceof ReMapper) {
+            long chars = 0;
+            for (String key : ((ReMapper) value).getKeys()) {
+                chars += key.length();
+            }
+            for (String replacement : ((ReMapper) value).getValues()) {
+                chars += replacement.length();
+            }
+            // patterns or automaton states take several times the size of the keys
+            return 1024 + 16 * chars;
+        } else {
+            DirectiveSkeleton skeleton = (DirectiveSkeleton) value;
+            long bytes = 128;
+            for (String line : skeleton.lines) {
+                // the string, its reference and the entries in the arrays of the skeleton
+                bytes += 48 + 2L * line.length() + 8 + 13;
+            }
+            return bytes;
+        }
+    }
+
+    private static @NotNull List<String> readLines(byte @NotNull [] content, @NotNull Charset charset) throws IOException {
+        // just like Files#readAllLines
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), charset.newDecoder()))) {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        }
+    }
+
+    private static final class Slot {
+        private final Object value;
+        private long weight;
+
+        private Slot(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Carries a decoding failure out of the supplier
+     */
+    private static final class DecodingException extends RuntimeException {
+        private DecodingException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * A snapshot of the statistics of a cache
+     */
+    public static final class Stats {
+        private final long[] hits;
+        private final long[] misses;
+        private final long evictions;
+        private final int entries;
+        private final long usedBytes;
+        private final long maxBytes;
+
+        private Stats(long[] hits, long[] misses, long evictions, int entries, long usedBytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.usedBytes = usedBytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public long getHits(@NotNull Kind kind) {
+            return hits[kind.ordinal()];
+        }
+
+        public long getMisses(@NotNull Kind kind) {
+            return misses[kind.ordinal()];
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getUsedBytes() {
+            return usedBytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        /**
+         * @param earlier a previous snapshot of the same cache
+         * @return the hits, misses and evictions since the earlier snapshot, with the current size
+         */
+        public @NotNull Stats since(@NotNull Stats earlier) {
+            long[] hits = new long[this.hits.length];
+            long[] misses = new long[this.misses.length];
+            for (int i = 0; i < hits.length; i++) {
+                hits[i] = this.hits[i] - earlier.hits[i];
+                misses[i] = this.misses[i] - earlier.misses[i];
+            }
+            return new Stats(hits, misses, evictions - earlier.evictions, entries, usedBytes, maxBytes);
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Kind kind : Kind.values()) {
+                joiner.add(kind.name().toLowerCase(Locale.ROOT) + ": " + getHits(kind) + " hits / " + getMisses(kind) + " misses");
+            }
+            return joiner + String.format(Locale.ROOT, ", %d evictions, %d entries using %.1f of %.1f MiB",
+                    evictions, entries, usedBytes / 1048576.0, maxBytes / 1048576.0);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects what a preprocessing run spent its time on. All methods are thread-safe, so one report can be shared by all worker threads.
+ * <p>
+ * Phase times are summed over all threads and are therefore larger than the wall time of parallel runs.
+ */
+public final class PerformanceReport {
+    /**
+     * The steps the time of a run is split into
+     */
+    public enum Phase {
+        /**
+         * finding the source files
+         */
+        WALK,
+        /**
+         * reading lines, detecting binaries and scanning for keywords
+         */
+        READ,
+        /**
+         * handling directives and commenting lines out
+         */
+        EVALUATE,
+        /**
+         * applying the {@link ReMapper} and organizing the imports, see {@link ImportManager}
+         */
+        REMAP,
+        /**
+         * writing lines, copying files and replacing outputs
+         */
+        WRITE
+    }
+
+    private final int topFiles;
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final Map<PreProcessor.FileResult, LongAdder> results = new EnumMap<>(PreProcessor.FileResult.class);
+    private final LongAdder deletedFiles = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder directives = new LongAdder();
+    private final Set<String> conditions = ConcurrentHashMap.newKeySet();
+    /**
+     * by path, the source folder used and the source folders ignored
+     */
+    private final Map<String, ShadowedFile> shadowedFiles = new ConcurrentSkipListMap<>();
+    /**
+     * min-heaps, so the head is the first file to drop
+     */
+    private final PriorityQueue<FileStats> slowestFiles = new PriorityQueue<>(Comparator.comparingLong(FileStats::nanos));
+    private final PriorityQueue<FileStats> largestFiles = new PriorityQueue<>(Comparator.comparingLong(FileStats::bytes));
+
+    /**
+     * @param topFiles the amount of slowest and largest files that shall be listed
+     */
+    public PerformanceReport(int topFiles) {
+        this.topFiles = topFiles;
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+        for (PreProcessor.FileResult result : PreProcessor.FileResult.values()) {
+            results.put(result, new LongAdder());
+        }
+    }
+
+    /**
+     * @param phase the phase the time has been spent in
+     * @param nanos the time spent
+     */
+    public void addTime(@NotNull Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    /**
+     * @param path         the path of the file, relative to its source folder
+     * @param result       how the file has been handled
+     * @param bytesRead    the size of the source file
+     * @param bytesWritten the amount of bytes written to the target file
+     * @param nanos        the time it took to handle the file
+     */
+    public void addFile(@NotNull String path, @NotNull PreProcessor.FileResult result, long bytesRead, long bytesWritten, long nanos) {
+        results.get(result).increment();
+        this.bytesRead.add(bytesRead);
+        this.bytesWritten.add(bytesWritten);
+        if (topFiles > 0) {
+            FileStats stats = new FileStats(path, bytesRead, nanos);
+            offer(slowestFiles, stats);
+            offer(largestFiles, stats);
+        }
+    }
+
+    private void offer(@NotNull PriorityQueue<FileStats> queue, @NotNull FileStats stats) {
+        synchronized (queue) {
+            queue.add(stats);
+            if (queue.size() > topFiles) {
+                queue.poll();
+            }
+        }
+    }
+
+    /**
+     * a target file has been deleted, as its source file has been removed
+     */
+    public void addDeletedFile() {
+        deletedFiles.increment();
+    }
+
+    /**
+     * @param path     the path of the file, relative to the source folders
+     * @param source   the source folder, whose file is preprocessed
+     * @param shadowed the source folders with a file at the same path, that is ignored
+     */
+    public void addShadowedFile(@NotNull String path, @NotNull String source, @NotNull List<String> shadowed) {
+        shadowedFiles.put(path, new ShadowedFile(source, List.copyOf(shadowed)));
+    }
+
+    /**
+     * @return the amount of paths contained in several source folders
+     */
+    public int getShadowedFiles() {
+        return shadowedFiles.size();
+    }
+
+    /**
+     * @param condition the condition of an evaluated if or elseif directive
+     */
+    void addDirective(@NotNull String condition) {
+        directives.increment();
+        conditions.add(condition);
+    }
+
+    /**
+     * @return the amount of files handled the given way
+     */
+    public long getFiles(@NotNull PreProcessor.FileResult result) {
+        return results.get(result).sum();
+    }
+
+    /**
+     * @return the amount of files handled in any way
+     */
+    public long getFiles() {
+        long files = 0;
+        for (LongAdder adder : results.values()) {
+            files += adder.sum();
+        }
+        return files;
+    }
+
+    /**
+     * @return the time spent in the phase, summed over all threads
+     */
+    public long getNanos(@NotNull Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * @return the amount of evaluated if and elseif directives
+     */
+    public long getDirectives() {
+        return directives.sum();
+    }
+
+    /**
+     * @return the amount of distinct conditions among the evaluated directives
+     */
+    public int getDistinctConditions() {
+        return conditions.size();
+    }
+
+    /**
+     * @param info      additional top-level values (strings, numbers, booleans or lists of them), written before the statistics
+     * @param wallNanos the time the whole run took
+     * @return the report as JSON object
+     */
+    public @NotNull String toJson(@NotNull Map<String, ?> info, long wallNanos) {
+        StringBuilder json = new StringBuilder("{\n");
+        for (Map.Entry<String, ?> entry : info.entrySet()) {
+            json.append("  ");
+            string(json, entry.getKey()).append(": ");
+            value(json, entry.getValue()).append(",\n");
+        }
+
+        json.append("  \"files\": {\n")
+                .append("    \"processed\": ").append(getFiles()).append(",\n")
+                .append("    \"converted\": ").append(getFiles(PreProcessor.FileResult.CONVERTED)).append(",\n")
+                .append("    \"passthrough\": ").append(getFiles(PreProcessor.FileResult.PASSTHROUGH)).append(",\n")
+                .append("    \"unchanged\": ").append(getFiles(PreProcessor.FileResult.UNCHANGED)).append(",\n")
+                .append("    \"skipped\": ").append(getFiles(PreProcessor.FileResult.COPIED)).append(",\n")
+                .append("    \"deleted\": ").append(deletedFiles.sum()).append(",\n")
+                .append("    \"shadowed\": ").append(getShadowedFiles()).append("\n")
+                .append("  },\n");
+        json.append("  \"bytes\": {\n")
+                .append("    \"read\": ").append(bytesRead.sum()).append(",\n")
+                .append("    \"written\": ").append(bytesWritten.sum()).append("\n")
+                .append("  },\n");
+        json.append("  \"millis\": {\n")
+                .append("    \"wall\": ").append(millis(wallNanos));
+        for (Phase phase : Phase.values()) {
+            json.append(",\n    ");
+            string(json, phase.name().toLowerCase(Locale.ROOT)).append(": ").append(millis(getNanos(phase)));
+        }
+        json.append("\n  },\n");
+        json.append("  \"directives\": {\n")
+                .append("    \"evaluated\": ").append(getDirectives()).append(",\n")
+                .append("    \"distinctConditions\": ").append(getDistinctConditions()).append("\n")
+                .append("  },\n");
+        files(json, "slowestFiles", slowestFiles, Comparator.comparingLong(FileStats::nanos).reversed()).append(",\n");
+        files(json, "largestFiles", largestFiles, Comparator.comparingLong(FileStats::bytes).reversed()).append(",\n");
+        shadowedFiles(json).append("\n");
+        return json.append("}\n").toString();
+    }
+
+    private @NotNull StringBuilder files(@NotNull StringBuilder json, @NotNull String name, @NotNull PriorityQueue<FileStats> queue, @NotNull Comparator<FileStats> order) {
+        List<FileStats> files;
+        synchronized (queue) {
+            files = new ArrayList<>(queue);
+        }
+        files.sort(order);
+
+        json.append("  ");
+        string(json, name).append(": [");
+        for (int i = 0; i < files.size(); i++) {
+            FileStats file = files.get(i);
+            json.append(i == 0 ? "\n" : ",\n").append("    {\"path\": ");
+            string(json, file.path()).append(", \"bytes\": ").append(file.bytes()).append(", \"millis\": ").append(millis(file.nanos())).append('}');
+        }
+        return json.append(files.isEmpty() ? "]" : "\n  ]");
+    }
+
+    private @NotNull StringBuilder shadowedFiles(@NotNull StringBuilder json) {
+        json.append("  \"shadowedFiles\": [");
+        boolean first = true;
+        for (Map.Entry<String, ShadowedFile> entry : shadowedFiles.entrySet()) {
+            json.append(first ? "\n" : ",\n").append("    {\"path\": ");
+            string(json, entry.getKey()).append(", \"source\": ");
+            string(json, entry.getValue().source).append(", \"shadowed\": ");
+            value(json, entry.getValue().shadowed).append('}');
+            first = false;
+        }
+        return json.append(first ? "]" : "\n  ]");
+    }
+
+    static @NotNull StringBuilder value(@NotNull StringBuilder json, @Nullable Object value) {
+        if (value == null) {
+            return json.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return json.append(value);
+        } else if (value instanceof Collection) {
+            json.append('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    json.append(", ");
+                }
+                value(json, element);
+                first = false;
+            }
+            return json.append(']');
+        }
+        return string(json, value.toString());
+    }
+
+    static @NotNull StringBuilder string(@NotNull StringBuilder json, @NotNull String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"');
+    }
+
+    private static @NotNull String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static final class ShadowedFile {
+        private final String source;
+        private final List<String> shadowed;
+
+        private ShadowedFile(String source, List<String> shadowed) {
+            this.source = source;
+            this.shadowed = shadowed;
+        }
+    }
+
+    private static final class FileStats {
+        private final String path;
+        private final long bytes;
+        private final long nanos;
+
+        private FileStats(String path, long bytes, long nanos) {
+            this.path = path;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        private String path() {
+            return path;
+        }
+
+        private long bytes() {
+            return bytes;
+        }
+
+        private long nanos() {
+            return nanos;
+        }
+    }
+}
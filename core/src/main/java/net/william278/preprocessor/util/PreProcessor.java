@@ -0,0 +1,990 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import net.william278.preprocessor.data.Keywords;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The actual preprocessing is happening here.
+ * <p>
+ * Instances are immutable and thread-safe: the vars are parsed into a {@link Vars} snapshot and the keywords are copied on construction, so one engine can be shared by all worker threads.
+ */
+public class PreProcessor {
+    private final boolean removeComments;
+    /**
+     * The {@code vars} option of the plugin extension
+     */
+    private final Vars vars;
+    /**
+     * The {@code keywords} option of the plugin extension
+     */
+    private final Map<String, Keywords> keywordsMap;
+    /**
+     * The {@code textExtensions}, {@code binaryExtensions} and {@code charset} options of the plugin extension
+     */
+    private final BinaryDetector binaryDetector;
+    /**
+     * if unused imports are removed from Java files after preprocessing, see {@link ImportManager}
+     */
+    private final boolean organizeImports;
+
+    /**
+     * @param vars the vars that shall be used for the custom if-statements
+     */
+    public PreProcessor(Map<String, Object> vars) {
+        this(vars, new HashMap<>());
+    }
+
+    public PreProcessor(Boolean removeComments, Map<String, Object> vars) {
+        this(removeComments, vars, new HashMap<>());
+    }
+
+    /**
+     * @param vars        the vars that shall be used for the custom if-statements
+     * @param keywordsMap custom keywords, where the key is something the target file name should end with (e.g. '.json') and the Keywords are the custom keywords for this file type.
+     */
+    public PreProcessor(Map<String, Object> vars, Map<String, Keywords> keywordsMap) {
+        this(false, vars, keywordsMap);
+    }
+
+    public PreProcessor(boolean removeComments, Map<String, Object> vars, Map<String, Keywords> keywordsMap) {
+        this(removeComments, vars, keywordsMap, BinaryDetector.DEFAULT);
+    }
+
+    /**
+     * @param removeComments if the preprocessor comments shall be removed
+     * @param vars           the vars that shall be used for the custom if-statements
+     * @param keywordsMap    custom keywords, where the key is something the target file name should end with (e.g. '.json') and the Keywords are the custom keywords for this file type.
+     * @param binaryDetector decides which files are copied instead of preprocessed, and the charset of all others
+     */
+    public PreProcessor(boolean removeComments, Map<String, Object> vars, Map<String, Keywords> keywordsMap, BinaryDetector binaryDetector) {
+        this(removeComments, vars, keywordsMap, binaryDetector, false);
+    }
+
+    /**
+     * @param removeComments  if the preprocessor comments shall be removed
+     * @param vars            the vars that shall be used for the custom if-statements
+     * @param keywordsMap     custom keywords, where the key is something the target file name should end with (e.g. '.json') and the Keywords are the custom keywords for this file type.
+     * @param binaryDetector  decides which files are copied instead of preprocessed, and the charset of all others
+     * @param organizeImports if the imports of Java files, that are unused after preprocessing, shall be removed. Files without directives are passed through untouched
+     */
+    public PreProcessor(boolean removeComments, Map<String, Object> vars, Map<String, Keywords> keywordsMap, BinaryDetector binaryDetector, boolean organizeImports) {
+        this.removeComments = removeComments;
+        this.vars = Vars.of(vars);
+        this.keywordsMap = Collections.unmodifiableMap(new HashMap<>(keywordsMap));
+        this.binaryDetector = binaryDetector;
+        this.organizeImports = organizeImports;
+    }
+
+    /**
+     * Every distinct condition is only compiled once per engine
+     */
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+    private final Map<ScannerKey, ByteScanner> scanners = new ConcurrentHashMap<>();
+    /**
+     * scans for the keywords only, see {@link #mayContainDirectives(Path)}
+     */
+    private static final ReMapper NO_REMAPPING = new ReMapper(Map.of(), ReMapper.Mode.LITERAL);
+    private final Map<ScannerKey, Utf8Converter> utf8Converters = new ConcurrentHashMap<>();
+
+    /**
+     * @param condition will be read and evaluated
+     * @return the value of the evaluated condition
+     */
+    public boolean evalExpression(String condition) {
+        return evalExpression(condition, -1, null);
+    }
+
+    /**
+     * @param condition  will be read and evaluated
+     * @param lineNumber required for error throwing
+     * @param fileName   required for error throwing
+     * @return the value of the evaluated condition
+     */
+    public boolean evalExpression(@NotNull String condition, int lineNumber, @Nullable String fileName) {
+        return expressions.computeIfAbsent(condition, key -> Expression.compile(key, vars)).eval(lineNumber, fileName);
+    }
+
+    /**
+     * @return the charset of all text files
+     */
+    @NotNull Charset getCharset() {
+        return binaryDetector.getCharset();
+    }
+
+    /**
+     * @param path the file to check
+     * @return if the file is handled as binary, see {@link BinaryDetector}
+     * @throws IOException if the probe can't be read
+     */
+    boolean isBinary(@NotNull Path path) throws IOException {
+        return binaryDetector.isBinary(path, getExtension(path.getFileName().toString()));
+    }
+
+    /**
+     * Checks the raw bytes for the keywords of the file type, like {@link #transferUnprocessed(ReMapper, File, File)} does
+     *
+     * @param path the text file to check
+     * @return false if the file contains no keyword, so no line depends on the vars. True if it does or the charset is not ASCII compatible
+     * @throws IOException if reading fails
+     */
+    boolean mayContainDirectives(@NotNull Path path) throws IOException {
+        ByteScanner scanner = getScanner(getKeywords(path.getFileName().toString()), NO_REMAPPING);
+        return scanner == null || scanner.containsAny(path);
+    }
+
+    /**
+     * @return the amount of scanners and byte converters created so far, one per keywords and remap content
+     */
+    int getCachedConverters() {
+        return scanners.size() + utf8Converters.size();
+    }
+
+    /**
+     * @return the amount of distinct conditions compiled so far
+     */
+    int getCompiledConditions() {
+        return expressions.size();
+    }
+
+    /**
+     * @param line the directive line
+     * @param from the index right behind the keyword
+     * @param to   the index behind the last non-whitespace char of the line
+     * @return the condition of the directive or null, if there is no space between keyword and condition
+     */
+    private static @Nullable String condition(@NotNull String line, int from, int to) {
+        if (from >= to || line.charAt(from) != ' ') {
+            return null;
+        }
+        while (line.charAt(from) <= ' ') {
+            from++;
+        }
+        return line.substring(from, to);
+    }
+
+    /**
+     * @param lines the file, already read as lines
+     * @return the preprocessed lines
+     */
+    public List<String> convertSource(List<String> lines) {
+        return convertSource(lines, null);
+    }
+
+    /**
+     * @param lines    the file, already read as lines
+     * @param fileName the file name for error throwing
+     * @return the preprocessed lines
+     */
+    public List<String> convertSource(@NotNull List<String> lines, @Nullable String fileName) {
+        LineConverter converter = new LineConverter(fileName, null, null);
+        List<String> mappedLines = new ArrayList<>();
+        for (final String line : lines) {
+            String mapped = converter.convertLine(line);
+            if (mapped != null) {
+                mappedLines.add(mapped);
+            }
+        }
+        converter.finish();
+        return organizeImports(mappedLines, fileName);
+    }
+
+    /**
+     * Classifies all lines once, so they can be converted for several var sets without being parsed again
+     *
+     * @param lines    the file, already read as lines
+     * @param fileName the file name for error throwing and choosing the keywords
+     * @return the skeleton of the file
+     */
+    public @NotNull DirectiveSkeleton parse(@NotNull List<String> lines, @Nullable String fileName) {
+        LineConverter converter = new LineConverter(fileName, null, null);
+        DirectiveSkeleton skeleton = new DirectiveSkeleton(converter.keywords, fileName, lines.toArray(new String[0]));
+        for (int i = 0; i < skeleton.lines.length; i++) {
+            String line = skeleton.lines[i];
+            int length = line.length();
+            int start = 0;
+            while (start < length && line.charAt(start) <= ' ') {
+                start++;
+            }
+            int end = length;
+            while (end > start && line.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            skeleton.kinds[i] = converter.kindOf(line, start, end);
+            skeleton.starts[i] = start;
+            skeleton.ends[i] = end;
+            skeleton.indentations[i] = length - (end - start);
+        }
+        return skeleton;
+    }
+
+    /**
+     * @param skeleton the parsed file, see {@link #parse(List, String)}
+     * @return the preprocessed lines, just like {@link #convertSource(List, String)} would return them
+     * @throws IllegalArgumentException if the skeleton has been parsed with other keywords than this engine uses for the file
+     */
+    public List<String> convert(@NotNull DirectiveSkeleton skeleton) {
+        return convert(skeleton, null);
+    }
+
+    /**
+     * @param skeleton the parsed file, see {@link #parse(List, String)}
+     * @param reMapper ReMapper to be used to replace matches in the lines, before the imports are organized. May be null
+     * @return the preprocessed and remapped lines, just like {@link #convertFile(ReMapper, File, File)} would write them
+     * @throws IllegalArgumentException if the skeleton has been parsed with other keywords than this engine uses for the file
+     */
+    public List<String> convert(@NotNull DirectiveSkeleton skeleton, @Nullable ReMapper reMapper) {
+        return convert(skeleton, reMapper, null, null);
+    }
+
+    private @NotNull List<String> convert(@NotNull DirectiveSkeleton skeleton, @Nullable ReMapper reMapper,
+                                          @Nullable PerformanceReport report, @Nullable SkeletonIndex.Recorder recorder) {
+        LineConverter converter = converterFor(skeleton, report, recorder);
+        ReMapper.FileMapper fileMapper = reMapper != null ? reMapper.forFile(skeleton.fileName, converter.keywords.EVAL()) : null;
+        List<String> mappedLines = new ArrayList<>(skeleton.lines.length);
+        for (int i = 0; i < skeleton.lines.length; i++) {
+            converter.n++;
+            String mapped = converter.apply(skeleton.lines[i], skeleton.kinds[i], skeleton.starts[i], skeleton.ends[i], skeleton.indentations[i]);
+            if (mapped != null) {
+                mappedLines.add(fileMapper != null ? fileMapper.convertLine(mapped) : mapped);
+            }
+        }
+        converter.finish();
+        return organizeImports(mappedLines, skeleton.fileName);
+    }
+
+    /**
+     * Evaluates the directives of a parsed file without converting any line, so the result of several var sets can be compared cheaply, see {@link ImpactAnalyzer}
+     *
+     * @param skeleton the parsed file, see {@link #parse(List, String)}
+     * @return the indices of the text lines, that are active for the vars of this engine. Directive lines are never contained
+     * @throws IllegalArgumentException if the skeleton has been parsed with other keywords than this engine uses for the file
+     */
+    public @NotNull BitSet activeLines(@NotNull DirectiveSkeleton skeleton) {
+        LineConverter converter = converterFor(skeleton, null, null);
+        BitSet active = new BitSet(skeleton.lines.length);
+        for (int i = 0; i < skeleton.lines.length; i++) {
+            converter.n++;
+            if (converter.isActive(skeleton.lines[i], skeleton.kinds[i], skeleton.starts[i], skeleton.ends[i], skeleton.indentations[i])) {
+                active.set(i);
+            }
+        }
+        converter.finish();
+        return active;
+    }
+
+    private @NotNull LineConverter converterFor(@NotNull DirectiveSkeleton skeleton, @Nullable PerformanceReport report, @Nullable SkeletonIndex.Recorder recorder) {
+        LineConverter converter = new LineConverter(skeleton.fileName, report, recorder);
+        if (!converter.keywords.equals(skeleton.keywords)) {
+            throw new IllegalArgumentException("The skeleton has been parsed with other keywords");
+        }
+        return converter;
+    }
+
+    private @NotNull List<String> organizeImports(@NotNull List<String> lines, @Nullable String fileName) {
+        return organizeImports && ImportManager.isSupported(fileName) ? ImportManager.organizeImports(lines) : lines;
+    }
+
+    /**
+     * Preprocesses and remaps line by line, so only the current line has to be held in memory.
+     * Every written line is terminated with {@code \n}.
+     *
+     * @param reader   the source to be preprocessed
+     * @param writer   where the preprocessed lines shall be written to
+     * @param fileName the file name for error throwing and choosing the keywords
+     * @param reMapper ReMapper to be used to replace matches in the lines
+     * @throws IOException if reading or writing fails
+     */
+    public void convert(@NotNull Reader reader, @NotNull Writer writer, @Nullable String fileName, @NotNull ReMapper reMapper) throws IOException {
+        convert(reader, writer, fileName, reMapper, null, null);
+    }
+
+    /**
+     * Like {@link #convert(Reader, Writer, String, ReMapper)}, but times every line, if a report is given
+     */
+    private void convert(@NotNull Reader reader, @NotNull Writer writer, @Nullable String fileName, @NotNull ReMapper reMapper,
+                         @Nullable PerformanceReport report, @Nullable SkeletonIndex.Recorder recorder) throws IOException {
+        if (!organizeImports || !ImportManager.isSupported(fileName)) {
+            convertLines(reader, writer, fileName, reMapper, report, recorder);
+            return;
+        }
+
+        // the imports can only be organized once the whole file is known
+        StringWriter buffer = new StringWriter();
+        convertLines(reader, buffer, fileName, reMapper, report, recorder);
+        long start = report != null ? System.nanoTime() : 0;
+        List<String> lines = new ArrayList<>();
+        String converted = buffer.toString();
+        int lineStart = 0;
+        for (int end = converted.indexOf('\n'); end >= 0; end = converted.indexOf('\n', lineStart)) {
+            lines.add(converted.substring(lineStart, end));
+            lineStart = end + 1;
+        }
+        lines = ImportManager.organizeImports(lines);
+        if (report != null) {
+            report.addTime(PerformanceReport.Phase.REMAP, System.nanoTime() - start);
+        }
+        for (String line : lines) {
+            writer.write(line);
+            writer.write('\n');
+        }
+    }
+
+    private void convertLines(@NotNull Reader reader, @NotNull Writer writer, @Nullable String fileName, @NotNull ReMapper reMapper,
+                              @Nullable PerformanceReport report, @Nullable SkeletonIndex.Recorder recorder) throws IOException {
+        BufferedReader bufferedReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        LineConverter converter = new LineConverter(fileName, report, recorder);
+        ReMapper.FileMapper fileMapper = reMapper.forFile(fileName, getKeywords(fileName).EVAL());
+        String line;
+        if (report == null) {
+            while ((line = bufferedReader.readLine()) != null) {
+                String mapped = converter.convertLine(line);
+                if (mapped != null) {
+                    writer.write(fileMapper.convertLine(mapped));
+                    writer.write('\n');
+                }
+            }
+        } else {
+            // every phase runs over the whole file, so it is timed once instead of per line
+            long time = System.nanoTime();
+            List<String> lines = new ArrayList<>();
+            while ((line = bufferedReader.readLine()) != null) {
+                lines.add(line);
+            }
+            time = lap(report, PerformanceReport.Phase.READ, time);
+
+            List<String> mappedLines = new ArrayList<>(lines.size());
+            for (String source : lines) {
+                String mapped = converter.convertLine(source);
+                if (mapped != null) {
+                    mappedLines.add(mapped);
+                }
+            }
+            time = lap(report, PerformanceReport.Phase.EVALUATE, time);
+
+            for (int i = 0; i < mappedLines.size(); i++) {
+                mappedLines.set(i, fileMapper.convertLine(mappedLines.get(i)));
+            }
+            time = lap(report, PerformanceReport.Phase.REMAP, time);
+
+            for (String mapped : mappedLines) {
+                writer.write(mapped);
+                writer.write('\n');
+            }
+            lap(report, PerformanceReport.Phase.WRITE, time);
+        }
+        converter.finish();
+    }
+
+    /**
+     * @return the current time, after adding the time since the given one to the phase
+     */
+    private static long lap(@NotNull PerformanceReport report, @NotNull PerformanceReport.Phase phase, long time) {
+        long now = System.nanoTime();
+        report.addTime(phase, now - time);
+        return now;
+    }
+
+    /**
+     * @param reMapper ReMapper to be used to replace matches in the files
+     * @param inFile   the file that shall be preprocessed
+     * @param outFile  the file where the preprocessed lines shall be written to. May be the same as inFile
+     * @return how the file has been handled
+     */
+    public FileResult convertFile(@NotNull ReMapper reMapper, @NotNull File inFile, @NotNull File outFile) {
+        return convertFile(reMapper, inFile, outFile, null);
+    }
+
+    /**
+     * @param reMapper ReMapper to be used to replace matches in the files
+     * @param inFile   the file that shall be preprocessed
+     * @param outFile  the file where the preprocessed lines shall be written to. May be the same as inFile
+     * @param report   collects where the time is spent, may be null
+     * @return how the file has been handled
+     */
+    public FileResult convertFile(@NotNull ReMapper reMapper, @NotNull File inFile, @NotNull File outFile, @Nullable PerformanceReport report) {
+        return convertFile(reMapper, inFile, outFile, report, null);
+    }
+
+    /**
+     * @param reMapper ReMapper to be used to replace matches in the files
+     * @param inFile   the file that shall be preprocessed
+     * @param outFile  the file where the preprocessed lines shall be written to. May be the same as inFile
+     * @param report   collects where the time is spent, may be null
+     * @param recorder collects the directives of the file, so it can be indexed. May be null
+     * @return how the file has been handled
+     */
+    public FileResult convertFile(@NotNull ReMapper reMapper, @NotNull File inFile, @NotNull File outFile,
+                                  @Nullable PerformanceReport report, @Nullable SkeletonIndex.Recorder recorder) {
+        return convertFile(reMapper, inFile, outFile, report, recorder, null);
+    }
+
+    /**
+     * @param reMapper ReMapper to be used to replace matches in the files
+     * @param inFile   the file that shall be preprocessed
+     * @param outFile  the file where the preprocessed lines shall be written to. May be the same as inFile
+     * @param report   collects where the time is spent, may be null
+     * @param recorder collects the directives of the file, so it can be indexed. May be null
+     * @param cache    keeps the skeleton of the file by its content, so the same content is only parsed once. If null or disabled, the file is streamed instead
+     * @return how the file has been handled
+     */
+    public FileResult convertFile(@NotNull ReMapper reMapper, @NotNull File inFile, @NotNull File outFile,
+                                  @Nullable PerformanceReport report, @Nullable SkeletonIndex.Recorder recorder, @Nullable ParseCache cache) {
+        Timer timer = new Timer(report);
+        FileResult transferred = transferUnprocessed(reMapper, inFile, outFile, timer);
+        if (transferred != null) {
+            return transferred;
+        }
+
+        Path inPath = inFile.toPath();
+        Path outPath = outFile.toPath();
+        Charset charset = binaryDetector.getCharset();
+        Keywords keywords = getKeywords(inFile.getName());
+
+        Path tempPath = null;
+        boolean inPlace = false;
+        try {
+            Path outDir = outPath.toAbsolutePath().getParent();
+            Files.createDirectories(outDir);
+            // existing files (e.g. when converting in place) are only replaced if their content changes
+            if (Files.exists(outPath)) {
+                inPlace = Files.isSameFile(inPath, outPath);
+                tempPath = Files.createTempFile(outDir, outFile.getName(), ".tmp");
+            }
+            Path targetPath = tempPath != null ? tempPath : outPath;
+            // the byte converter streams line by line, while organizing imports needs the whole file
+            Utf8Converter utf8Converter = organizeImports && ImportManager.isSupported(inFile.getName()) ? null : getUtf8Converter(keywords, reMapper);
+            if (cache != null && cache.isEnabled()) {
+                convertSkeleton(inPath, targetPath, inFile.getName(), reMapper, cache, report, recorder);
+            } else if (utf8Converter != null && Files.size(inPath) <= Utf8Converter.MAX_FILE_SIZE) {
+                try (FileChannel channel = FileChannel.open(targetPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    utf8Converter.convert(inPath, channel, inFile.getName(), report, recorder);
+                }
+            } else {
+                try (BufferedReader reader = Files.newBufferedReader(inPath, charset);
+                     BufferedWriter writer = Files.newBufferedWriter(targetPath, charset)) {
+                    convert(reader, writer, inFile.getName(), reMapper, report, recorder);
+                }
+            }
+            // the lines have been timed by convert
+            timer.reset();
+            if (tempPath != null) {
+                boolean unchanged = Files.mismatch(tempPath, outPath) == -1;
+                if (!unchanged) {
+                    replace(tempPath, outPath);
+                }
+                timer.lap(PerformanceReport.Phase.WRITE);
+                if (unchanged) {
+                    return FileResult.UNCHANGED;
+                }
+            }
+            return FileResult.CONVERTED;
+        } catch (IOException e) {
+            // some error while reading. Just copy the file
+            if (recorder != null) {
+                recorder.clear();
+            }
+            try {
+                if (!inPlace) {
+                    Files.copy(inPath, outPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+                timer.lap(PerformanceReport.Phase.WRITE);
+                return FileResult.COPIED;
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        } finally {
+            if (tempPath != null) {
+                try {
+                    Files.deleteIfExists(tempPath);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts the skeleton of the file from the cache, which is only parsed if the same content hasn't been parsed before
+     */
+    private void convertSkeleton(@NotNull Path inPath, @NotNull Path targetPath, @NotNull String fileName, @NotNull ReMapper reMapper, @NotNull ParseCache cache,
+                                 @Nullable PerformanceReport report, @Nullable SkeletonIndex.Recorder recorder) throws IOException {
+        Timer timer = new Timer(report);
+        DirectiveSkeleton skeleton = cache.getSkeleton(this, fileName, Files.readAllBytes(inPath));
+        timer.lap(PerformanceReport.Phase.READ);
+        List<String> lines = convert(skeleton, reMapper, report, recorder);
+        timer.lap(PerformanceReport.Phase.EVALUATE);
+        try (BufferedWriter writer = Files.newBufferedWriter(targetPath, binaryDetector.getCharset())) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        timer.lap(PerformanceReport.Phase.WRITE);
+    }
+
+    /**
+     * Copies binaries and files without any keyword or remap key, as their output doesn't depend on the vars
+     *
+     * @return {@link FileResult#COPIED} or {@link FileResult#PASSTHROUGH} if the file has been copied, otherwise null
+     */
+    @Nullable FileResult transferUnprocessed(@NotNull ReMapper reMapper, @NotNull File inFile, @NotNull File outFile) {
+        return transferUnprocessed(reMapper, inFile, outFile, new Timer(null));
+    }
+
+    private @Nullable FileResult transferUnprocessed(@NotNull ReMapper reMapper, @NotNull File inFile, @NotNull File outFile, @NotNull Timer timer) {
+        Path inPath = inFile.toPath();
+        Path outPath = outFile.toPath();
+
+        // binaries are copied without trying to read them as text
+        try {
+            boolean binary = binaryDetector.isBinary(inPath, getExtension(inFile.getName()));
+            timer.lap(PerformanceReport.Phase.READ);
+            if (binary) {
+                if (!(Files.exists(outPath) && Files.isSameFile(inPath, outPath))) {
+                    Files.createDirectories(outPath.toAbsolutePath().getParent());
+                    transfer(inPath, outPath);
+                }
+                timer.lap(PerformanceReport.Phase.WRITE);
+                return FileResult.COPIED;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // files without any keyword or remap key are copied without decoding them
+        Keywords keywords = getKeywords(inFile.getName());
+        ByteScanner scanner = getScanner(keywords, reMapper);
+        if (scanner != null) {
+            try {
+                boolean unchanged = scanner.isUnchangedByConversion(inPath);
+                timer.lap(PerformanceReport.Phase.READ);
+                if (unchanged) {
+                    if (!(Files.exists(outPath) && Files.isSameFile(inPath, outPath))) {
+                        Files.createDirectories(outPath.toAbsolutePath().getParent());
+                        transfer(inPath, outPath);
+                    }
+                    timer.lap(PerformanceReport.Phase.WRITE);
+                    return FileResult.PASSTHROUGH;
+                }
+            } catch (IOException ignored) {
+                // converted like any other file
+                timer.lap(PerformanceReport.Phase.READ);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Atomically replaces the target with the source, keeping the permissions of the target
+     */
+    private static void replace(@NotNull Path source, @NotNull Path target) throws IOException {
+        if (Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(source, Files.getPosixFilePermissions(target));
+        }
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * How {@link #convertFile(ReMapper, File, File)} handled a file
+     */
+    public enum FileResult {
+        /**
+         * the file has been preprocessed line by line
+         */
+        CONVERTED,
+        /**
+         * the file contains neither keywords nor remap keys and has been copied byte by byte
+         */
+        PASSTHROUGH,
+        /**
+         * the file has been preprocessed, but the existing output already has the very same content and has been left untouched.
+         * Also used for files, that have not been read at all as their output is still up-to-date according to the {@link SkeletonIndex}
+         */
+        UNCHANGED,
+        /**
+         * the file is binary or could not be read as text, and has been copied
+         */
+        COPIED
+    }
+
+    /**
+     * @return the scanner for the keywords and the literal remap keys or null, if the remap keys are no plain strings or the charset is not ASCII compatible
+     */
+    private @Nullable ByteScanner getScanner(@NotNull Keywords keywords, @NotNull ReMapper reMapper) {
+        Collection<String> remapKeys = reMapper.getLiteralKeys();
+        Charset charset = binaryDetector.getCharset();
+        if (remapKeys == null || !Arrays.equals("\r\n".getBytes(charset), new byte[]{'\r', '\n'})) {
+            return null;
+        }
+        return scanners.computeIfAbsent(new ScannerKey(keywords, reMapper), key -> {
+            List<byte[]> needles = new ArrayList<>();
+            for (String needle : List.of(keywords.IF(), keywords.ELSEIF(), keywords.ELSE(), keywords.ENDIF(), keywords.EVAL())) {
+                needles.add(needle.getBytes(charset));
+            }
+            for (String needle : remapKeys) {
+                needles.add(needle.getBytes(charset));
+            }
+            return new ByteScanner(needles);
+        });
+    }
+
+    /**
+     * @return the converter working on raw bytes or null, if the charset is not UTF-8, the remap keys are no plain strings or have to be matched as tokens
+     */
+    private @Nullable Utf8Converter getUtf8Converter(@NotNull Keywords keywords, @NotNull ReMapper reMapper) {
+        Collection<String> remapKeys = reMapper.getLiteralKeys();
+        // only remaps the lines containing a key, while tokens depend on the lines before
+        if (remapKeys == null || reMapper.getMode() == ReMapper.Mode.TOKENS || !binaryDetector.getCharset().equals(StandardCharsets.UTF_8)) {
+            return null;
+        }
+        return utf8Converters.computeIfAbsent(new ScannerKey(keywords, reMapper), key -> new Utf8Converter(this, removeComments, keywords, reMapper, remapKeys));
+    }
+
+    private static void transfer(@NotNull Path inPath, @NotNull Path outPath) throws IOException {
+        try (FileChannel in = FileChannel.open(inPath, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(outPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    /**
+     * Adds the time since the last lap to a phase of the report, if there is one
+     */
+    private static final class Timer {
+        private final @Nullable PerformanceReport report;
+        private long time;
+
+        private Timer(@Nullable PerformanceReport report) {
+            this.report = report;
+            this.time = report != null ? System.nanoTime() : 0;
+        }
+
+        private void lap(@NotNull PerformanceReport.Phase phase) {
+            if (report != null) {
+                long now = System.nanoTime();
+                report.addTime(phase, now - time);
+                time = now;
+            }
+        }
+
+        private void reset() {
+            if (report != null) {
+                time = System.nanoTime();
+            }
+        }
+    }
+
+    private static final class ScannerKey {
+        private final Keywords keywords;
+        private final ReMapper reMapper;
+
+        private ScannerKey(Keywords keywords, ReMapper reMapper) {
+            this.keywords = keywords;
+            this.reMapper = reMapper;
+        }
+
+        /**
+         * by value, as a cached engine outlives the ReMappers it is used with: every recompiled ReMapper with the same content reuses the entry
+         */
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ScannerKey && ((ScannerKey) o).keywords.equals(keywords) && ((ScannerKey) o).reMapper.hasSameContent(reMapper);
+        }
+
+        @Override
+        public int hashCode() {
+            return keywords.hashCode() * 31 + reMapper.getContentHash();
+        }
+    }
+
+    /**
+     * Holds the if-stack of one file, while its lines are converted one after another.
+     * <p>
+     * Lines that are passed through unchanged cause no allocations: the stack is kept in primitive arrays,
+     * the amount of inactive if-levels is counted so the active state is known in O(1) and directives are matched in place.
+     */
+    private final class LineConverter {
+        private static final byte CURRENT_VALUE = 1;
+        private static final byte ELSE_FOUND = 2;
+        private static final byte TRUE_FOUND = 4;
+
+        private final Keywords keywords;
+        private final @Nullable String fileName;
+        private final @Nullable PerformanceReport report;
+        private final @Nullable SkeletonIndex.Recorder recorder;
+        private byte[] flags = new byte[8];
+        private int[] indents = new int[8];
+        private int depth = 0;
+        /**
+         * the amount of if-levels on the stack, whose current value is false
+         */
+        private int inactiveLevels = 0;
+        private int n = 0;
+
+        private LineConverter(@Nullable String fileName, @Nullable PerformanceReport report, @Nullable SkeletonIndex.Recorder recorder) {
+            this.fileName = fileName;
+            this.report = report;
+            this.recorder = recorder;
+            this.keywords = getKeywords(fileName);
+        }
+
+        /**
+         * @param line the next line of the file
+         * @return the preprocessed line or null, if it shall be removed
+         */
+        private @Nullable String convertLine(@NotNull String line) {
+            n++;
+
+            // bounds of the trimmed line, see String#trim()
+            int length = line.length();
+            int start = 0;
+            while (start < length && line.charAt(start) <= ' ') {
+                start++;
+            }
+            int end = length;
+            while (end > start && line.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            int indentation = length - (end - start);
+
+            return apply(line, kindOf(line, start, end), start, end, indentation);
+        }
+
+        /**
+         * @return what kind of line the trimmed line between start and end is, see {@link DirectiveSkeleton}
+         */
+        private byte kindOf(@NotNull String line, int start, int end) {
+            if (startsWith(line, start, end, keywords.IF())) {
+                return DirectiveSkeleton.IF;
+            } else if (startsWith(line, start, end, keywords.ELSEIF())) {
+                return DirectiveSkeleton.ELSEIF;
+            } else if (startsWith(line, start, end, keywords.ELSE())) {
+                return DirectiveSkeleton.ELSE;
+            } else if (startsWith(line, start, end, keywords.ENDIF())) {
+                return DirectiveSkeleton.ENDIF;
+            } else if (startsWith(line, start, end, keywords.EVAL())) {
+                return DirectiveSkeleton.EVAL;
+            }
+            return DirectiveSkeleton.TEXT;
+        }
+
+        /**
+         * Converts the next line, that has already been classified
+         *
+         * @return the preprocessed line or null, if it shall be removed
+         */
+        private @Nullable String apply(@NotNull String line, byte kind, int start, int end, int indentation) {
+            int length = line.length();
+            if (kind == DirectiveSkeleton.IF) {
+                boolean result = evalCondition(kind, line, start + keywords.IF().length(), end);
+                push(result ? CURRENT_VALUE | TRUE_FOUND : 0, indentation);
+                return removeComments ? null : line;
+            } else if (kind == DirectiveSkeleton.ELSEIF) {
+                if (depth == 0) {
+                    throw new ParseException("elseif without If-Statement!", n, fileName);
+                }
+                int top = flags[depth - 1];
+                if ((top & ELSE_FOUND) != 0) {
+                    throw new ParseException("elseif after else!", n, fileName);
+                }
+
+                indents[depth - 1] = indentation;
+
+                if ((top & TRUE_FOUND) != 0) {
+                    if (recorder != null) {
+                        recorder.directive(kind, n, condition(line, start + keywords.ELSEIF().length(), end));
+                    }
+                    setTop(top & ~CURRENT_VALUE);
+                } else {
+                    boolean result = evalCondition(kind, line, start + keywords.ELSEIF().length(), end);
+                    setTop(result ? CURRENT_VALUE | TRUE_FOUND : 0);
+                }
+                return removeComments ? null : line;
+            } else if (kind == DirectiveSkeleton.ELSE) {
+                if (depth == 0) {
+                    throw new ParseException("Unexpected else", n, fileName);
+                }
+                if (recorder != null) {
+                    recorder.directive(kind, n, null);
+                }
+                int top = flags[depth - 1];
+                setTop(((top & TRUE_FOUND) != 0 ? TRUE_FOUND : CURRENT_VALUE) | ELSE_FOUND);
+                indents[depth - 1] = indentation;
+                return removeComments ? null : line;
+            } else if (kind == DirectiveSkeleton.ENDIF) {
+                if (depth == 0) {
+                    throw new ParseException("endif without If-Statement!", n, fileName);
+                }
+                if (recorder != null) {
+                    recorder.directive(kind, n, null);
+                }
+                depth--;
+                if ((flags[depth] & CURRENT_VALUE) == 0) {
+                    inactiveLevels--;
+                }
+                return removeComments ? null : line;
+            } else {
+                String eval = keywords.EVAL();
+                if (inactiveLevels == 0) {
+                    if (kind == DirectiveSkeleton.EVAL) {
+                        // strip the eval keyword and one optional space
+                        int from = start + eval.length();
+                        if (from < length && line.charAt(from) == ' ') {
+                            from++;
+                        }
+                        return start == 0 ? line.substring(from) : line.substring(0, start) + line.substring(from);
+                    } else {
+                        return line;
+                    }
+                } else if (!removeComments) {
+                    int currIndent = indents[depth - 1];
+                    if (start == end) {
+                        return indentation(currIndent) + eval;
+                    } else if (kind != DirectiveSkeleton.EVAL && currIndent <= indentation) {
+                        return new StringBuilder(length + eval.length() + 1)
+                                .append(indentation(currIndent)).append(eval).append(' ')
+                                .append(line, currIndent, length)
+                                .toString();
+                    } else {
+                        return line;
+                    }
+                }
+                return null;
+            }
+        }
+
+        /**
+         * Evaluates the next line, that has already been classified, without converting it
+         *
+         * @return if the line is a text or eval line, that is active
+         */
+        private boolean isActive(@NotNull String line, byte kind, int start, int end, int indentation) {
+            if (kind == DirectiveSkeleton.TEXT || kind == DirectiveSkeleton.EVAL) {
+                return inactiveLevels == 0;
+            }
+            apply(line, kind, start, end, indentation);
+            return false;
+        }
+
+        /**
+         * @param kind the kind of the directive, see {@link DirectiveSkeleton}
+         * @param line the directive line
+         * @param from the index right behind the keyword
+         * @param to   the index behind the last non-whitespace char of the line
+         */
+        private boolean evalCondition(byte kind, @NotNull String line, int from, int to) {
+            String condition = condition(line, from, to);
+            if (condition == null) {
+                throw new ParseException("Expected space before condition!", n, fileName);
+            }
+            if (report != null) {
+                report.addDirective(condition);
+            }
+            if (recorder != null) {
+                recorder.directive(kind, n, condition);
+            }
+            return evalExpression(condition, n, fileName);
+        }
+
+        /**
+         * @throws ParseException if an if-statement has not been closed
+         */
+        private void finish() {
+            if (depth != 0) {
+                throw new ParseException("Missing endif!", n, fileName);
+            }
+        }
+
+        private void push(int flags, int indentation) {
+            if (depth == this.flags.length) {
+                this.flags = Arrays.copyOf(this.flags, depth * 2);
+                this.indents = Arrays.copyOf(this.indents, depth * 2);
+            }
+            this.flags[depth] = (byte) flags;
+            this.indents[depth] = indentation;
+            depth++;
+            if ((flags & CURRENT_VALUE) == 0) {
+                inactiveLevels++;
+            }
+        }
+
+        private void setTop(int flags) {
+            boolean wasActive = (this.flags[depth - 1] & CURRENT_VALUE) != 0;
+            boolean isActive = (flags & CURRENT_VALUE) != 0;
+            if (wasActive && !isActive) {
+                inactiveLevels++;
+            } else if (!wasActive && isActive) {
+                inactiveLevels--;
+            }
+            this.flags[depth - 1] = (byte) flags;
+        }
+    }
+
+    /**
+     * @return if the trimmed line between start and end starts with the keyword
+     */
+    private static boolean startsWith(@NotNull String line, int start, int end, @NotNull String keyword) {
+        return end - start >= keyword.length() && line.startsWith(keyword, start);
+    }
+
+    @NotNull Keywords getKeywords(@Nullable String fileName) {
+        return keywordsMap.getOrDefault(getExtension(fileName), Keywords.DEFAULT_KEYWORDS);
+    }
+
+    private static @NotNull String getExtension(@Nullable String fileName) {
+        String extension = "";
+        if (fileName != null) {
+            int i = fileName.lastIndexOf('.');
+            if (i > 0) {
+                extension = fileName.substring(i + 1);
+            }
+        }
+        return extension.toLowerCase().trim();
+    }
+
+    private static final String[] INDENTATIONS = new String[64];
+
+    static {
+        for (int i = 0; i < INDENTATIONS.length; i++) {
+            INDENTATIONS[i] = " ".repeat(i);
+        }
+    }
+
+    private static @NotNull String indentation(int n) {
+        return n < INDENTATIONS.length ? INDENTATIONS[n] : " ".repeat(n);
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replaces every match of the remap keys with their respective value.
+ * <p>
+ * By default, the keys are regular expressions that are applied one after another in iteration order, just like {@link String#replaceAll(String, String)}.
+ * In literal mode, the keys are plain strings that are all matched in a single pass. If matches overlap, the key that comes first in iteration order wins, and replaced text is not scanned again.
+ * In token mode, the keys are identifiers and qualified names, that only replace whole names outside of literals and comments, see {@link Mode#TOKENS}.
+ * <p>
+ * All rules are compiled on construction. Instances are immutable and thread-safe, the map is copied on construction.
+ */
+public class ReMapper {
+    private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}";
+
+    private final Map<String, String> map;
+    private final Mode mode;
+    private final Pattern[] patterns;
+    private final String[] replacements;
+    private final ThreadLocal<Matcher[]> matchers;
+    private final LiteralMatcher literalMatcher;
+    private final TokenRemapper tokenRemapper;
+    /**
+     * the hash of the replacements and the mode, see {@link #hasSameContent(ReMapper)}
+     */
+    private final int contentHash;
+
+    /**
+     * @param map the replacements, applied in iteration order, as in the {@code remapper} option of the plugin extension
+     */
+    public ReMapper(Map<String, String> map) {
+        this(map, false);
+    }
+
+    /**
+     * @param map     the replacements, applied in iteration order
+     * @param literal if the keys are plain strings instead of regular expressions
+     */
+    public ReMapper(Map<String, String> map, boolean literal) {
+        this(map, literal ? Mode.LITERAL : Mode.REGEX);
+    }
+
+    /**
+     * @param map  the replacements
+     * @param mode how the keys are matched
+     * @throws IllegalArgumentException if a key is no valid regular expression, or no name in token mode
+     */
+    public ReMapper(Map<String, String> map, @NotNull Mode mode) {
+        this.map = Collections.unmodifiableMap(new LinkedHashMap<>(map));
+        this.mode = mode;
+        this.contentHash = 31 * List.copyOf(this.map.entrySet()).hashCode() + mode.hashCode();
+        this.replacements = this.map.values().toArray(new String[0]);
+        this.tokenRemapper = mode == Mode.TOKENS ? new TokenRemapper(this.map.keySet(), replacements) : null;
+        if (mode != Mode.REGEX) {
+            this.patterns = new Pattern[0];
+            this.matchers = null;
+            this.literalMatcher = mode == Mode.LITERAL ? new LiteralMatcher(this.map.keySet().toArray(new String[0])) : null;
+        } else {
+            this.patterns = new Pattern[replacements.length];
+            int i = 0;
+            for (String key : this.map.keySet()) {
+                patterns[i++] = Pattern.compile(key);
+            }
+            this.matchers = ThreadLocal.withInitial(() -> {
+                Matcher[] matchers = new Matcher[patterns.length];
+                for (int j = 0; j < matchers.length; j++) {
+                    matchers[j] = patterns[j].matcher("");
+                }
+                return matchers;
+            });
+            this.literalMatcher = null;
+        }
+    }
+
+    /**
+     * @return the keys as plain strings, that have to be found in a line for it to be changed, or null if any key is an actual regular expression
+     */
+    public @Nullable Collection<String> getLiteralKeys() {
+        if (mode != Mode.REGEX) {
+            return map.keySet();
+        }
+        for (String key : map.keySet()) {
+            if (key.isEmpty() || !isPlainText(key)) {
+                return null;
+            }
+        }
+        return map.keySet();
+    }
+
+    /**
+     * @return a hash of the replacements in order and the mode, equal for ReMappers with the same content
+     */
+    int getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * @param other another ReMapper
+     * @return if both have the same replacements in the same order and the same mode, so they remap every line the same way
+     */
+    boolean hasSameContent(@NotNull ReMapper other) {
+        if (other == this) {
+            return true;
+        }
+        return contentHash == other.contentHash && mode == other.mode && List.copyOf(map.entrySet()).equals(List.copyOf(other.map.entrySet()));
+    }
+
+    /**
+     * @return how the keys are matched
+     */
+    public @NotNull Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the keys, in iteration order
+     */
+    @NotNull Collection<String> getKeys() {
+        return map.keySet();
+    }
+
+    /**
+     * @return the replacements, in iteration order
+     */
+    @NotNull Collection<String> getValues() {
+        return map.values();
+    }
+
+    private static boolean isPlainText(@NotNull String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (REGEX_META_CHARS.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param lines the file, already read as lines
+     * @return the preprocessed lines
+     */
+    public List<String> convertSource(@NotNull List<String> lines) {
+        List<String> rmLines = new ArrayList<>();
+
+        for (String line : lines) {
+            rmLines.add(convertLine(line));
+        }
+
+        return rmLines;
+    }
+
+    /**
+     * @param line a single line. In token mode, it is lexed as a line of Java code on its own
+     * @return the remapped line, the very same instance if nothing matched
+     */
+    public String convertLine(@NotNull String line) {
+        if (replacements.length == 0) {
+            return line;
+        }
+        if (mode == Mode.LITERAL) {
+            return literalMatcher.replace(line, replacements);
+        }
+        if (mode == Mode.TOKENS) {
+            return tokenRemapper.forFile(null, null).convertLine(line);
+        }
+
+        Matcher[] matchers = this.matchers.get();
+        for (int i = 0; i < matchers.length; i++) {
+            // returns the line itself, if there is no match
+            line = matchers[i].reset(line).replaceAll(replacements[i]);
+        }
+        return line;
+    }
+
+    /**
+     * @param fileName    the name of the file the lines belong to, that decides how it is lexed in token mode
+     * @param evalKeyword the keyword that disabled code starts with, which is remapped like enabled code in token mode. May be null
+     * @return the mapper for the lines of a single file, in order
+     */
+    public @NotNull FileMapper forFile(@Nullable String fileName, @Nullable String evalKeyword) {
+        if (mode != Mode.TOKENS || replacements.length == 0) {
+            return this::convertLine;
+        }
+        return tokenRemapper.forFile(fileName, evalKeyword);
+    }
+
+    /**
+     * Remaps the lines of a single file. It has to see every line of the file in order, as it may keep state across lines, e.g. in block comments
+     */
+    @FunctionalInterface
+    public interface FileMapper {
+        /**
+         * @param line the next line of the file
+         * @return the remapped line, the very same instance if nothing matched
+         */
+        @NotNull String convertLine(@NotNull String line);
+    }
+
+    /**
+     * How the remap keys are matched
+     */
+    public enum Mode {
+        /**
+         * the keys are regular expressions, applied one after another
+         */
+        REGEX,
+        /**
+         * the keys are plain strings, all matched in a single pass
+         */
+        LITERAL,
+        /**
+         * the keys are identifiers (e.g. {@code Identifier}) and qualified names (e.g. {@code net.minecraft.util}), that are looked up for every name
+         * of a Java or Kotlin file, after lexing it once. Names in string literals and comments are left untouched, and keys never match
+         * parts of longer names. Files of other types are only split into names
+         */
+        TOKENS
+    }
+
+    /**
+     * Aho-Corasick automaton over all literal keys, compiled into a dense transition table
+     */
+    private static final class LiteralMatcher {
+        private static final int[] NO_OUTPUT = new int[0];
+
+        private final int[] keyLengths;
+        /**
+         * column of each char, 0 for chars that appear in no key
+         */
+        private final int[] asciiColumns = new int[128];
+        private final char[] otherChars;
+        private final int[] otherColumns;
+        private final int[][] transitions;
+        /**
+         * indices of the keys that end in each state, in iteration order
+         */
+        private final int[][] outputs;
+
+        private LiteralMatcher(String @NotNull [] keys) {
+            this.keyLengths = new int[keys.length];
+
+            // alphabet
+            TreeSet<Character> alphabet = new TreeSet<>();
+            for (String key : keys) {
+                for (int i = 0; i < key.length(); i++) {
+                    alphabet.add(key.charAt(i));
+                }
+            }
+            List<Character> others = new ArrayList<>();
+            int columns = 1;
+            for (char c : alphabet) {
+                if (c < 128) {
+                    asciiColumns[c] = columns++;
+                } else {
+                    others.add(c);
+                }
+            }
+            this.otherChars = new char[others.size()];
+            this.otherColumns = new int[others.size()];
+            for (int i = 0; i < others.size(); i++) {
+                otherChars[i] = others.get(i);
+                otherColumns[i] = columns++;
+            }
+
+            // trie
+            List<int[]> gotos = new ArrayList<>();
+            List<List<Integer>> ends = new ArrayList<>();
+            gotos.add(newRow(columns));
+            ends.add(new ArrayList<>());
+            for (int k = 0; k < keys.length; k++) {
+                String key = keys[k];
+                keyLengths[k] = key.length();
+                // empty keys can't be matched literally
+                if (key.isEmpty()) {
+                    continue;
+                }
+                int state = 0;
+                for (int i = 0; i < key.length(); i++) {
+                    int column = column(key.charAt(i));
+                    if (gotos.get(state)[column] < 0) {
+                        gotos.get(state)[column] = gotos.size();
+                        gotos.add(newRow(columns));
+                        ends.add(new ArrayList<>());
+                    }
+                    state = gotos.get(state)[column];
+                }
+                ends.get(state).add(k);
+            }
+
+            // failure links, resolved into a full transition table (breadth first)
+            int[][] transitions = gotos.toArray(new int[0][]);
+            int[] fail = new int[transitions.length];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int column = 0; column < columns; column++) {
+                int next = transitions[0][column];
+                if (next < 0) {
+                    transitions[0][column] = 0;
+                } else {
+                    fail[next] = 0;
+                    queue.add(next);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                ends.get(state).addAll(ends.get(fail[state]));
+                for (int column = 0; column < columns; column++) {
+                    int next = transitions[state][column];
+                    if (next < 0) {
+                        transitions[state][column] = transitions[fail[state]][column];
+                    } else {
+                        fail[next] = transitions[fail[state]][column];
+                        queue.add(next);
+                    }
+                }
+            }
+
+            this.transitions = transitions;
+            this.outputs = new int[transitions.length][];
+            for (int state = 0; state < transitions.length; state++) {
+                List<Integer> stateEnds = ends.get(state);
+                if (stateEnds.isEmpty()) {
+                    outputs[state] = NO_OUTPUT;
+                } else {
+                    outputs[state] = stateEnds.stream().sorted().mapToInt(Integer::intValue).toArray();
+                }
+            }
+        }
+
+        private static int @NotNull [] newRow(int columns) {
+            int[] row = new int[columns];
+            Arrays.fill(row, -1);
+            return row;
+        }
+
+        private int column(char c) {
+            if (c < 128) {
+                return asciiColumns[c];
+            }
+            int i = Arrays.binarySearch(otherChars, c);
+            return i >= 0 ? otherColumns[i] : 0;
+        }
+
+        private String replace(@NotNull String line, String @NotNull [] replacements) {
+            // scan, without allocating anything unless there is a match
+            List<int[]> matches = null;
+            int state = 0;
+            for (int i = 0; i < line.length(); i++) {
+                state = transitions[state][column(line.charAt(i))];
+                int[] output = outputs[state];
+                if (output.length > 0) {
+                    if (matches == null) {
+                        matches = new ArrayList<>();
+                    }
+                    for (int key : output) {
+                        matches.add(new int[]{key, i + 1 - keyLengths[key]});
+                    }
+                }
+            }
+            if (matches == null) {
+                return line;
+            }
+
+            // keys earlier in iteration order claim their (leftmost) occurrences first
+            matches.sort(Comparator.<int[]>comparingInt(m -> m[0]).thenComparingInt(m -> m[1]));
+            BitSet claimed = new BitSet(line.length());
+            int[] keysAt = new int[line.length()];
+            Arrays.fill(keysAt, -1);
+            for (int[] match : matches) {
+                int key = match[0];
+                int start = match[1];
+                int end = start + keyLengths[key];
+                int nextClaimed = claimed.nextSetBit(start);
+                if (nextClaimed < 0 || nextClaimed >= end) {
+                    claimed.set(start, end);
+                    keysAt[start] = key;
+                }
+            }
+
+            StringBuilder builder = new StringBuilder(line.length() + 16);
+            int i = 0;
+            while (i < line.length()) {
+                int key = keysAt[i];
+                if (key >= 0) {
+                    builder.append(replacements[key]);
+                    i += keyLengths[key];
+                } else {
+                    builder.append(line.charAt(i++));
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
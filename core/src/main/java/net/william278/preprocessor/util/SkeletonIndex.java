@@ -0,0 +1,427 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * A persistent index of the directives of every preprocessed file: the content hash of the file, the line and kind of every directive,
+ * the conditions by ID and which branches have been active, when the file was converted.
+ * <p>
+ * If only the vars change, the branches of an indexed file can be evaluated again without reading the file. Files whose active branches stay the same
+ * produce the very same output and don't have to be converted again.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class SkeletonIndex {
+    private static final int MAGIC = 0x50505349;
+    private static final int VERSION = 1;
+    private static final byte NO_DIRECTIVES = 1;
+    /**
+     * file times closer to the present than this might still change without changing the time, so such files are verified by their hash
+     */
+    private static final long RACY_MILLIS = 2000;
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(64 * 1024));
+
+    private final long fingerprint;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private SkeletonIndex(long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @param fingerprint identifies all settings except the vars, see {@link #fingerprint(Object)}
+     * @return a new, empty index
+     */
+    public static @NotNull SkeletonIndex create(long fingerprint) {
+        return new SkeletonIndex(fingerprint);
+    }
+
+    /**
+     * @param file        the index written by a previous build
+     * @param fingerprint identifies all settings except the vars, see {@link #fingerprint(Object)}
+     * @return the index or an empty one, if there is none, it is corrupt or it has been written with other settings
+     */
+    public static @NotNull SkeletonIndex load(@NotNull Path file, long fingerprint) {
+        SkeletonIndex index = new SkeletonIndex(fingerprint);
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // read at once instead of mapped, so the file can be replaced on every platform afterwards
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // fill the buffer
+            }
+            buffer.flip();
+        } catch (IOException e) {
+            // not built yet, start from scratch
+            return index;
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != fingerprint) {
+                return index;
+            }
+            String[] conditions = new String[buffer.getInt()];
+            for (int i = 0; i < conditions.length; i++) {
+                conditions[i] = readString(buffer);
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                String relPath = readString(buffer);
+                long sourceSize = buffer.getLong();
+                long sourceModified = buffer.getLong();
+                long hash = buffer.getLong();
+                long outputSize = buffer.getLong();
+                long outputModified = buffer.getLong();
+                buffer.get(); // flags
+                int directives = buffer.getInt();
+                int[] lines = new int[directives];
+                byte[] kinds = new byte[directives];
+                String[] directiveConditions = new String[directives];
+                for (int j = 0; j < directives; j++) {
+                    lines[j] = buffer.getInt();
+                    kinds[j] = buffer.get();
+                    int id = buffer.getInt();
+                    directiveConditions[j] = id < 0 ? null : conditions[id];
+                }
+                byte[] active = new byte[(directives + 7) >>> 3];
+                buffer.get(active);
+                index.entries.put(relPath, new Entry(sourceSize, sourceModified, hash, outputSize, outputModified, lines, kinds, directiveConditions, active));
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            index.entries.clear();
+        }
+        return index;
+    }
+
+    /**
+     * @param settings all settings, that change the output of a file besides the vars. Maps and sets should be sorted
+     * @return a hash of the settings
+     */
+    public static long fingerprint(@NotNull Object settings) {
+        // FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : settings.toString().getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the amount of indexed files
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Checks if an output is still up-to-date, without reading the source unless its modification time has changed
+     *
+     * @param relPath      the path of the file, relative to the source folder
+     * @param inFile       the source file
+     * @param outFile      the output of the last conversion
+     * @param preProcessor the engine with the current vars
+     * @return if the source and the output are the same as when the file was indexed and the same branches are active with the current vars
+     */
+    public boolean isUpToDate(@NotNull String relPath, @NotNull File inFile, @NotNull File outFile, @NotNull PreProcessor preProcessor) {
+        Entry entry = entries.get(relPath);
+        if (entry == null) {
+            return false;
+        }
+        try {
+            BasicFileAttributes output = Files.readAttributes(outFile.toPath(), BasicFileAttributes.class);
+            if (output.size() != entry.outputSize || output.lastModifiedTime().toMillis() != entry.outputModified) {
+                return false;
+            }
+            BasicFileAttributes source = Files.readAttributes(inFile.toPath(), BasicFileAttributes.class);
+            if (source.size() != entry.sourceSize) {
+                return false;
+            }
+            long modified = source.lastModifiedTime().toMillis();
+            if (modified != entry.sourceModified) {
+                if (hash(inFile.toPath()) != entry.hash) {
+                    return false;
+                }
+                entry = entry.withSourceModified(stableTime(modified));
+                entries.put(relPath, entry);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        if (entry.kinds.length == 0) {
+            return true;
+        }
+        byte[] active = entry.evaluate(preProcessor, inFile.getName());
+        return active != null && Arrays.equals(active, entry.active);
+    }
+
+    /**
+     * Indexes a file, that has just been converted
+     *
+     * @param relPath      the path of the file, relative to the source folder
+     * @param inFile       the source file
+     * @param outFile      the output of the conversion
+     * @param recorder     the directives recorded while converting
+     * @param preProcessor the engine, that converted the file
+     * @throws IOException if either file can't be read
+     */
+    public void put(@NotNull String relPath, @NotNull File inFile, @NotNull File outFile, @NotNull Recorder recorder, @NotNull PreProcessor preProcessor) throws IOException {
+        BasicFileAttributes source = Files.readAttributes(inFile.toPath(), BasicFileAttributes.class);
+        BasicFileAttributes output = Files.readAttributes(outFile.toPath(), BasicFileAttributes.class);
+        int size = recorder.size;
+        Entry entry = new Entry(source.size(), stableTime(source.lastModifiedTime().toMillis()), hash(inFile.toPath()),
+                output.size(), output.lastModifiedTime().toMillis(),
+                Arrays.copyOf(recorder.lines, size), Arrays.copyOf(recorder.kinds, size), Arrays.copyOf(recorder.conditions, size), new byte[(size + 7) >>> 3]);
+        byte[] active = size == 0 ? entry.active : entry.evaluate(preProcessor, inFile.getName());
+        if (active == null) {
+            entries.remove(relPath);
+            return;
+        }
+        entries.put(relPath, entry.withActive(active));
+    }
+
+    /**
+     * @param relPath the path of a file, that is not preprocessed anymore or has been converted without being indexed
+     */
+    public void remove(@NotNull String relPath) {
+        entries.remove(relPath);
+    }
+
+    /**
+     * Removes all files, that are not among the given paths
+     */
+    public void retainAll(@NotNull Collection<String> relPaths) {
+        entries.keySet().retainAll(relPaths instanceof Set ? relPaths : new HashSet<>(relPaths));
+    }
+
+    /**
+     * @param file where the index is written to. It is replaced atomically, if possible
+     * @throws IOException if writing fails
+     */
+    public void write(@NotNull Path file) throws IOException {
+        Map<String, Integer> conditionIds = new LinkedHashMap<>();
+        for (Entry entry : entries.values()) {
+            for (String condition : entry.conditions) {
+                if (condition != null) {
+                    conditionIds.putIfAbsent(condition, conditionIds.size());
+                }
+            }
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tempFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fingerprint);
+                out.writeInt(conditionIds.size());
+                for (String condition : conditionIds.keySet()) {
+                    writeString(out, condition);
+                }
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> indexed : entries.entrySet()) {
+                    Entry entry = indexed.getValue();
+                    writeString(out, indexed.getKey());
+                    out.writeLong(entry.sourceSize);
+                    out.writeLong(entry.sourceModified);
+                    out.writeLong(entry.hash);
+                    out.writeLong(entry.outputSize);
+                    out.writeLong(entry.outputModified);
+                    out.writeByte(entry.kinds.length == 0 ? NO_DIRECTIVES : 0);
+                    out.writeInt(entry.kinds.length);
+                    for (int i = 0; i < entry.kinds.length; i++) {
+                        out.writeInt(entry.lines[i]);
+                        out.writeByte(entry.kinds[i]);
+                        out.writeInt(entry.conditions[i] == null ? -1 : conditionIds.get(entry.conditions[i]));
+                    }
+                    out.write(entry.active);
+                }
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * @return the CRC32C of the file's content
+     */
+    static long hash(@NotNull Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = HASH_BUFFER.get();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer.clear()) >= 0) {
+                crc.update(buffer.flip());
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @return the time or -1, if the file might still be changed within the same time
+     */
+    private static long stableTime(long modified) {
+        return System.currentTimeMillis() - modified < RACY_MILLIS ? -1 : modified;
+    }
+
+    private static @NotNull String readString(@NotNull ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(@NotNull DataOutputStream out, @NotNull String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Collects the directives of a file while it is converted, see {@link PreProcessor#convertFile(ReMapper, File, File, PerformanceReport, Recorder)}
+     */
+    public static final class Recorder {
+        private int[] lines = new int[16];
+        private byte[] kinds = new byte[16];
+        private String[] conditions = new String[16];
+        private int size = 0;
+
+        /**
+         * @param kind      the kind of the directive, see {@link DirectiveSkeleton}
+         * @param line      the line number of the directive
+         * @param condition the condition of an if or elseif or null, if there is none
+         */
+        void directive(byte kind, int line, @Nullable String condition) {
+            if (size == kinds.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+                kinds = Arrays.copyOf(kinds, size * 2);
+                conditions = Arrays.copyOf(conditions, size * 2);
+            }
+            lines[size] = line;
+            kinds[size] = kind;
+            conditions[size] = condition;
+            size++;
+        }
+
+        /**
+         * Forgets all directives, e.g. if the file is copied after all
+         */
+        void clear() {
+            Arrays.fill(conditions, 0, size, null);
+            size = 0;
+        }
+    }
+
+    private static final class Entry {
+        private final long sourceSize;
+        private final long sourceModified;
+        private final long hash;
+        private final long outputSize;
+        private final long outputModified;
+        private final int[] lines;
+        private final byte[] kinds;
+        private final String[] conditions;
+        /**
+         * one bit per directive, that is set if the branch following the directive is active
+         */
+        private final byte[] active;
+
+        private Entry(long sourceSize, long sourceModified, long hash, long outputSize, long outputModified,
+                      int[] lines, byte[] kinds, String[] conditions, byte[] active) {
+            this.sourceSize = sourceSize;
+            this.sourceModified = sourceModified;
+            this.hash = hash;
+            this.outputSize = outputSize;
+            this.outputModified = outputModified;
+            this.lines = lines;
+            this.kinds = kinds;
+            this.conditions = conditions;
+            this.active = active;
+        }
+
+        private @NotNull Entry withSourceModified(long sourceModified) {
+            return new Entry(sourceSize, sourceModified, hash, outputSize, outputModified, lines, kinds, conditions, active);
+        }
+
+        private @NotNull Entry withActive(byte @NotNull [] active) {
+            return new Entry(sourceSize, sourceModified, hash, outputSize, outputModified, lines, kinds, conditions, active);
+        }
+
+        /**
+         * Walks the directives like PreProcessor.LineConverter does, evaluating exactly the conditions it would evaluate
+         *
+         * @return the active branches with the vars of the engine or null, if any condition can't be evaluated
+         */
+        private byte @Nullable [] evaluate(@NotNull PreProcessor preProcessor, @NotNull String fileName) {
+            byte[] active = new byte[(kinds.length + 7) >>> 3];
+            // if a branch of the if-statement has been true, per level
+            boolean[] trueFound = new boolean[kinds.length];
+            int depth = 0;
+            try {
+                for (int i = 0; i < kinds.length; i++) {
+                    boolean value;
+                    byte kind = kinds[i];
+                    if (kind == DirectiveSkeleton.IF) {
+                        value = preProcessor.evalExpression(conditions[i], lines[i], fileName);
+                        trueFound[depth++] = value;
+                    } else if (kind == DirectiveSkeleton.ELSEIF) {
+                        if (trueFound[depth - 1]) {
+                            value = false;
+                        } else if (conditions[i] == null) {
+                            return null;
+                        } else {
+                            value = preProcessor.evalExpression(conditions[i], lines[i], fileName);
+                            trueFound[depth - 1] = value;
+                        }
+                    } else if (kind == DirectiveSkeleton.ELSE) {
+                        value = !trueFound[depth - 1];
+                        trueFound[depth - 1] = true;
+                    } else {
+                        value = false;
+                        depth--;
+                    }
+                    if (value) {
+                        active[i >>> 3] |= (byte) (1 << (i & 7));
+                    }
+                }
+            } catch (RuntimeException e) {
+                // converting the file reports the error
+                return null;
+            }
+            return active;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Include and exclude patterns for the files of the source folders, compiled once into {@link PathMatcher}s.
+ * <p>
+ * The patterns are globs relative to the source folder, with the same meaning as Gradle's patterns: {@code **} matches any amount of folders
+ * (including none), {@code *} and {@code ?} match within a single name, and a trailing {@code /} is short for {@code /**}. A file is part of the
+ * sources, if it matches any include (or there are none) and neither it nor any of its folders matches an exclude. Just like with Gradle,
+ * a folder matched by an exclude (e.g. {@code assets}, {@code **}{@code /build} or {@code legacy/**}) is excluded with its whole content and
+ * skipped entirely while walking, so its files are never listed.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class SourceFilter {
+    /**
+     * includes every file
+     */
+    public static final SourceFilter ALL = new SourceFilter(List.of(), List.of());
+
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final PathMatcher[] includeMatchers;
+    private final PathMatcher[] excludeMatchers;
+    /**
+     * the folders of excludes ending with {@code /**}, which match their content but not the folder itself
+     */
+    private final PathMatcher[] excludedFolderMatchers;
+
+    private SourceFilter(@NotNull Collection<String> includes, @NotNull Collection<String> excludes) {
+        this.includes = List.copyOf(includes);
+        this.excludes = List.copyOf(excludes);
+        FileSystem fileSystem = FileSystems.getDefault();
+        this.includeMatchers = compile(fileSystem, includes);
+        this.excludeMatchers = compile(fileSystem, excludes);
+        List<String> excludedFolders = new ArrayList<>();
+        for (String exclude : excludes) {
+            String pattern = normalize(exclude);
+            if (pattern.endsWith("/**") && pattern.length() > 3) {
+                excludedFolders.add(pattern.substring(0, pattern.length() - 3));
+            }
+        }
+        this.excludedFolderMatchers = compile(fileSystem, excludedFolders);
+    }
+
+    /**
+     * @param includes the patterns a file has to match any of, all files are included if empty
+     * @param excludes the patterns a file must not match
+     * @return the filter, {@link #ALL} if there are no patterns
+     * @throws IllegalArgumentException if a pattern is no valid glob
+     */
+    public static @NotNull SourceFilter of(@NotNull Collection<String> includes, @NotNull Collection<String> excludes) {
+        if (includes.isEmpty() && excludes.isEmpty()) {
+            return ALL;
+        }
+        return new SourceFilter(includes, excludes);
+    }
+
+    private static @NotNull String normalize(@NotNull String pattern) {
+        String normalized = pattern.trim().replace('\\', '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        return normalized.endsWith("/") ? normalized + "**" : normalized;
+    }
+
+    private static PathMatcher @NotNull [] compile(@NotNull FileSystem fileSystem, @NotNull Collection<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            for (String variant : variants(normalize(pattern))) {
+                matchers.add(fileSystem.getPathMatcher("glob:" + variant));
+            }
+        }
+        return matchers.toArray(new PathMatcher[0]);
+    }
+
+    /**
+     * A glob's {@code **}{@code /} needs at least one folder, so the pattern is also compiled without each of them
+     */
+    private static @NotNull Set<String> variants(@NotNull String pattern) {
+        Set<String> variants = new LinkedHashSet<>();
+        variants.add(pattern);
+        int i = pattern.indexOf("**/");
+        while (i >= 0) {
+            if (i == 0 || pattern.charAt(i - 1) == '/') {
+                variants.addAll(variants(pattern.substring(0, i) + pattern.substring(i + 3)));
+            }
+            i = pattern.indexOf("**/", i + 3);
+        }
+        return variants;
+    }
+
+    /**
+     * @return the include patterns, as given
+     */
+    public @NotNull List<String> getIncludes() {
+        return includes;
+    }
+
+    /**
+     * @return the exclude patterns, as given
+     */
+    public @NotNull List<String> getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * @param relPath the path of a file, relative to its source folder
+     * @return if the file is part of the sources
+     */
+    public boolean includes(@NotNull Path relPath) {
+        if (this == ALL) {
+            return true;
+        }
+        if (includeMatchers.length > 0 && !matchesAny(includeMatchers, relPath)) {
+            return false;
+        }
+        if (matchesAny(excludeMatchers, relPath)) {
+            return false;
+        }
+        // a file below an excluded folder
+        for (Path parent = relPath.getParent(); parent != null; parent = parent.getParent()) {
+            if (excludesFolder(parent)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param relFolder the path of a folder, relative to its source folder
+     * @return if no file within the folder can be part of the sources
+     */
+    public boolean excludesFolder(@NotNull Path relFolder) {
+        return matchesAny(excludeMatchers, relFolder) || matchesAny(excludedFolderMatchers, relFolder);
+    }
+
+    private static boolean matchesAny(PathMatcher @NotNull [] matchers, @NotNull Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists the files of a source folder, that are part of the sources. Excluded folders are not descended into,
+     * and the subfolders of the source folder are walked in parallel.
+     *
+     * @param root        the source folder
+     * @param parallelism the maximum amount of subfolders walked at the same time
+     * @return the paths of all included files relative to the source folder, in no particular order. Empty if the folder doesn't exist
+     * @throws IOException if a folder can't be read
+     */
+    public @NotNull List<Path> walk(@NotNull Path root, int parallelism) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        Queue<Path> files = new ConcurrentLinkedQueue<>();
+        List<Path> folders = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(root)) {
+            for (Path child : children) {
+                Path relPath = root.relativize(child);
+                if (Files.isDirectory(child)) {
+                    if (!excludesFolder(relPath)) {
+                        folders.add(child);
+                    }
+                } else if (Files.isRegularFile(child) && includes(relPath)) {
+                    files.add(relPath);
+                }
+            }
+        }
+        try {
+            ParallelExecutor.forEach(folders, parallelism, folder -> {
+                try {
+                    walk(root, folder, files);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Lists the included files of several source folders, which overlay each other: if some of them contain the same path,
+     * the first one wins and the files of the others are shadowed. Shadowed files can be skipped without ever being read.
+     *
+     * @param roots       the source folders, in order of priority
+     * @param parallelism the maximum amount of subfolders walked at the same time
+     * @return by relative path in sorted order, the source folders containing the file in order of priority
+     * @throws IOException if a folder can't be read
+     */
+    public @NotNull Map<String, List<Path>> resolve(@NotNull List<Path> roots, int parallelism) throws IOException {
+        Map<String, List<Path>> files = new TreeMap<>();
+        for (Path root : roots) {
+            for (Path relPath : walk(root, parallelism)) {
+                List<Path> sources = files.get(relPath.toString());
+                if (sources == null) {
+                    // nearly every path is only contained once
+                    files.put(relPath.toString(), Collections.singletonList(root));
+                } else {
+                    sources = new ArrayList<>(sources);
+                    sources.add(root);
+                    files.put(relPath.toString(), sources);
+                }
+            }
+        }
+        return files;
+    }
+
+    private void walk(@NotNull Path root, @NotNull Path folder, @NotNull Queue<Path> files) throws IOException {
+        Files.walkFileTree(folder, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return excludesFolder(root.relativize(dir)) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    Path relPath = root.relativize(file);
+                    if (includes(relPath)) {
+                        files.add(relPath);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
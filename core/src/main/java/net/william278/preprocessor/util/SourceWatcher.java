@@ -0,0 +1,415 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Watches source folders and preprocesses every touched file as soon as it has been saved, with engines that stay warm between changes.
+ * <p>
+ * Events are collected until no new one arrives for the debounce time, so bursts (e.g. switching branches) are handled in a single batch.
+ * Every touched path is only preprocessed once per batch, and only the first source folder containing a path decides its output.
+ * Source folders, that don't exist yet or are deleted while watching, are polled for until they (re)appear.
+ * <p>
+ * Only the outputs are written, the skeleton index and report of the preprocess task are left alone. The task preprocesses the
+ * touched files again on its next execution, as their sources and outputs have changed since.
+ */
+public final class SourceWatcher implements AutoCloseable {
+    /**
+     * how often missing source folders are checked for
+     */
+    private static final long ROOT_POLL_MILLIS = 1000;
+
+    private final WatchService watchService;
+    private final long debounceMillis;
+    private final int parallelism;
+    private final Listener listener;
+    private final List<Target> targets = new ArrayList<>();
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    /**
+     * the source folders, that don't exist and can't be watched
+     */
+    private final Set<Path> missingRoots = new LinkedHashSet<>();
+
+    /**
+     * Gets notified about every handled file
+     */
+    public interface Listener {
+        /**
+         * @param outFile the written output
+         * @param result  how the source has been handled
+         * @param nanos   the time it took
+         */
+        void converted(@NotNull Path outFile, @NotNull PreProcessor.FileResult result, long nanos);
+
+        /**
+         * @param outFile the output, whose source is gone
+         */
+        void deleted(@NotNull Path outFile);
+
+        /**
+         * @param inFile the source, that could not be preprocessed. Watching continues
+         * @param error  why
+         */
+        void failed(@NotNull Path inFile, @NotNull RuntimeException error);
+    }
+
+    /**
+     * @param debounceMillis how long no event must arrive, before a batch of changes is processed
+     * @param parallelism    the maximum amount of files that are preprocessed at the same time
+     * @param listener       gets notified about every handled file
+     * @throws IOException if the file system can't be watched
+     */
+    public SourceWatcher(long debounceMillis, int parallelism, @NotNull Listener listener) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.debounceMillis = debounceMillis;
+        this.parallelism = parallelism;
+        this.listener = listener;
+    }
+
+    /**
+     * Watches the source folders of a preprocess task. Existing outputs are expected to be up-to-date
+     *
+     * @param sourceDirs   the source folders, in order of priority. Folders, that don't exist yet, are watched once they are created
+     * @param targetDir    where the preprocessed files are written to
+     * @param preProcessor the engine
+     * @param reMapper     ReMapper to be used to replace matches in the files
+     * @throws IOException if a folder can't be watched
+     */
+    public void watch(@NotNull List<Path> sourceDirs, @NotNull Path targetDir, @NotNull PreProcessor preProcessor, @NotNull ReMapper reMapper) throws IOException {
+        watch(sourceDirs, targetDir, preProcessor, reMapper, SourceFilter.ALL);
+    }
+
+    /**
+     * Watches the source folders of a preprocess task. Existing outputs are expected to be up-to-date
+     *
+     * @param sourceDirs   the source folders, in order of priority. Folders, that don't exist yet, are watched once they are created
+     * @param targetDir    where the preprocessed files are written to
+     * @param preProcessor the engine
+     * @param reMapper     ReMapper to be used to replace matches in the files
+     * @param filter       the files of the source folders, that are preprocessed. Outputs of other files are deleted
+     * @throws IOException if a folder can't be watched
+     */
+    public void watch(@NotNull List<Path> sourceDirs, @NotNull Path targetDir, @NotNull PreProcessor preProcessor, @NotNull ReMapper reMapper,
+                      @NotNull SourceFilter filter) throws IOException {
+        watch(sourceDirs, targetDir, preProcessor, reMapper, filter, null);
+    }
+
+    /**
+     * Watches the source folders of a preprocess task. Existing outputs are expected to be up-to-date
+     *
+     * @param sourceDirs   the source folders, in order of priority. Folders, that don't exist yet, are watched once they are created
+     * @param targetDir    where the preprocessed files are written to
+     * @param preProcessor the engine
+     * @param reMapper     ReMapper to be used to replace matches in the files
+     * @param filter       the files of the source folders, that are preprocessed. Outputs of other files are deleted
+     * @param cache        keeps the skeletons of the files, so a file saved without changes isn't parsed again. May be null
+     * @throws IOException if a folder can't be watched
+     */
+    public void watch(@NotNull List<Path> sourceDirs, @NotNull Path targetDir, @NotNull PreProcessor preProcessor, @NotNull ReMapper reMapper,
+                      @NotNull SourceFilter filter, @Nullable ParseCache cache) throws IOException {
+        List<Path> absoluteDirs = new ArrayList<>();
+        for (Path sourceDir : sourceDirs) {
+            Path absoluteDir = sourceDir.toAbsolutePath().normalize();
+            absoluteDirs.add(absoluteDir);
+            if (Files.isDirectory(absoluteDir)) {
+                register(absoluteDir);
+            } else {
+                missingRoots.add(absoluteDir);
+            }
+        }
+        targets.add(new Target(absoluteDirs, targetDir.toAbsolutePath().normalize(), preProcessor, reMapper, filter, cache));
+    }
+
+    /**
+     * Processes batches of changes, until the thread is interrupted
+     *
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public void run() throws InterruptedException {
+        while (true) {
+            awaitBatch(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Waits for the next change, collects all changes following it and processes them
+     *
+     * @param timeoutMillis how long to wait for the first change
+     * @return the amount of handled paths, 0 if nothing has changed within the timeout
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public int awaitBatch(long timeoutMillis) throws InterruptedException {
+        // per target, the touched paths relative to the source folders
+        Map<Target, Set<Path>> changes = new LinkedHashMap<>();
+        long deadline = System.currentTimeMillis() + Math.min(timeoutMillis, Long.MAX_VALUE / 2);
+        WatchKey key;
+        while (true) {
+            long remaining = deadline - System.currentTimeMillis();
+            key = watchService.poll(missingRoots.isEmpty() ? remaining : Math.min(remaining, ROOT_POLL_MILLIS), TimeUnit.MILLISECONDS);
+            if (key != null || registerCreatedRoots(changes)) {
+                break;
+            }
+            if (deadline <= System.currentTimeMillis()) {
+                return 0;
+            }
+        }
+
+        boolean overflow = false;
+        while (key != null) {
+            overflow |= collect(key, changes);
+            key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+        }
+
+        if (overflow) {
+            // events got lost, so everything is compared again
+            changes.clear();
+            for (Target target : targets) {
+                changes.put(target, target.allPaths());
+            }
+        }
+
+        int handled = 0;
+        for (Map.Entry<Target, Set<Path>> change : changes.entrySet()) {
+            Target target = change.getKey();
+            ParallelExecutor.forEach(change.getValue(), parallelism, relPath -> handle(target, relPath));
+            handled += change.getValue().size();
+        }
+        return handled;
+    }
+
+    /**
+     * @return if events have been lost
+     */
+    private boolean collect(@NotNull WatchKey key, @NotNull Map<Target, Set<Path>> changes) {
+        Path dir = directories.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                overflow = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            List<Path> paths = new ArrayList<>();
+            paths.add(path);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // new folders are watched as well, files might have been created in them already
+                try {
+                    register(path);
+                    try (Stream<Path> files = Files.walk(path)) {
+                        files.filter(Files::isRegularFile).forEach(paths::add);
+                    }
+                } catch (IOException e) {
+                    overflow = true;
+                }
+            }
+            for (Target target : targets) {
+                for (Path sourceDir : target.sourceDirs) {
+                    for (Path changed : paths) {
+                        if (changed.startsWith(sourceDir) && !changed.equals(sourceDir)) {
+                            changes.computeIfAbsent(target, k -> new LinkedHashSet<>()).add(sourceDir.relativize(changed));
+                        }
+                    }
+                }
+            }
+        }
+        if (!key.reset()) {
+            // the folder is gone
+            directories.remove(key);
+            for (Target target : targets) {
+                if (target.sourceDirs.contains(dir)) {
+                    missingRoots.add(dir);
+                }
+            }
+        }
+        return overflow;
+    }
+
+    private void handle(@NotNull Target target, @NotNull Path relPath) {
+        // excluded files are handled like deleted ones
+        Path inPath = target.filter.includes(relPath) ? target.findSource(relPath) : null;
+        Path outPath = target.targetDir.resolve(relPath);
+        try {
+            if (inPath == null) {
+                if (target.hasSourceDirectory(relPath)) {
+                    // a folder, that might still be contained in another source folder
+                    for (Path path : target.allPaths(relPath)) {
+                        handle(target, path);
+                    }
+                    return;
+                }
+                if (Files.isDirectory(outPath, LinkOption.NOFOLLOW_LINKS)) {
+                    deleteRecursively(outPath);
+                    listener.deleted(outPath);
+                } else if (Files.deleteIfExists(outPath)) {
+                    listener.deleted(outPath);
+                }
+                return;
+            }
+
+            long start = System.nanoTime();
+            PreProcessor.FileResult result = target.preProcessor.convertFile(target.reMapper, inPath.toFile(), outPath.toFile(), null, null, target.cache);
+            listener.converted(outPath, result, System.nanoTime() - start);
+        } catch (IOException e) {
+            listener.failed(inPath != null ? inPath : outPath, new UncheckedIOException(e));
+        } catch (RuntimeException e) {
+            listener.failed(inPath != null ? inPath : outPath, e);
+        }
+    }
+
+    /**
+     * Watches the missing source folders, that have been created since
+     *
+     * @return if any has been created
+     */
+    private boolean registerCreatedRoots(@NotNull Map<Target, Set<Path>> changes) {
+        boolean created = false;
+        for (Iterator<Path> iterator = missingRoots.iterator(); iterator.hasNext(); ) {
+            Path root = iterator.next();
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+            try {
+                register(root);
+                // files might have been created in it already
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(root)) {
+                    files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+                }
+                for (Target target : targets) {
+                    if (target.sourceDirs.contains(root)) {
+                        for (Path file : files) {
+                            changes.computeIfAbsent(target, k -> new LinkedHashSet<>()).add(root.relativize(file));
+                        }
+                    }
+                }
+                iterator.remove();
+                created = true;
+            } catch (IOException e) {
+                // tried again with the next poll
+            }
+        }
+        return created;
+    }
+
+    private void register(@NotNull Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void deleteRecursively(@NotNull Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private static final class Target {
+        private final List<Path> sourceDirs;
+        private final Path targetDir;
+        private final PreProcessor preProcessor;
+        private final ReMapper reMapper;
+        private final SourceFilter filter;
+        private final @Nullable ParseCache cache;
+
+        private Target(List<Path> sourceDirs, Path targetDir, PreProcessor preProcessor, ReMapper reMapper, SourceFilter filter, @Nullable ParseCache cache) {
+            this.sourceDirs = sourceDirs;
+            this.targetDir = targetDir;
+            this.preProcessor = preProcessor;
+            this.reMapper = reMapper;
+            this.filter = filter;
+            this.cache = cache;
+        }
+
+        /**
+         * @return the file in the first source folder, that contains the path or null, if none does
+         */
+        private @Nullable Path findSource(@NotNull Path relPath) {
+            for (Path sourceDir : sourceDirs) {
+                Path path = sourceDir.resolve(relPath);
+                if (Files.isRegularFile(path)) {
+                    return path;
+                }
+            }
+            return null;
+        }
+
+        private boolean hasSourceDirectory(@NotNull Path relPath) {
+            for (Path sourceDir : sourceDirs) {
+                if (Files.isDirectory(sourceDir.resolve(relPath))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the paths of all sources and outputs, relative to their folders
+         */
+        private @NotNull Set<Path> allPaths() {
+            return allPaths(Path.of(""));
+        }
+
+        /**
+         * @param relFolder a folder relative to the source folders
+         * @return the paths of all sources and outputs within the folder, relative to the source folders
+         */
+        private @NotNull Set<Path> allPaths(@NotNull Path relFolder) {
+            Set<Path> paths = new LinkedHashSet<>();
+            List<Path> roots = new ArrayList<>(sourceDirs);
+            roots.add(targetDir);
+            for (Path root : roots) {
+                Path folder = root.resolve(relFolder);
+                if (!Files.isDirectory(folder)) {
+                    continue;
+                }
+                try (Stream<Path> files = Files.walk(folder)) {
+                    files.filter(Files::isRegularFile).forEach(file -> paths.add(root.relativize(file)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return paths;
+        }
+    }
+}
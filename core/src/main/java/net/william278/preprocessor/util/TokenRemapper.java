@@ -0,0 +1,435 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The token mode of the {@link ReMapper}: Java and Kotlin files are lexed into identifiers, qualified names, literals and comments.
+ * <p>
+ * Keys without a dot replace single identifiers, keys with dots replace qualified names from their first segment on,
+ * so {@code net.minecraft.util} also moves {@code net.minecraft.util.Identifier} to the new package. The longest dotted key wins,
+ * the remaining segments of the name are looked up as identifiers. Literals and comments are left untouched, except for disabled
+ * code behind the eval keyword. Other files are lexed into names only, so e.g. class names in JSON strings are replaced as well.
+ * <p>
+ * Every token costs one hash lookup per segment, no matter how many rules there are, and nothing is allocated for lines without a replacement.
+ */
+final class TokenRemapper {
+    /**
+     * files lexed with strings and comments, all others are only split into names
+     */
+    private static final Set<String> SOURCE_EXTENSIONS = Set.of("java", "kt", "kts");
+    private static final Set<String> KOTLIN_EXTENSIONS = Set.of("kt", "kts");
+
+    private final String[] replacements;
+    private final KeyTable identifiers;
+    private final KeyTable qualifiedNames;
+
+    /**
+     * @param keys         the identifiers and qualified names to replace
+     * @param replacements the replacement of each key
+     * @throws IllegalArgumentException if a key is neither an identifier nor a qualified name
+     */
+    TokenRemapper(@NotNull Collection<String> keys, String @NotNull [] replacements) {
+        this.replacements = replacements;
+        this.identifiers = new KeyTable(keys.size());
+        this.qualifiedNames = new KeyTable(keys.size());
+        int index = 0;
+        for (String key : keys) {
+            if (!isName(key)) {
+                throw new IllegalArgumentException("Token remap keys must be identifiers or qualified names, but got '" + key + "'");
+            }
+            (key.indexOf('.') < 0 ? identifiers : qualifiedNames).put(key, index++);
+        }
+    }
+
+    private static boolean isName(@NotNull String key) {
+        boolean segmentStart = true;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (segmentStart) {
+                if (!Character.isJavaIdentifierStart(c)) {
+                    return false;
+                }
+                segmentStart = false;
+            } else if (c == '.') {
+                segmentStart = true;
+            } else if (!Character.isJavaIdentifierPart(c)) {
+                return false;
+            }
+        }
+        return !segmentStart;
+    }
+
+    /**
+     * @param fileName    the name of the file, that decides how it is lexed. Null for Java
+     * @param evalKeyword the keyword disabled code starts with, or null if there is none
+     * @return a mapper keeping the lexer state of one file across its lines
+     */
+    @NotNull ReMapper.FileMapper forFile(@Nullable String fileName, @Nullable String evalKeyword) {
+        String extension = "java";
+        if (fileName != null) {
+            int i = fileName.lastIndexOf('.');
+            extension = i > 0 ? fileName.substring(i + 1).toLowerCase(Locale.ROOT) : "";
+        }
+        return new Lexer(SOURCE_EXTENSIONS.contains(extension), KOTLIN_EXTENSIONS.contains(extension), evalKeyword);
+    }
+
+    /**
+     * Open addressing hash table, that is looked up by ranges of a line, so no substring has to be created for a lookup
+     */
+    private static final class KeyTable {
+        private final String[] keys;
+        private final int[] hashes;
+        private final int[] values;
+        private final int mask;
+        private int size;
+
+        private KeyTable(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(2, expected) * 4 - 1);
+            this.keys = new String[capacity];
+            this.hashes = new int[capacity];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private void put(@NotNull String key, int value) {
+            int hash = key.hashCode();
+            int slot = spread(hash) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            hashes[slot] = hash;
+            values[slot] = value;
+            size++;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * @param hash the {@link String#hashCode()} of the range
+         * @return the value of the key equal to the range of the line, or -1
+         */
+        private int get(@NotNull String line, int start, int end, int hash) {
+            int length = end - start;
+            for (int slot = spread(hash) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                String key = keys[slot];
+                if (hashes[slot] == hash && key.length() == length && key.regionMatches(0, line, start, length)) {
+                    return values[slot];
+                }
+            }
+            return -1;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * The lexer state of a single file. Not thread-safe
+     */
+    private final class Lexer implements ReMapper.FileMapper {
+        private static final int CODE = 0;
+        private static final int BLOCK_COMMENT = 1;
+        private static final int TEXT_BLOCK = 2;
+
+        private final boolean source;
+        /**
+         * Kotlin block comments nest and its raw strings have no escapes
+         */
+        private final boolean kotlin;
+        private final @Nullable String evalKeyword;
+        private int state = CODE;
+        private int commentDepth = 0;
+
+        // the segments of the current name: start, end, hash of the segment and hash of the name up to the segment end
+        private int[] segmentStarts = new int[8];
+        private int[] segmentEnds = new int[8];
+        private int[] segmentHashes = new int[8];
+        private int[] prefixHashes = new int[8];
+
+        // the line being converted
+        private String line;
+        private StringBuilder out;
+        private int copied;
+
+        private Lexer(boolean source, boolean kotlin, @Nullable String evalKeyword) {
+            this.source = source;
+            this.kotlin = kotlin;
+            this.evalKeyword = evalKeyword;
+        }
+
+        @Override
+        public @NotNull String convertLine(@NotNull String line) {
+            this.line = line;
+            this.out = null;
+            this.copied = 0;
+
+            int disabledCode;
+            if (!source) {
+                lexNames(0);
+            } else if (state == CODE && (disabledCode = disabledCodeStart()) >= 0) {
+                // disabled code is code, but it doesn't change the state of the enabled code around it
+                lexCode(disabledCode);
+                state = CODE;
+                commentDepth = 0;
+            } else {
+                lexCode(0);
+            }
+
+            String converted = out == null ? line : out.append(line, copied, line.length()).toString();
+            this.line = null;
+            this.out = null;
+            return converted;
+        }
+
+        /**
+         * @return the index after the eval keyword, if the line is disabled code, otherwise -1
+         */
+        private int disabledCodeStart() {
+            if (evalKeyword == null) {
+                return -1;
+            }
+            int i = 0;
+            while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            return line.startsWith(evalKeyword, i) ? i + evalKeyword.length() : -1;
+        }
+
+        private void lexNames(int i) {
+            int length = line.length();
+            while (i < length) {
+                char c = line.charAt(i);
+                if (Character.isJavaIdentifierStart(c)) {
+                    i = name(i);
+                } else if (c >= '0' && c <= '9') {
+                    i = number(i);
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        private void lexCode(int i) {
+            int length = line.length();
+            while (i < length) {
+                if (state == BLOCK_COMMENT) {
+                    i = blockComment(i);
+                    continue;
+                }
+                if (state == TEXT_BLOCK) {
+                    i = textBlock(i);
+                    continue;
+                }
+
+                char c = line.charAt(i);
+                char next = i + 1 < length ? line.charAt(i + 1) : 0;
+                if (c == '/' && next == '/') {
+                    return;
+                } else if (c == '/' && next == '*') {
+                    state = BLOCK_COMMENT;
+                    commentDepth = 1;
+                    i += 2;
+                } else if (c == '"') {
+                    if (line.startsWith("\"\"\"", i)) {
+                        state = TEXT_BLOCK;
+                        i += 3;
+                    } else {
+                        i = quoted(i + 1, '"');
+                    }
+                } else if (c == '\'') {
+                    i = quoted(i + 1, '\'');
+                } else if (c == '`') {
+                    // Kotlin identifiers in backticks are left as they are
+                    int end = line.indexOf('`', i + 1);
+                    i = end < 0 ? length : end + 1;
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    i = name(i);
+                } else if (c >= '0' && c <= '9') {
+                    i = number(i);
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        private int blockComment(int i) {
+            int length = line.length();
+            while (i + 1 < length) {
+                char c = line.charAt(i);
+                char next = line.charAt(i + 1);
+                if (c == '*' && next == '/') {
+                    if (--commentDepth == 0) {
+                        state = CODE;
+                        return i + 2;
+                    }
+                    i += 2;
+                } else if (c == '/' && next == '*' && kotlin) {
+                    commentDepth++;
+                    i += 2;
+                } else {
+                    i++;
+                }
+            }
+            return length;
+        }
+
+        private int textBlock(int i) {
+            int length = line.length();
+            while (i < length) {
+                char c = line.charAt(i);
+                if (c == '\\' && !kotlin) {
+                    i += 2;
+                } else if (c == '"' && line.startsWith("\"\"\"", i)) {
+                    // a closing quote run may be longer in Kotlin, the last three quotes close it
+                    int end = i + 3;
+                    while (end < length && line.charAt(end) == '"') {
+                        end++;
+                    }
+                    state = CODE;
+                    return end;
+                } else {
+                    i++;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * @return the index after the closing quote, or the line end for an unterminated literal
+         */
+        private int quoted(int i, char quote) {
+            int length = line.length();
+            while (i < length) {
+                char c = line.charAt(i);
+                if (c == '\\') {
+                    i += 2;
+                } else if (c == quote) {
+                    return i + 1;
+                } else {
+                    i++;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * Skips a number, including suffixes, hex digits and exponents, so they are not taken for identifiers
+         */
+        private int number(int i) {
+            int length = line.length();
+            while (i < length) {
+                char c = line.charAt(i);
+                if (Character.isJavaIdentifierPart(c)) {
+                    i++;
+                } else if (c == '.' && i + 1 < length && Character.isDigit(line.charAt(i + 1))) {
+                    i += 2;
+                } else {
+                    break;
+                }
+            }
+            return i;
+        }
+
+        /**
+         * Reads an identifier or a qualified name and replaces it
+         *
+         * @return the index after the name
+         */
+        private int name(int i) {
+            int length = line.length();
+            int segments = 0;
+            int prefixHash = 0;
+            while (true) {
+                if (segments == segmentStarts.length) {
+                    grow();
+                }
+                int start = i;
+                int hash = 0;
+                while (i < length) {
+                    char c = line.charAt(i);
+                    if (!Character.isJavaIdentifierPart(c)) {
+                        break;
+                    }
+                    hash = 31 * hash + c;
+                    prefixHash = 31 * prefixHash + c;
+                    i++;
+                }
+                segmentStarts[segments] = start;
+                segmentEnds[segments] = i;
+                segmentHashes[segments] = hash;
+                prefixHashes[segments] = prefixHash;
+                segments++;
+
+                if (i + 1 < length && line.charAt(i) == '.' && Character.isJavaIdentifierStart(line.charAt(i + 1))) {
+                    prefixHash = 31 * prefixHash + '.';
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            replace(segments);
+            return i;
+        }
+
+        private void replace(int segments) {
+            int first = 0;
+            if (segments > 1 && !qualifiedNames.isEmpty()) {
+                int start = segmentStarts[0];
+                for (int last = segments - 1; last > 0; last--) {
+                    int key = qualifiedNames.get(line, start, segmentEnds[last], prefixHashes[last]);
+                    if (key >= 0) {
+                        replace(start, segmentEnds[last], key);
+                        first = last + 1;
+                        break;
+                    }
+                }
+            }
+            if (!identifiers.isEmpty()) {
+                for (int segment = first; segment < segments; segment++) {
+                    int key = identifiers.get(line, segmentStarts[segment], segmentEnds[segment], segmentHashes[segment]);
+                    if (key >= 0) {
+                        replace(segmentStarts[segment], segmentEnds[segment], key);
+                    }
+                }
+            }
+        }
+
+        private void replace(int start, int end, int key) {
+            if (out == null) {
+                out = new StringBuilder(line.length() + 16);
+            }
+            out.append(line, copied, start).append(replacements[key]);
+            copied = end;
+        }
+
+        private void grow() {
+            int capacity = segmentStarts.length * 2;
+            segmentStarts = Arrays.copyOf(segmentStarts, capacity);
+            segmentEnds = Arrays.copyOf(segmentEnds, capacity);
+            segmentHashes = Arrays.copyOf(segmentHashes, capacity);
+            prefixHashes = Arrays.copyOf(prefixHashes, capacity);
+        }
+    }
+}
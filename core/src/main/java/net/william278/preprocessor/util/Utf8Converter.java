@@ -0,0 +1,614 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import net.william278.preprocessor.data.Keywords;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Preprocesses UTF-8 files without decoding them: lines, directives and remap keys are found in the raw bytes,
+ * and unchanged parts of lines are copied as they are. Only conditions and lines that contain a remap key are decoded.
+ * <p>
+ * Produces the very same output as {@link PreProcessor#convert(java.io.Reader, java.io.Writer, String, ReMapper)}.
+ * Indentations are counted in UTF-16 chars like there, which only matters if trailing whitespace makes them reach into the text of a line.
+ * Files that are not valid UTF-8 throw a {@link MalformedInputException}, before any line is converted.
+ * <p>
+ * Instances only hold the encoded keywords and remap keys and are thread-safe, the file buffers are pooled per thread.
+ */
+final class Utf8Converter {
+    /**
+     * larger files are converted line by line as strings, so they don't have to be held in memory
+     */
+    static final int MAX_FILE_SIZE = 64 * 1024 * 1024;
+    /**
+     * larger buffers are not kept for the next file
+     */
+    private static final int MAX_POOLED_SIZE = 4 * 1024 * 1024;
+    private static final int OUTPUT_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> INPUT_BUFFER = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+    private static final ThreadLocal<byte[]> OUTPUT_BUFFER = ThreadLocal.withInitial(() -> new byte[OUTPUT_SIZE]);
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long LFS = ONES * '\n';
+    private static final long CRS = ONES * '\r';
+
+    private static final byte CURRENT_VALUE = 1;
+    private static final byte ELSE_FOUND = 2;
+    private static final byte TRUE_FOUND = 4;
+
+    private final PreProcessor preProcessor;
+    private final boolean removeComments;
+    private final ReMapper reMapper;
+    /**
+     * finds lines that might be changed by the remapper, null if there are no remap keys
+     */
+    private final @Nullable ByteScanner remapScanner;
+    /**
+     * if no remap value contains a surrogate, that might be unpaired
+     */
+    private final boolean encodableValues;
+    private final byte[] ifKeyword;
+    private final byte[] elseIfKeyword;
+    private final byte[] elseKeyword;
+    private final byte[] endIfKeyword;
+    private final byte[] evalKeyword;
+
+    /**
+     * @param remapKeys the remap keys as plain strings, see {@link ReMapper#getLiteralKeys()}
+     */
+    Utf8Converter(@NotNull PreProcessor preProcessor, boolean removeComments, @NotNull Keywords keywords,
+                  @NotNull ReMapper reMapper, @NotNull Iterable<String> remapKeys) {
+        this.preProcessor = preProcessor;
+        this.removeComments = removeComments;
+        this.reMapper = reMapper;
+        List<byte[]> needles = new ArrayList<>();
+        for (String key : remapKeys) {
+            needles.add(key.getBytes(StandardCharsets.UTF_8));
+        }
+        this.remapScanner = needles.isEmpty() ? null : new ByteScanner(needles);
+        boolean encodableValues = true;
+        for (String value : reMapper.getValues()) {
+            encodableValues &= value.chars().noneMatch(c -> Character.isSurrogate((char) c));
+        }
+        this.encodableValues = encodableValues;
+        this.ifKeyword = keywords.IF().getBytes(StandardCharsets.UTF_8);
+        this.elseIfKeyword = keywords.ELSEIF().getBytes(StandardCharsets.UTF_8);
+        this.elseKeyword = keywords.ELSE().getBytes(StandardCharsets.UTF_8);
+        this.endIfKeyword = keywords.ENDIF().getBytes(StandardCharsets.UTF_8);
+        this.evalKeyword = keywords.EVAL().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param inPath   the file to preprocess, at most {@link #MAX_FILE_SIZE} bytes large
+     * @param out      where the preprocessed lines are written to, each one terminated with {@code \n}
+     * @param fileName the file name for error throwing
+     * @param report   collects where the time is spent, may be null
+     * @param recorder collects the directives of the file, may be null
+     * @throws IOException if reading or writing fails or the file is no valid UTF-8
+     */
+    void convert(@NotNull Path inPath, @NotNull FileChannel out, @Nullable String fileName,
+                 @Nullable PerformanceReport report, @Nullable SkeletonIndex.Recorder recorder) throws IOException {
+        long time = report != null ? System.nanoTime() : 0;
+        byte[] input;
+        int size;
+        try (FileChannel in = FileChannel.open(inPath, StandardOpenOption.READ)) {
+            long length = in.size();
+            if (length > MAX_FILE_SIZE) {
+                throw new IOException("File too large: " + inPath);
+            }
+            input = INPUT_BUFFER.get();
+            if (input.length < length) {
+                input = new byte[(int) length];
+                if (length <= MAX_POOLED_SIZE) {
+                    INPUT_BUFFER.set(input);
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(input, 0, (int) length);
+            while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+                // fill the buffer
+            }
+            size = buffer.position();
+        }
+        int invalid = findInvalidUtf8(input, size);
+        if (invalid >= 0) {
+            throw new MalformedInputException(1);
+        }
+        if (report != null) {
+            long now = System.nanoTime();
+            report.addTime(PerformanceReport.Phase.READ, now - time);
+            time = now;
+        }
+
+        FileConverter converter = new FileConverter(input, out, fileName, report, recorder);
+        int position = 0;
+        while (position < size) {
+            int lineEnd = nextLineBreak(input, position, size);
+            converter.convertLine(position, lineEnd);
+            if (lineEnd == size) {
+                break;
+            }
+            // \n, \r and \r\n end a line, just like in BufferedReader#readLine()
+            position = lineEnd + 1;
+            if (input[lineEnd] == '\r' && position < size && input[position] == '\n') {
+                position++;
+            }
+        }
+        converter.finish();
+        converter.flush();
+
+        if (report != null) {
+            long total = System.nanoTime() - time;
+            report.addTime(PerformanceReport.Phase.REMAP, converter.remapNanos);
+            report.addTime(PerformanceReport.Phase.WRITE, converter.writeNanos);
+            report.addTime(PerformanceReport.Phase.EVALUATE, total - converter.remapNanos - converter.writeNanos);
+        }
+    }
+
+    /**
+     * @return the index of the next {@code \n} or {@code \r} or the limit, if there is none. Checks eight bytes at once
+     */
+    static int nextLineBreak(byte @NotNull [] bytes, int from, int limit) {
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = (long) LONGS.get(bytes, i);
+            long lf = word ^ LFS;
+            long cr = word ^ CRS;
+            // the lowest byte, that is zero in either one, has its high bit set
+            long found = ((lf - ONES) & ~lf | (cr - ONES) & ~cr) & HIGHS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            if (bytes[i] == '\n' || bytes[i] == '\r') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Validates like the UTF-8 decoder of the JDK: no overlong forms, no surrogates and nothing above U+10FFFF
+     *
+     * @return the index of the first invalid byte or -1, if all bytes are valid
+     */
+    static int findInvalidUtf8(byte @NotNull [] bytes, int limit) {
+        int i = 0;
+        while (i < limit) {
+            // skip ASCII eight bytes at once
+            if (i + Long.BYTES <= limit && ((long) LONGS.get(bytes, i) & HIGHS) == 0) {
+                i += Long.BYTES;
+                continue;
+            }
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            int length;
+            int min = 0x80;
+            int max = 0xBF;
+            if (b >= 0xC2 && b <= 0xDF) {
+                length = 2;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                length = 3;
+                if (b == 0xE0) {
+                    min = 0xA0;
+                } else if (b == 0xED) {
+                    max = 0x9F;
+                }
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                length = 4;
+                if (b == 0xF0) {
+                    min = 0x90;
+                } else if (b == 0xF4) {
+                    max = 0x8F;
+                }
+            } else {
+                return i;
+            }
+            if (i + length > limit) {
+                return i;
+            }
+            int second = bytes[i + 1] & 0xFF;
+            if (second < min || second > max) {
+                return i;
+            }
+            for (int j = 2; j < length; j++) {
+                if ((bytes[i + j] & 0xC0) != 0x80) {
+                    return i;
+                }
+            }
+            i += length;
+        }
+        return -1;
+    }
+
+    /**
+     * Holds the if-stack and the output buffer of one file, see PreProcessor.LineConverter
+     */
+    private final class FileConverter {
+        private final byte[] input;
+        private final FileChannel out;
+        private final @Nullable String fileName;
+        private final @Nullable PerformanceReport report;
+        private final @Nullable SkeletonIndex.Recorder recorder;
+        private final byte[] output;
+        private int outputSize = 0;
+        /**
+         * lines that are put together from several parts
+         */
+        private byte[] scratch = new byte[256];
+        private byte[] flags = new byte[8];
+        private int[] indents = new int[8];
+        private int depth = 0;
+        private int inactiveLevels = 0;
+        private int n = 0;
+        private boolean unencodable = false;
+        private @Nullable CharsetEncoder encoder;
+        private long remapNanos = 0;
+        private long writeNanos = 0;
+
+        private FileConverter(byte @NotNull [] input, @NotNull FileChannel out, @Nullable String fileName,
+                              @Nullable PerformanceReport report, @Nullable SkeletonIndex.Recorder recorder) {
+            this.input = input;
+            this.out = out;
+            this.fileName = fileName;
+            this.report = report;
+            this.recorder = recorder;
+            this.output = OUTPUT_BUFFER.get();
+        }
+
+        /**
+         * @param lineStart the index of the first byte of the line
+         * @param lineEnd   the index of the line break or end of the file
+         */
+        private void convertLine(int lineStart, int lineEnd) throws IOException {
+            n++;
+
+            byte[] line = input;
+            int start = lineStart;
+            while (start < lineEnd && (line[start] & 0xFF) <= ' ') {
+                start++;
+            }
+            int end = lineEnd;
+            while (end > start && (line[end - 1] & 0xFF) <= ' ') {
+                end--;
+            }
+            // whitespace is ASCII, so its length in bytes equals the one in chars
+            int indentation = (start - lineStart) + (lineEnd - end);
+
+            if (startsWith(line, start, end, ifKeyword)) {
+                boolean result = evalCondition(DirectiveSkeleton.IF, start + ifKeyword.length, end);
+                push(result ? CURRENT_VALUE | TRUE_FOUND : 0, indentation);
+                writeDirective(lineStart, lineEnd);
+            } else if (startsWith(line, start, end, elseIfKeyword)) {
+                if (depth == 0) {
+                    throw new ParseException("elseif without If-Statement!", n, fileName);
+                }
+                int top = flags[depth - 1];
+                if ((top & ELSE_FOUND) != 0) {
+                    throw new ParseException("elseif after else!", n, fileName);
+                }
+
+                indents[depth - 1] = indentation;
+
+                if ((top & TRUE_FOUND) != 0) {
+                    if (recorder != null) {
+                        recorder.directive(DirectiveSkeleton.ELSEIF, n, condition(start + elseIfKeyword.length, end));
+                    }
+                    setTop(top & ~CURRENT_VALUE);
+                } else {
+                    boolean result = evalCondition(DirectiveSkeleton.ELSEIF, start + elseIfKeyword.length, end);
+                    setTop(result ? CURRENT_VALUE | TRUE_FOUND : 0);
+                }
+                writeDirective(lineStart, lineEnd);
+            } else if (startsWith(line, start, end, elseKeyword)) {
+                if (depth == 0) {
+                    throw new ParseException("Unexpected else", n, fileName);
+                }
+                if (recorder != null) {
+                    recorder.directive(DirectiveSkeleton.ELSE, n, null);
+                }
+                int top = flags[depth - 1];
+                setTop(((top & TRUE_FOUND) != 0 ? TRUE_FOUND : CURRENT_VALUE) | ELSE_FOUND);
+                indents[depth - 1] = indentation;
+                writeDirective(lineStart, lineEnd);
+            } else if (startsWith(line, start, end, endIfKeyword)) {
+                if (depth == 0) {
+                    throw new ParseException("endif without If-Statement!", n, fileName);
+                }
+                if (recorder != null) {
+                    recorder.directive(DirectiveSkeleton.ENDIF, n, null);
+                }
+                depth--;
+                if ((flags[depth] & CURRENT_VALUE) == 0) {
+                    inactiveLevels--;
+                }
+                writeDirective(lineStart, lineEnd);
+            } else if (inactiveLevels == 0) {
+                if (startsWith(line, start, end, evalKeyword)) {
+                    // strip the eval keyword and one optional space
+                    int from = start + evalKeyword.length;
+                    if (from < lineEnd && line[from] == ' ') {
+                        from++;
+                    }
+                    writeLine(lineStart, start, from, lineEnd);
+                } else {
+                    writeLine(lineStart, lineEnd, lineEnd, lineEnd);
+                }
+            } else if (!removeComments) {
+                int currIndent = indents[depth - 1];
+                if (start == end) {
+                    writeCommented(currIndent, lineEnd, lineEnd, false);
+                } else if (!startsWith(line, start, end, evalKeyword) && currIndent <= indentation) {
+                    writeCommented(currIndent, charIndex(lineStart, lineEnd, currIndent), lineEnd, true);
+                } else {
+                    writeLine(lineStart, lineEnd, lineEnd, lineEnd);
+                }
+            }
+        }
+
+        private boolean evalCondition(byte kind, int from, int to) {
+            String condition = condition(from, to);
+            if (condition == null) {
+                throw new ParseException("Expected space before condition!", n, fileName);
+            }
+            if (report != null) {
+                report.addDirective(condition);
+            }
+            if (recorder != null) {
+                recorder.directive(kind, n, condition);
+            }
+            return preProcessor.evalExpression(condition, n, fileName);
+        }
+
+        /**
+         * @return the condition behind a keyword or null, if there is no space between keyword and condition
+         */
+        private @Nullable String condition(int from, int to) {
+            if (from >= to || input[from] != ' ') {
+                return null;
+            }
+            while ((input[from] & 0xFF) <= ' ') {
+                from++;
+            }
+            return new String(input, from, to - from, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the index of the byte, that starts the given char of the line. If the char is the second half of a surrogate pair,
+         * the line could not be encoded and the whole file fails as soon as it is converted completely
+         */
+        private int charIndex(int lineStart, int lineEnd, int chars) {
+            int i = lineStart;
+            int units = 0;
+            while (units < chars && i < lineEnd) {
+                int b = input[i] & 0xFF;
+                if (b >= 0xF0) {
+                    units += 2;
+                    i += 4;
+                } else if (b >= 0xE0) {
+                    units++;
+                    i += 3;
+                } else if (b >= 0xC0) {
+                    units++;
+                    i += 2;
+                } else {
+                    units++;
+                    i++;
+                }
+            }
+            if (units > chars) {
+                unencodable = true;
+            }
+            return i;
+        }
+
+        /**
+         * @throws MalformedInputException if any line could not be encoded. Like with a writer, this is only noticed after all lines have been converted
+         */
+        private void finish() throws MalformedInputException {
+            if (depth != 0) {
+                throw new ParseException("Missing endif!", n, fileName);
+            }
+            if (unencodable) {
+                throw new MalformedInputException(1);
+            }
+        }
+
+        private void push(int flags, int indentation) {
+            if (depth == this.flags.length) {
+                this.flags = Arrays.copyOf(this.flags, depth * 2);
+                this.indents = Arrays.copyOf(this.indents, depth * 2);
+            }
+            this.flags[depth] = (byte) flags;
+            this.indents[depth] = indentation;
+            depth++;
+            if ((flags & CURRENT_VALUE) == 0) {
+                inactiveLevels++;
+            }
+        }
+
+        private void setTop(int flags) {
+            boolean wasActive = (this.flags[depth - 1] & CURRENT_VALUE) != 0;
+            boolean isActive = (flags & CURRENT_VALUE) != 0;
+            if (wasActive && !isActive) {
+                inactiveLevels++;
+            } else if (!wasActive && isActive) {
+                inactiveLevels--;
+            }
+            this.flags[depth - 1] = (byte) flags;
+        }
+
+        private void writeDirective(int lineStart, int lineEnd) throws IOException {
+            if (!removeComments) {
+                writeLine(lineStart, lineEnd, lineEnd, lineEnd);
+            }
+        }
+
+        /**
+         * Writes the bytes from lineStart to cutStart and from cutEnd to lineEnd as one line
+         */
+        private void writeLine(int lineStart, int cutStart, int cutEnd, int lineEnd) throws IOException {
+            if (cutStart == cutEnd) {
+                writeLine(input, lineStart, lineEnd - lineStart);
+                return;
+            }
+            int length = (cutStart - lineStart) + (lineEnd - cutEnd);
+            byte[] scratch = scratch(length);
+            System.arraycopy(input, lineStart, scratch, 0, cutStart - lineStart);
+            System.arraycopy(input, cutEnd, scratch, cutStart - lineStart, lineEnd - cutEnd);
+            writeLine(scratch, 0, length);
+        }
+
+        /**
+         * Writes the indentation and the eval keyword, followed by a space and the rest of the line, if there is one
+         */
+        private void writeCommented(int indentation, int restStart, int lineEnd, boolean hasRest) throws IOException {
+            int length = indentation + evalKeyword.length + (hasRest ? 1 + lineEnd - restStart : 0);
+            byte[] scratch = scratch(length);
+            Arrays.fill(scratch, 0, indentation, (byte) ' ');
+            System.arraycopy(evalKeyword, 0, scratch, indentation, evalKeyword.length);
+            if (hasRest) {
+                scratch[indentation + evalKeyword.length] = ' ';
+                System.arraycopy(input, restStart, scratch, indentation + evalKeyword.length + 1, lineEnd - restStart);
+            }
+            writeLine(scratch, 0, length);
+        }
+
+        private byte @NotNull [] scratch(int length) {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            return scratch;
+        }
+
+        /**
+         * Writes the bytes as one line, remapped if they contain any remap key
+         */
+        private void writeLine(byte @NotNull [] line, int offset, int length) throws IOException {
+            if (remapScanner != null && remapScanner.containsAny(line, offset, offset + length)) {
+                writeRemapped(new String(line, offset, length, StandardCharsets.UTF_8));
+            } else {
+                write(line, offset, length);
+                writeByte('\n');
+            }
+        }
+
+        private void writeRemapped(@NotNull String line) throws IOException {
+            long time = report != null ? System.nanoTime() : 0;
+            String remapped = reMapper.convertLine(line);
+            if (encodableValues) {
+                // the line is valid and so are the values it may contain now, so nothing can be replaced while encoding
+                byte[] bytes = remapped.getBytes(StandardCharsets.UTF_8);
+                if (report != null) {
+                    remapNanos += System.nanoTime() - time;
+                }
+                write(bytes, 0, bytes.length);
+                writeByte('\n');
+                return;
+            }
+            if (encoder == null) {
+                encoder = StandardCharsets.UTF_8.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT);
+            }
+            ByteBuffer bytes;
+            try {
+                bytes = encoder.encode(CharBuffer.wrap(remapped));
+            } catch (CharacterCodingException e) {
+                unencodable = true;
+                return;
+            } finally {
+                if (report != null) {
+                    remapNanos += System.nanoTime() - time;
+                }
+            }
+            write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            writeByte('\n');
+        }
+
+        private void writeByte(int b) throws IOException {
+            if (outputSize == output.length) {
+                flush();
+            }
+            output[outputSize++] = (byte) b;
+        }
+
+        private void write(byte @NotNull [] bytes, int offset, int length) throws IOException {
+            if (length > output.length - outputSize) {
+                flush();
+                if (length > output.length) {
+                    writeFully(ByteBuffer.wrap(bytes, offset, length));
+                    return;
+                }
+            }
+            System.arraycopy(bytes, offset, output, outputSize, length);
+            outputSize += length;
+        }
+
+        private void flush() throws IOException {
+            if (outputSize > 0) {
+                writeFully(ByteBuffer.wrap(output, 0, outputSize));
+                outputSize = 0;
+            }
+        }
+
+        private void writeFully(@NotNull ByteBuffer buffer) throws IOException {
+            long time = report != null ? System.nanoTime() : 0;
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            if (report != null) {
+                writeNanos += System.nanoTime() - time;
+            }
+        }
+    }
+
+    /**
+     * @return if the trimmed line between start and end starts with the keyword
+     */
+    private static boolean startsWith(byte @NotNull [] line, int start, int end, byte @NotNull [] keyword) {
+        if (end - start < keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length; i++) {
+            if (line[start + i] != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Preprocesses files for several var sets (variants) at once. Each file is read and parsed only once, into a {@link DirectiveSkeleton},
+ * that is then evaluated for every variant. Outputs that are identical to the one of an earlier variant are hard linked to it instead of being written again.
+ * <p>
+ * Instances are thread-safe, if the engines are.
+ */
+public final class VariantConverter {
+    private final Map<String, PreProcessor> engines;
+    private final ReMapper reMapper;
+    private final Charset charset;
+    private final @Nullable ParseCache cache;
+    private final AtomicInteger linkedFiles = new AtomicInteger();
+
+    /**
+     * @param engines  the engines of the variants, by name. All of them must use the same keywords, binary detection and charset
+     * @param reMapper ReMapper to be used to replace matches in the files
+     * @param charset  the charset of all text files
+     */
+    public VariantConverter(@NotNull Map<String, PreProcessor> engines, @NotNull ReMapper reMapper, @NotNull Charset charset) {
+        this(engines, reMapper, charset, null);
+    }
+
+    /**
+     * @param engines  the engines of the variants, by name. All of them must use the same keywords, binary detection and charset
+     * @param reMapper ReMapper to be used to replace matches in the files
+     * @param charset  the charset of all text files
+     * @param cache    where the skeletons of files are kept, so unchanged files don't have to be parsed again. May be null
+     */
+    public VariantConverter(@NotNull Map<String, PreProcessor> engines, @NotNull ReMapper reMapper, @NotNull Charset charset, @Nullable ParseCache cache) {
+        if (engines.isEmpty()) {
+            throw new IllegalArgumentException("No variants given");
+        }
+        this.engines = Collections.unmodifiableMap(new LinkedHashMap<>(engines));
+        this.reMapper = reMapper;
+        this.charset = charset;
+        this.cache = cache;
+    }
+
+    /**
+     * @param inFile   the file that shall be preprocessed
+     * @param outFiles the output file of each variant. Existing files are replaced
+     * @return how the file has been handled, just like {@link PreProcessor#convertFile(ReMapper, File, File)} would have for a single variant
+     */
+    public @NotNull PreProcessor.FileResult convertFile(@NotNull File inFile, @NotNull Map<String, File> outFiles) {
+        Iterator<Map.Entry<String, PreProcessor>> iterator = engines.entrySet().iterator();
+        Map.Entry<String, PreProcessor> first = iterator.next();
+        Path firstOut = outFiles.get(first.getKey()).toPath();
+        try {
+            Files.deleteIfExists(firstOut);
+            // binaries and files without any directive are the same for every variant
+            PreProcessor.FileResult transferred = first.getValue().transferUnprocessed(reMapper, inFile, firstOut.toFile());
+            if (transferred != null) {
+                linkAll(firstOut, outFiles, first.getKey());
+                return transferred;
+            }
+
+            DirectiveSkeleton skeleton;
+            try {
+                if (cache != null) {
+                    skeleton = cache.getSkeleton(first.getValue(), inFile.getName(), Files.readAllBytes(inFile.toPath()));
+                } else {
+                    skeleton = first.getValue().parse(Files.readAllLines(inFile.toPath(), charset), inFile.getName());
+                }
+            } catch (CharacterCodingException e) {
+                copyAll(inFile.toPath(), outFiles);
+                return PreProcessor.FileResult.COPIED;
+            }
+
+            Map<ByteBuffer, Path> written = new HashMap<>();
+            for (Map.Entry<String, PreProcessor> variant : engines.entrySet()) {
+                Path outPath = outFiles.get(variant.getKey()).toPath();
+                ByteBuffer content;
+                try {
+                    // remapped before the imports are organized, just like by the single variant engine
+                    content = encode(variant.getValue().convert(skeleton, reMapper));
+                } catch (CharacterCodingException e) {
+                    // just like the single variant engine
+                    copyAll(inFile.toPath(), outFiles);
+                    return PreProcessor.FileResult.COPIED;
+                }
+
+                Files.deleteIfExists(outPath);
+                Files.createDirectories(outPath.toAbsolutePath().getParent());
+                Path existing = written.get(content);
+                if (existing != null) {
+                    link(existing, outPath);
+                    linkedFiles.incrementAndGet();
+                } else {
+                    try (FileChannel channel = FileChannel.open(outPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                        ByteBuffer buffer = content.duplicate();
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                    }
+                    written.put(content, outPath);
+                }
+            }
+            return PreProcessor.FileResult.CONVERTED;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private @NotNull ByteBuffer encode(@NotNull List<String> lines) throws CharacterCodingException {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        return charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .encode(CharBuffer.wrap(builder));
+    }
+
+    /**
+     * @return the amount of outputs so far, that have been linked to the identical output of another variant instead of being written
+     */
+    public int getLinkedFiles() {
+        return linkedFiles.get();
+    }
+
+    private void copyAll(@NotNull Path inPath, @NotNull Map<String, File> outFiles) throws IOException {
+        String firstName = engines.keySet().iterator().next();
+        Path firstOut = outFiles.get(firstName).toPath();
+        Files.createDirectories(firstOut.toAbsolutePath().getParent());
+        Files.copy(inPath, firstOut, StandardCopyOption.REPLACE_EXISTING);
+        linkAll(firstOut, outFiles, firstName);
+    }
+
+    private void linkAll(@NotNull Path source, @NotNull Map<String, File> outFiles, @NotNull String sourceVariant) throws IOException {
+        for (String variant : engines.keySet()) {
+            if (!variant.equals(sourceVariant)) {
+                Path outPath = outFiles.get(variant).toPath();
+                Files.deleteIfExists(outPath);
+                Files.createDirectories(outPath.toAbsolutePath().getParent());
+                link(source, outPath);
+                linkedFiles.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Hard links the target to the source, or copies it if the file system doesn't support that
+     */
+    private static void link(@NotNull Path source, @NotNull Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable, typed snapshot of the vars. Every value is parsed exactly once, when the snapshot is taken, so conditions never parse anything while being evaluated.
+ * <p>
+ * A var is undefined if it is missing, null or its value is its own name. Undefined vars are false as bare condition, and an error when being compared.
+ */
+public final class Vars {
+    private final Map<String, Value> values;
+
+    private Vars(Map<String, Value> values) {
+        this.values = values;
+    }
+
+    /**
+     * @param vars the vars, with any values. Their string representations are parsed
+     * @return the snapshot
+     */
+    public static @NotNull Vars of(@NotNull Map<String, ?> vars) {
+        Map<String, Value> values = new HashMap<>();
+        for (Map.Entry<String, ?> entry : vars.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+            String text = value.toString();
+            // a var that evaluates to its own name has always been treated as undefined
+            if (!text.equals(entry.getKey())) {
+                values.put(entry.getKey(), Value.parse(text));
+            }
+        }
+        return new Vars(Collections.unmodifiableMap(values));
+    }
+
+    /**
+     * @param key the name of the var
+     * @return the parsed value or null, if the var is undefined
+     */
+    public @Nullable Value get(@NotNull String key) {
+        return values.get(key);
+    }
+
+    /**
+     * @return all defined vars
+     */
+    public @NotNull Map<String, Value> asMap() {
+        return values;
+    }
+
+    /**
+     * The types a value can be parsed as
+     */
+    public enum Type {
+        /**
+         * an integer, e.g. {@code 12004}
+         */
+        INT,
+        /**
+         * {@code true} or {@code false}, ignoring case
+         */
+        BOOLEAN,
+        /**
+         * dot separated non-negative integers, e.g. {@code 1.20.4}
+         */
+        VERSION,
+        /**
+         * anything else
+         */
+        STRING
+    }
+
+    /**
+     * A parsed value. Ints and versions share their comparison key, so an int compares like a version with a single component.
+     * Conditions only compare ints with versions, if the int is a plausible major version, see {@link Expression}.
+     */
+    public static final class Value {
+        private static final int[] NO_COMPONENTS = new int[0];
+
+        private final String text;
+        private final Type type;
+        /**
+         * the numeric components without trailing zeros, so 1.20 equals 1.20.0
+         */
+        private final int[] key;
+        private final boolean truthy;
+
+        private Value(String text, Type type, int[] key, boolean truthy) {
+            this.text = text;
+            this.type = type;
+            this.key = key;
+            this.truthy = truthy;
+        }
+
+        /**
+         * @param text the text to parse
+         * @return the value, typed by its text
+         */
+        public static @NotNull Value parse(@NotNull String text) {
+            try {
+                int value = Integer.parseInt(text);
+                return new Value(text, Type.INT, trim(new int[]{value}), value != 0);
+            } catch (NumberFormatException ignored) {
+            }
+            if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+                boolean value = Boolean.parseBoolean(text);
+                return new Value(text, Type.BOOLEAN, NO_COMPONENTS, value);
+            }
+            int[] version = parseVersion(text);
+            if (version != null) {
+                int[] key = trim(version);
+                return new Value(text, Type.VERSION, key, key.length > 0);
+            }
+            return new Value(text, Type.STRING, NO_COMPONENTS, true);
+        }
+
+        private static int @Nullable [] parseVersion(@NotNull String text) {
+            String[] parts = text.split("\\.", -1);
+            if (parts.length < 2) {
+                return null;
+            }
+            int[] components = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                String part = parts[i];
+                if (part.isEmpty() || part.length() > 9) {
+                    return null;
+                }
+                for (int j = 0; j < part.length(); j++) {
+                    if (part.charAt(j) < '0' || part.charAt(j) > '9') {
+                        return null;
+                    }
+                }
+                components[i] = Integer.parseInt(part);
+            }
+            return components;
+        }
+
+        private static int @NotNull [] trim(int @NotNull [] components) {
+            int length = components.length;
+            while (length > 0 && components[length - 1] == 0) {
+                length--;
+            }
+            return length == components.length ? components : Arrays.copyOf(components, length);
+        }
+
+        /**
+         * @return the text the value has been parsed from
+         */
+        public @NotNull String getText() {
+            return text;
+        }
+
+        /**
+         * @return what the value has been parsed as
+         */
+        public @NotNull Type getType() {
+            return type;
+        }
+
+        /**
+         * @return if it is an int or a version
+         */
+        public boolean isNumeric() {
+            return type == Type.INT || type == Type.VERSION;
+        }
+
+        /**
+         * @return the value as a bare condition: false for {@code 0}, versions that only consist of zeros and {@code false}, otherwise true
+         */
+        public boolean isTruthy() {
+            return truthy;
+        }
+
+        /**
+         * @param other another numeric value
+         * @return a negative number, zero or a positive number, if this value is lower, equal or greater than the other one
+         */
+        public int compareTo(@NotNull Value other) {
+            int[] a = key;
+            int[] b = other.key;
+            for (int i = 0; i < Math.max(a.length, b.length); i++) {
+                int compare = Integer.compare(i < a.length ? a[i] : 0, i < b.length ? b[i] : 0);
+                if (compare != 0) {
+                    return compare;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+
+package net.william278.preprocessor;
+
+import net.william278.preprocessor.util.ParseException;
+import net.william278.preprocessor.util.PreProcessor;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpressionTest {
+    private static final PreProcessor preProcessor = new PreProcessor(PreProcessorTest.vars);
+
+    @Test
+    void testTyped() {
+        PreProcessor preProcessor = new PreProcessor(new HashMap<String, Object>() {
+            {
+                put("MC", "1.20.4");
+                put("legacy", 12004);
+                put("fabric", true);
+                put("forge", "false");
+                put("self", "self");
+            }
+        });
+        // versions are compared component by component, missing components are zero
+        assertTrue(preProcessor.evalExpression("MC >= 1.20.4"));
+        assertTrue(preProcessor.evalExpression("MC > 1.20"));
+        assertTrue(preProcessor.evalExpression("MC < 1.21"));
+        assertTrue(preProcessor.evalExpression("MC == 1.20.4.0"));
+        assertFalse(preProcessor.evalExpression("MC < 1.9"));
+        assertTrue(preProcessor.evalExpression("MC > 1"));
+        assertTrue(preProcessor.evalExpression("legacy >= 12004"));
+        // an int encoded version is never compared with a dotted one
+        assertThrows(ParseException.class, () -> preProcessor.evalExpression("legacy >= 1.20.4"));
+        assertThrows(ParseException.class, () -> preProcessor.evalExpression("1.21 > legacy"));
+        // booleans
+        assertTrue(preProcessor.evalExpression("fabric"));
+        assertFalse(preProcessor.evalExpression("forge"));
+        assertTrue(preProcessor.evalExpression("fabric != forge"));
+        assertTrue(preProcessor.evalExpression("forge == false"));
+        assertThrows(ParseException.class, () -> preProcessor.evalExpression("fabric > forge"));
+        assertThrows(ParseException.class, () -> preProcessor.evalExpression("fabric == 1"));
+        // a var, whose value is its own name, is undefined
+        assertFalse(preProcessor.evalExpression("self"));
+        assertThrows(ParseException.class, () -> preProcessor.evalExpression("self == 1"));
+    }
+
+    @Test
+    void testErrors() {
+        assertEquals("Not a number, version or boolean: test = hello In line: 3 of file: Test.java",
+                assertThrows(ParseException.class, () -> preProcessor.evalExpression("test == 1", 3, "Test.java")).getMessage());
+        assertEquals("Undefined variable: abc In line: 4 of file: Test.java",
+                assertThrows(ParseException.class, () -> preProcessor.evalExpression("1 < abc", 4, "Test.java")).getMessage());
+        // the compiled condition is reused, but the error must still point to the current line
+        assertEquals("Undefined variable: abc In line: 7 of file: Test.java",
+                assertThrows(ParseException.class, () -> preProcessor.evalExpression("1 < abc", 7, "Test.java")).getMessage());
+        // short-circuiting never evaluates the invalid comparison
+        assertTrue(preProcessor.evalExpression("one || 1 < abc"));
+        assertFalse(preProcessor.evalExpression("zero && 1 < abc"));
+    }
+
+    @Test
+    void testSyntax() {
+        PreProcessor preProcessor = new PreProcessor(Map.of("loader", "fabric", "op", "a||b", "one", "1", "zero", "0"));
+        // quoted strings may contain operators and are compared by text
+        assertTrue(preProcessor.evalExpression("loader == \"fabric\""));
+        assertTrue(preProcessor.evalExpression("op == 'a||b' && loader != \"forge\""));
+        assertTrue(preProcessor.evalExpression("one == \"1\""));
+        assertThrows(ParseException.class, () -> preProcessor.evalExpression("loader > \"a\""));
+        assertThrows(ParseException.class, () -> preProcessor.evalExpression("\"fabric\""));
+        // operators need no whitespace, parentheses group
+        assertTrue(preProcessor.evalExpression("one>=1&&zero<1"));
+        assertFalse(preProcessor.evalExpression("(one || zero) && zero"));
+        assertTrue(preProcessor.evalExpression("one || (zero && zero)"));
+        // an empty condition is false, invalid ones fail with their line
+        assertFalse(preProcessor.evalExpression(""));
+        assertEquals("Invalid condition: one == (unexpected end) In line: 2 of file: Test.java",
+                assertThrows(ParseException.class, () -> preProcessor.evalExpression("one ==", 2, "Test.java")).getMessage());
+        assertThrows(ParseException.class, () -> preProcessor.evalExpression("(one || zero"));
+        assertThrows(ParseException.class, () -> preProcessor.evalExpression("one == 1 == 1"));
+        assertThrows(ParseException.class, () -> preProcessor.evalExpression("loader == 'fabric"));
+        assertThrows(ParseException.class, () -> preProcessor.evalExpression("one two"));
+    }
+}
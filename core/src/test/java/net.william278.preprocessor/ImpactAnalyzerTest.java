@@ -0,0 +1,92 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+
+package net.william278.preprocessor;
+
+import net.william278.preprocessor.util.ImpactAnalyzer;
+import net.william278.preprocessor.util.ParseCache;
+import net.william278.preprocessor.util.PreProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImpactAnalyzerTest {
+    private static final List<String> lines = List.of(
+            "a();",
+            "//#if mc >= 1.20",
+            "b();",
+            "c();",
+            "//#if fabric",
+            "d();",
+            "//#endif",
+            "//#else",
+            "//$$ e();",
+            "//#endif",
+            "f();");
+    private static final PreProcessor current = new PreProcessor(Map.of("mc", "1.19", "fabric", true));
+    private static final PreProcessor candidate = new PreProcessor(Map.of("mc", "1.20", "fabric", true));
+
+    @Test
+    void testCompare() {
+        ImpactAnalyzer analyzer = new ImpactAnalyzer(current, candidate, null);
+        List<ImpactAnalyzer.Block> blocks = analyzer.compare(current.parse(lines, "Test.java"));
+        assertEquals("[3-4 activated, 6-6 activated, 9-9 deactivated]", blocks.toString());
+        assertEquals(List.of(), new ImpactAnalyzer(current, current, null).compare(current.parse(lines, "Test.java")));
+
+        // the active lines are the ones, that the engine doesn't comment out
+        List<String> converted = current.convertSource(lines, "Test.java");
+        BitSet active = current.activeLines(current.parse(lines, "Test.java"));
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(active.get(i), !converted.get(i).startsWith("//"), converted.get(i));
+        }
+    }
+
+    @Test
+    void testAnalyzeFile(@TempDir Path tempDir) throws IOException {
+        Path file = Files.write(tempDir.resolve("Test.java"), lines);
+        Path plain = TestFiles.write(tempDir, "Plain.java", "a();\n");
+        Path broken = TestFiles.write(tempDir, "Broken.java", "//#if mc >= 1.20\n");
+        Path binary = TestFiles.write(tempDir, "image.png", new byte[]{0, 1, 2});
+        ParseCache cache = new ParseCache(ParseCache.DEFAULT_MAX_BYTES);
+        ImpactAnalyzer cached = new ImpactAnalyzer(current, candidate, cache);
+        assertEquals(3, cached.analyzeFile("src/Test.java", file.toFile()).size());
+        assertEquals(List.of(), cached.analyzeFile("src/Plain.java", plain.toFile()));
+        assertEquals(List.of(), cached.analyzeFile("src/Broken.java", broken.toFile()));
+        assertEquals(List.of(), cached.analyzeFile("src/image.png", binary.toFile()));
+        // files without any keyword are not parsed at all
+        assertEquals(2, cache.getStats().getMisses(ParseCache.Kind.SKELETON));
+        // a keyword crossing the chunks of the scanner
+        Path large = TestFiles.write(tempDir, "Large.java", "a".repeat(64 * 1024 - 3) + "\n//#if mc >= 1.20\nb();\n//#endif\n");
+        assertEquals("[3-3 activated]", cached.analyzeFile("src/Large.java", large.toFile()).toString());
+        assertEquals(5, cached.getAnalyzedFiles());
+        assertEquals(4, cached.getActivatedLines());
+        assertEquals(1, cached.getDeactivatedLines());
+        assertEquals(Set.of("src/Large.java", "src/Test.java"), cached.getImpacts().keySet());
+        assertEquals(1, cached.getErrors().size());
+        // nothing has been written
+        assertEquals(lines, Files.readAllLines(file));
+
+        String json = cached.toJson(Map.of("task", ":preprocessImpact"));
+        assertTrue(json.contains("\"affected\": 2"), json);
+        assertTrue(json.contains("{\"path\": \"src/Test.java\", \"blocks\": [{\"from\": 3, \"to\": 4, \"activated\": true}"), json);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+
+package net.william278.preprocessor;
+
+import net.william278.preprocessor.util.BinaryDetector;
+import net.william278.preprocessor.util.ImportManager;
+import net.william278.preprocessor.util.PreProcessor;
+import net.william278.preprocessor.util.ReMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImportManagerTest {
+    @Test
+    void testOrganizeImports(@TempDir Path tempDir) throws IOException {
+        List<String> lines = List.of(
+                "package a.b;",
+                "",
+                "import java.util.Map;",
+                "import java.util.List;",
+                "import java.util.*;",
+                "import static java.util.Objects.requireNonNull;",
+                "import static java.util.Objects.hash;",
+                "import java.util.List;",
+                "//#if mc >= 1.20",
+                "import x.New;",
+                "//#else",
+                "//$$ import x.Old;",
+                "//#endif",
+                "import y.Linked;",
+                "",
+                "/** see {@link Linked} */",
+                "class Test {",
+                "    List<String> list = \"Map\"; // Map",
+                "    int h = hash(1);",
+                "    //#if mc < 1.20",
+                "    //$$ New value;",
+                "    //#endif",
+                "}");
+        List<String> organized = ImportManager.organizeImports(lines);
+        assertEquals(lines.size(), organized.size());
+        assertEquals(List.of("import java.util.*;", "import java.util.List;", "import static java.util.Objects.hash;", "", "", ""), organized.subList(2, 8));
+        // imports between directives stay where they are, the import only used in disabled code is removed
+        assertEquals(List.of("//#if mc >= 1.20", "", "//#else", "//$$ import x.Old;", "//#endif", "import y.Linked;"), organized.subList(8, 14));
+        assertEquals(lines.subList(14, lines.size()), organized.subList(14, organized.size()));
+
+        List<String> clean = List.of("import java.util.List;", "class A { List<?> l; }");
+        assertSame(clean, ImportManager.organizeImports(clean));
+
+        // as a stage of the engine, after the branches are evaluated
+        PreProcessor engine = new PreProcessor(false, Map.of("mc", "1.19"), Map.of(), BinaryDetector.DEFAULT, true);
+        assertEquals(List.of("import x.Old;", "", "class A {", "//#if mc >= 1.20", "//$$ New a;", "//#else", "Old b;", "//#endif", "}"), engine.convertSource(List.of(
+                "import x.Old;", "import x.New;", "class A {", "//#if mc >= 1.20", "New a;", "//#else", "//$$ Old b;", "//#endif", "}"), "A.java"));
+
+        Path in = TestFiles.write(tempDir, "A.java", "import x.Old;\nimport x.New;\nclass A {\n//#if mc >= 1.20\nNew a;\n//#else\n//$$ Old b;\n//#endif\n}\n");
+        Path out = tempDir.resolve("out/A.java");
+        assertEquals(PreProcessor.FileResult.CONVERTED, engine.convertFile(new ReMapper(Map.of()), in.toFile(), out.toFile()));
+        assertEquals("import x.Old;\n\nclass A {\n//#if mc >= 1.20\n//$$ New a;\n//#else\nOld b;\n//#endif\n}\n", Files.readString(out));
+        // other files are left alone
+        assertEquals(List.of("import x.New;"), engine.convertSource(List.of("import x.New;"), "a.txt"));
+    }
+}
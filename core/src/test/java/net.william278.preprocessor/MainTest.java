@@ -0,0 +1,73 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+
+package net.william278.preprocessor;
+
+import net.william278.preprocessor.cli.Main;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MainTest {
+    @Test
+    void testRun(@TempDir Path tempDir) throws IOException {
+        TestFiles.write(tempDir, "src/a/Test.java", "//#if mc >= 1.20\n//$$ new Identifier();\n//#else\nold();\n//#endif\n");
+        TestFiles.write(tempDir, "src/Broken.java", "//#if mc >= 1.20\n");
+        Path vars = TestFiles.write(tempDir, "vars.properties", "# comment\nmc=1.19\n");
+        Path remap = TestFiles.write(tempDir, "remap.properties", "Identifier=ResourceLocation\n");
+        Path report = tempDir.resolve("report.json");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        int code = Main.run(new String[]{"--vars", vars.toString(), "--var", "mc=1.20", "--remap", remap.toString(), "--threads", "2",
+                "--report", report.toString(), tempDir.resolve("src").toString(), tempDir.resolve("out").toString()}, new PrintStream(out), new PrintStream(err));
+
+        // the broken file is reported, the others are preprocessed anyway
+        assertEquals(1, code);
+        assertTrue(err.toString().contains("Broken.java"), err.toString());
+        assertEquals("//#if mc >= 1.20\nnew ResourceLocation();\n//#else\n//$$ old();\n//#endif\n", TestFiles.read(tempDir, "out/a/Test.java"));
+        assertTrue(Files.readString(report).contains("\"threads\": 2"));
+
+        assertEquals(2, Main.run(new String[]{"--threads", "x", "in", "out"}, new PrintStream(out), new PrintStream(err)));
+        assertEquals(2, Main.run(new String[]{"--threads", "0", "in", "out"}, new PrintStream(out), new PrintStream(err)));
+        assertEquals(2, Main.run(new String[]{"--remap-tokens", "--remap-literal", "in", "out"}, new PrintStream(out), new PrintStream(err)));
+        assertTrue(err.toString().contains("can't be combined"), err.toString());
+        assertEquals(2, Main.run(new String[]{"in"}, new PrintStream(out), new PrintStream(err)));
+        assertEquals(0, Main.run(new String[]{"--help"}, new PrintStream(out), new PrintStream(err)));
+    }
+
+    @Test
+    void testFilter(@TempDir Path tempDir) throws IOException {
+        for (String file : List.of("A.java", "a/b/C.java", "a/b/c.json", "legacy/D.java", "gen/a/F.java")) {
+            TestFiles.write(tempDir, "src/" + file, "//#if mc >= 1.20\nnew();\n//#endif\n");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(0, Main.run(new String[]{"--var", "mc=1.20", "--exclude", "legacy/", "--exclude", "gen/", "--include", "**/*.java",
+                tempDir.resolve("src").toString(), tempDir.resolve("out").toString()}, new PrintStream(out), new PrintStream(err)), err.toString());
+        assertTrue(Files.isRegularFile(tempDir.resolve("out/a/b/C.java")));
+        assertFalse(Files.exists(tempDir.resolve("out/a/b/c.json")));
+        assertFalse(Files.exists(tempDir.resolve("out/legacy")));
+        assertFalse(Files.exists(tempDir.resolve("out/gen")));
+        assertEquals(2, Main.run(new String[]{"--include", "a/{b", "in", "out"}, new PrintStream(out), new PrintStream(err)));
+    }
+}
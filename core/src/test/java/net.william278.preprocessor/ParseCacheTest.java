@@ -0,0 +1,125 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+
+package net.william278.preprocessor;
+
+import net.william278.preprocessor.util.DirectiveSkeleton;
+import net.william278.preprocessor.util.ParseCache;
+import net.william278.preprocessor.util.PreProcessor;
+import net.william278.preprocessor.util.ReMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseCacheTest {
+    private static final Map<String, Object> vars = PreProcessorTest.vars;
+
+    @Test
+    void testEntries() throws IOException {
+        ParseCache cache = new ParseCache(ParseCache.DEFAULT_MAX_BYTES);
+        PreProcessor engine = cache.getPreProcessor(false, vars, Map.of(), Set.of(), Set.of(), StandardCharsets.UTF_8);
+        assertSame(engine, cache.getPreProcessor(false, new HashMap<>(vars), new HashMap<>(), Set.of(), Set.of(), StandardCharsets.UTF_8));
+        assertNotSame(engine, cache.getPreProcessor(true, vars, Map.of(), Set.of(), Set.of(), StandardCharsets.UTF_8));
+
+        // the order of the replacements matters
+        Map<String, String> remap = new LinkedHashMap<>();
+        remap.put("a", "b");
+        remap.put("b", "c");
+        ReMapper reMapper = cache.getReMapper(remap, true);
+        assertSame(reMapper, cache.getReMapper(new LinkedHashMap<>(remap), true));
+        Map<String, String> reversed = new LinkedHashMap<>();
+        reversed.put("b", "c");
+        reversed.put("a", "b");
+        assertNotSame(reMapper, cache.getReMapper(reversed, true));
+
+        // skeletons by content
+        byte[] content = "//#if one\n//$$ code\n//#endif\n".getBytes(StandardCharsets.UTF_8);
+        DirectiveSkeleton skeleton = cache.getSkeleton(engine, "Test.java", content);
+        assertSame(skeleton, cache.getSkeleton(engine, "Test.java", content.clone()));
+        assertEquals(List.of("//#if one", "code", "//#endif"), engine.convert(skeleton));
+        assertThrows(IOException.class, () -> cache.getSkeleton(engine, "Test.java", new byte[]{(byte) 0xC3}));
+
+        ParseCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHits(ParseCache.Kind.ENGINE));
+        assertEquals(2, stats.getMisses(ParseCache.Kind.ENGINE));
+        assertEquals(1, stats.getHits(ParseCache.Kind.SKELETON));
+        assertEquals(2, stats.getMisses(ParseCache.Kind.SKELETON));
+        assertEquals(5, stats.getEntries());
+
+        // the least recently used entries are evicted first
+        cache.getPreProcessor(false, vars, Map.of(), Set.of(), Set.of(), StandardCharsets.UTF_8);
+        cache.setMaxBytes(1);
+        assertEquals(5, cache.getStats().since(stats).getEvictions());
+        assertEquals(0, cache.getStats().getUsedBytes());
+        assertNotSame(engine, cache.getPreProcessor(false, vars, Map.of(), Set.of(), Set.of(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testConverters(@TempDir Path tempDir) throws IOException {
+        ParseCache cache = new ParseCache(ParseCache.DEFAULT_MAX_BYTES);
+        PreProcessor engine = cache.getPreProcessor(false, vars, Map.of(), Set.of(), Set.of(), StandardCharsets.UTF_8);
+        Path in = TestFiles.write(tempDir, "Test.java", "//#if one\nold();\n//#endif\n");
+        engine.convertFile(new ReMapper(Map.of("old", "new"), true), in.toFile(), tempDir.resolve("a.java").toFile());
+        cache.getPreProcessor(false, vars, Map.of(), Set.of(), Set.of(), StandardCharsets.UTF_8);
+        long usedBytes = cache.getStats().getUsedBytes();
+
+        // a recompiled ReMapper with the same content reuses the converters of the engine
+        engine.convertFile(new ReMapper(Map.of("old", "new"), true), in.toFile(), tempDir.resolve("b.java").toFile());
+        cache.getPreProcessor(false, vars, Map.of(), Set.of(), Set.of(), StandardCharsets.UTF_8);
+        assertEquals(usedBytes, cache.getStats().getUsedBytes());
+        assertEquals("//#if one\nnew();\n//#endif\n", TestFiles.read(tempDir, "b.java"));
+
+        // other content is weighed
+        engine.convertFile(new ReMapper(Map.of("old", "other"), true), in.toFile(), tempDir.resolve("c.java").toFile());
+        cache.getPreProcessor(false, vars, Map.of(), Set.of(), Set.of(), StandardCharsets.UTF_8);
+        assertTrue(cache.getStats().getUsedBytes() > usedBytes);
+    }
+
+    @Test
+    void testConvertFile(@TempDir Path tempDir) throws IOException {
+        ParseCache cache = new ParseCache(ParseCache.DEFAULT_MAX_BYTES);
+        PreProcessor engine = cache.getPreProcessor(false, vars, Map.of(), Set.of(), Set.of(), StandardCharsets.UTF_8);
+        ReMapper reMapper = new ReMapper(Map.of("old", "new"), true);
+        Path in = TestFiles.write(tempDir, "Test.java", "//#if one\n//$$ old();\n//#endif\n");
+        engine.convertFile(reMapper, in.toFile(), tempDir.resolve("streamed.java").toFile());
+
+        // the same content is only parsed once and converted just like it is streamed
+        assertEquals(PreProcessor.FileResult.CONVERTED, engine.convertFile(reMapper, in.toFile(), tempDir.resolve("a.java").toFile(), null, null, cache));
+        assertEquals(PreProcessor.FileResult.CONVERTED, engine.convertFile(reMapper, in.toFile(), tempDir.resolve("b.java").toFile(), null, null, cache));
+        assertEquals(PreProcessor.FileResult.UNCHANGED, engine.convertFile(reMapper, in.toFile(), tempDir.resolve("b.java").toFile(), null, null, cache));
+        assertEquals(1, cache.getStats().getMisses(ParseCache.Kind.SKELETON));
+        assertEquals(2, cache.getStats().getHits(ParseCache.Kind.SKELETON));
+        assertEquals(TestFiles.read(tempDir, "streamed.java"), TestFiles.read(tempDir, "a.java"));
+        assertEquals("//#if one\nnew();\n//#endif\n", TestFiles.read(tempDir, "b.java"));
+
+        // a budget of 0 disables the cache, nothing is inserted
+        ParseCache disabled = new ParseCache(0);
+        assertFalse(disabled.isEnabled());
+        assertNotSame(disabled.getPreProcessor(false, vars, Map.of(), Set.of(), Set.of(), StandardCharsets.UTF_8),
+                disabled.getPreProcessor(false, vars, Map.of(), Set.of(), Set.of(), StandardCharsets.UTF_8));
+        assertEquals(PreProcessor.FileResult.CONVERTED, engine.convertFile(reMapper, in.toFile(), tempDir.resolve("c.java").toFile(), null, null, disabled));
+        assertEquals("//#if one\nnew();\n//#endif\n", TestFiles.read(tempDir, "c.java"));
+        assertEquals(0, disabled.getStats().getEntries());
+        assertEquals(0, disabled.getStats().getEvictions());
+    }
+}
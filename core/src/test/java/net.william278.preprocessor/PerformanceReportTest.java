@@ -0,0 +1,68 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+
+package net.william278.preprocessor;
+
+import net.william278.preprocessor.util.PerformanceReport;
+import net.william278.preprocessor.util.PreProcessor;
+import net.william278.preprocessor.util.ReMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerformanceReportTest {
+    @Test
+    void testFiles(@TempDir Path tempDir) throws IOException {
+        ReMapper reMapper = new ReMapper(new HashMap<>());
+        PerformanceReport report = new PerformanceReport(1);
+        Path inFile = TestFiles.write(tempDir, "In.java", "//#if one\n//#elseif zero\n//#endif\n//#if one\n//#endif\n");
+        Path outFile = tempDir.resolve("Out.java");
+
+        PreProcessor.FileResult result = PreProcessorTest.preProcessor.convertFile(reMapper, inFile.toFile(), outFile.toFile(), report);
+        report.addFile("In.java", result, Files.size(inFile), Files.size(outFile), 1_000_000);
+        Files.writeString(inFile, "class In {}\n");
+        result = PreProcessorTest.preProcessor.convertFile(reMapper, inFile.toFile(), outFile.toFile(), report);
+        report.addFile("Other \"quoted\".java", result, Files.size(inFile), Files.size(outFile), 2_000_000);
+
+        // the elseif is not evaluated, as the if was true already
+        assertEquals(2, report.getDirectives());
+        assertEquals(1, report.getDistinctConditions());
+        assertEquals(1, report.getFiles(PreProcessor.FileResult.CONVERTED));
+        assertEquals(1, report.getFiles(PreProcessor.FileResult.PASSTHROUGH));
+
+        String json = report.toJson(Map.of("incremental", false), 5_000_000);
+        assertTrue(json.contains("\"incremental\": false,"), json);
+        assertTrue(json.contains("\"processed\": 2,"), json);
+        assertTrue(json.contains("\"wall\": 5.000"), json);
+        assertTrue(json.contains("\"slowestFiles\": [\n    {\"path\": \"Other \\\"quoted\\\".java\", \"bytes\": 12, \"millis\": 2.000}\n  ]"), json);
+        assertTrue(json.contains("\"largestFiles\": [\n    {\"path\": \"In.java\""), json);
+    }
+
+    @Test
+    void testShadowedFiles() {
+        PerformanceReport report = new PerformanceReport(0);
+        report.addShadowedFile("C.java", "version", List.of("platform"));
+        assertEquals(1, report.getShadowedFiles());
+        String json = report.toJson(Map.of(), 0);
+        assertTrue(json.contains("\"shadowed\": 1"), json);
+        assertTrue(json.contains("{\"path\": \"C.java\", \"source\": \"version\", \"shadowed\": [\"platform\"]}"), json);
+    }
+}
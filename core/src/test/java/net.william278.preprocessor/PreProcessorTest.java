@@ -12,13 +12,29 @@
 
 package net.william278.preprocessor;
 
+import net.william278.preprocessor.data.Keywords;
+import net.william278.preprocessor.util.BinaryDetector;
+import net.william278.preprocessor.util.DirectiveSkeleton;
 import net.william278.preprocessor.util.ParseException;
 import net.william278.preprocessor.util.PreProcessor;
+import net.william278.preprocessor.util.ReMapper;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -26,7 +42,7 @@ import static org.junit.jupiter.api.Assertions.*;
  * A simple unit test for the 'org.example.greeting' plugin.
  */
 class PreProcessorTest {
-    private static final Map<String, Object> vars = new HashMap<String, Object>() {
+    static final Map<String, Object> vars = new HashMap<String, Object>() {
         {
             put("zero", "0");
             put("one", "1");
@@ -35,7 +51,7 @@ class PreProcessorTest {
         }
     };
 
-    private static final PreProcessor preProcessor = new PreProcessor(vars);
+    static final PreProcessor preProcessor = new PreProcessor(vars);
 
     @Test
     void testEvalExpression() {
@@ -759,6 +775,182 @@ class PreProcessorTest {
         }));
     }
 
+    @Test
+    void testConvertStream() throws IOException {
+        String source = "//#if zero\r\ncode\n//#else\n//$$ code\n//#endif";
+        StringWriter writer = new StringWriter();
+        preProcessor.convert(new StringReader(source), writer, "Test.java", new ReMapper(new HashMap<String, String>() {
+            {
+                put("code", "mapped");
+            }
+        }));
+        assertEquals("//#if zero\n//$$ mapped\n//#else\nmapped\n//#endif\n", writer.toString());
+    }
+
+    @Test
+    void testConvertFileInPlace(@TempDir Path tempDir) throws IOException {
+        Path file = TestFiles.write(tempDir, "Test.java", "//#if one\n//$$ code\n//#endif\n");
+        preProcessor.convertFile(new ReMapper(new HashMap<>()), file.toFile(), file.toFile());
+        assertEquals("//#if one\ncode\n//#endif\n", Files.readString(file));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+
+        // already applied, so the file is left untouched
+        FileTime modified = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(file, modified);
+        assertEquals(PreProcessor.FileResult.UNCHANGED, preProcessor.convertFile(new ReMapper(new HashMap<>()), file.toFile(), file.toFile()));
+        assertEquals(modified, Files.getLastModifiedTime(file));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testConvertFilePassthrough(@TempDir Path tempDir) throws IOException {
+        ReMapper reMapper = new ReMapper(new HashMap<String, String>() {
+            {
+                put("KEY", "value");
+            }
+        });
+        Path inFile = tempDir.resolve("In.java");
+        Path outFile = tempDir.resolve("out/Out.java");
+
+        Files.writeString(inFile, "class In {\n    // no directives\n}\n");
+        assertEquals(PreProcessor.FileResult.PASSTHROUGH, preProcessor.convertFile(reMapper, inFile.toFile(), outFile.toFile()));
+        assertEquals(Files.readString(inFile), Files.readString(outFile));
+
+        // directives, remap keys and line endings that would be normalized need the actual conversion
+        Files.writeString(inFile, "//#if one\n//#endif\n");
+        assertEquals(PreProcessor.FileResult.CONVERTED, preProcessor.convertFile(reMapper, inFile.toFile(), outFile.toFile()));
+        Files.writeString(inFile, "class KEY {}\n");
+        assertEquals(PreProcessor.FileResult.CONVERTED, preProcessor.convertFile(reMapper, inFile.toFile(), outFile.toFile()));
+        assertEquals("class value {}\n", Files.readString(outFile));
+        Files.writeString(inFile, "class In {}\r\n");
+        assertEquals(PreProcessor.FileResult.CONVERTED, preProcessor.convertFile(reMapper, inFile.toFile(), outFile.toFile()));
+        Files.writeString(inFile, "class In {}");
+        // converted to the same content as before, so the output is not written again
+        assertEquals(PreProcessor.FileResult.UNCHANGED, preProcessor.convertFile(reMapper, inFile.toFile(), outFile.toFile()));
+        assertEquals("class In {}\n", Files.readString(outFile));
+
+        // a remap key across the boundary of two read chunks
+        Files.writeString(inFile, "a".repeat(64 * 1024 - 1) + "KEY\n");
+        assertEquals(PreProcessor.FileResult.CONVERTED, preProcessor.convertFile(reMapper, inFile.toFile(), outFile.toFile()));
+
+        // regular expressions can't be searched for in raw bytes
+        Files.writeString(inFile, "class In {}\n");
+        assertEquals(PreProcessor.FileResult.CONVERTED, preProcessor.convertFile(new ReMapper(Map.of("K.Y", "value")), inFile.toFile(), outFile.toFile()));
+    }
+
+    @Test
+    void testConvertFileBinary(@TempDir Path tempDir) throws IOException {
+        ReMapper reMapper = new ReMapper(new HashMap<>());
+        Path outFile = tempDir.resolve("out/file");
+
+        // by extension, even if it looks like text
+        Path png = TestFiles.write(tempDir, "image.png", "//#if one\n");
+        assertEquals(PreProcessor.FileResult.COPIED, preProcessor.convertFile(reMapper, png.toFile(), outFile.toFile()));
+        assertEquals("//#if one\n", Files.readString(outFile));
+
+        // by probing
+        Path nul = TestFiles.write(tempDir, "data.unknown", new byte[]{'/', '/', '#', 'i', 'f', 0, '\n'});
+        assertEquals(PreProcessor.FileResult.COPIED, preProcessor.convertFile(reMapper, nul.toFile(), outFile.toFile()));
+        Path invalid = TestFiles.write(tempDir, "data.unknown", new byte[]{'/', '/', '#', 'i', 'f', (byte) 0xC3, '\n'});
+        assertEquals(PreProcessor.FileResult.COPIED, preProcessor.convertFile(reMapper, invalid.toFile(), outFile.toFile()));
+        assertArrayEquals(Files.readAllBytes(invalid), Files.readAllBytes(outFile));
+
+        // the same bytes are text in another charset
+        PreProcessor latin1 = new PreProcessor(false, vars, new HashMap<>(), new BinaryDetector(Set.of(), Set.of(), StandardCharsets.ISO_8859_1));
+        Files.write(invalid, new byte[]{'/', '/', '#', 'i', 'f', ' ', 'o', 'n', 'e', '\n', '/', '/', '$', '$', ' ', (byte) 0xC3, '\n', '/', '/', '#', 'e', 'n', 'd', 'i', 'f', '\n'});
+        assertEquals(PreProcessor.FileResult.CONVERTED, latin1.convertFile(reMapper, invalid.toFile(), outFile.toFile()));
+        assertArrayEquals(new byte[]{'/', '/', '#', 'i', 'f', ' ', 'o', 'n', 'e', '\n', (byte) 0xC3, '\n', '/', '/', '#', 'e', 'n', 'd', 'i', 'f', '\n'}, Files.readAllBytes(outFile));
+    }
+
+    @Test
+    void testConvertFileMatchesStringEngine(@TempDir Path tempDir) throws IOException {
+        // UTF-8 files are converted on raw bytes, which must produce the very same output as converting them line by line as strings
+        String[] conditions = {"one", "zero", "two > one", "zero || one", "invalid"};
+        String[] words = {"code", "ResourceLocation", "Location", "\u00e4", "\ud83d\ude00", "\t", "$$", "//$$", "//#", "net.minecraft"};
+        String[] lineBreaks = {"\n", "\r\n", "\r"};
+        Path inFile = tempDir.resolve("In.java");
+        Path outFile = tempDir.resolve("Out.java");
+        Random random = new Random(278);
+
+        for (int n = 0; n < 2000; n++) {
+            PreProcessor preProcessor = new PreProcessor(random.nextBoolean(), vars, new HashMap<>());
+            ReMapper reMapper = new ReMapper(random.nextBoolean() ? ReMapperTest.remap : Map.of(), random.nextBoolean());
+
+            StringBuilder source = new StringBuilder();
+            int depth = 0;
+            for (int i = random.nextInt(30); i > 0; i--) {
+                source.append(" ".repeat(random.nextInt(6)));
+                int kind = random.nextInt(10);
+                if (kind == 0) {
+                    source.append("//#if ").append(conditions[random.nextInt(conditions.length)]);
+                    depth++;
+                } else if (kind == 1 && depth > 0) {
+                    source.append(random.nextBoolean() ? "//#else" : "//#elseif " + conditions[random.nextInt(conditions.length)]);
+                } else if (kind == 2 && depth > 0) {
+                    source.append("//#endif");
+                    depth--;
+                } else {
+                    for (int j = random.nextInt(5); j > 0; j--) {
+                        source.append(words[random.nextInt(words.length)]).append(random.nextBoolean() ? " " : "");
+                    }
+                }
+                // trailing whitespace counts as indentation
+                source.append(" ".repeat(random.nextInt(4) == 0 ? random.nextInt(12) : 0));
+                if (i > 1 || random.nextBoolean()) {
+                    source.append(lineBreaks[random.nextInt(lineBreaks.length)]);
+                }
+            }
+            while (depth-- > 0 && random.nextInt(8) != 0) {
+                source.append("\n//#endif");
+            }
+
+            String expected;
+            try {
+                StringWriter writer = new StringWriter();
+                preProcessor.convert(new StringReader(source.toString()), writer, "In.java", reMapper);
+                expected = writer.toString();
+            } catch (ParseException e) {
+                expected = e.getMessage();
+            }
+            if (StandardCharsets.UTF_8.newEncoder().canEncode(expected)) {
+                Files.writeString(inFile, source);
+                Files.deleteIfExists(outFile);
+                String actual;
+                try {
+                    assertNotEquals(PreProcessor.FileResult.COPIED, preProcessor.convertFile(reMapper, inFile.toFile(), outFile.toFile()), source.toString());
+                    actual = Files.readString(outFile);
+                } catch (ParseException e) {
+                    actual = e.getMessage();
+                }
+                assertEquals(expected, actual, source.toString());
+            }
+        }
+    }
+
+    @Test
+    void testConvertSkeleton() {
+        List<String> lines = List.of("//#if one", "//$$ one", "//#elseif two >= 2", "two", "//#else", "//#eval zero", "//$$ else", "//#endif", "code");
+        DirectiveSkeleton skeleton = preProcessor.parse(lines, "Test.java");
+        assertEquals(9, skeleton.getLineCount());
+        assertEquals(2, skeleton.getConditionCount());
+
+        // one skeleton gives the same result as parsing the file again for every var set
+        for (String one : List.of("0", "1")) {
+            for (String two : List.of("1", "2")) {
+                PreProcessor variant = new PreProcessor(true, Map.of("one", one, "two", two, "zero", "0"));
+                assertEquals(variant.convertSource(lines, "Test.java"), variant.convert(skeleton), one + " " + two);
+            }
+        }
+
+        // other keywords classify other lines as directives
+        PreProcessor hashes = new PreProcessor(vars, Map.of("java", new Keywords("#if", "#elseif", "#else", "#endif", "#$$")));
+        assertThrows(IllegalArgumentException.class, () -> hashes.convert(skeleton));
+    }
+
     @Test
     void testRemoveComments() {
         PreProcessor preProcessor = new PreProcessor(true, vars);
@@ -0,0 +1,199 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor;
+
+import net.william278.preprocessor.util.ReMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReMapperTest {
+    static final Map<String, String> remap = new LinkedHashMap<String, String>() {
+        {
+            put("net.minecraft.world", "net.minecraft.level");
+            put("ResourceLocation", "Identifier");
+            put("Location", "Loc");
+        }
+    };
+
+    @Test
+    void testRegex() {
+        ReMapper reMapper = new ReMapper(new LinkedHashMap<String, String>() {
+            {
+                put("a(\\d)", "b$1");
+                put("b1", "c");
+            }
+        });
+        // rules are applied one after another
+        assertEquals("c b2", reMapper.convertLine("a1 a2"));
+        String line = "nothing to see";
+        assertSame(line, reMapper.convertLine(line));
+    }
+
+    @Test
+    void testLiteral() {
+        ReMapper reMapper = new ReMapper(remap, true);
+        assertEquals("import net.minecraft.level.Identifier;", reMapper.convertLine("import net.minecraft.world.ResourceLocation;"));
+        // the earlier key wins on overlapping matches
+        assertEquals("Identifier Loc", reMapper.convertLine("ResourceLocation Location"));
+        // regex chars are plain chars in literal mode
+        assertEquals("a.b", new ReMapper(Map.of("a+b", "a.b"), true).convertLine("a+b"));
+        String line = "nothing to see";
+        assertSame(line, reMapper.convertLine(line));
+    }
+
+    @Test
+    void testLiteralMatchesSequentialReplace() {
+        // as long as replacements don't contain keys, literal mode equals applying String#replace in order
+        String[] keys = {"ab", "b", "abc", "ca", "bcb", "ä", "äb"};
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], "<" + i + ">");
+        }
+        ReMapper reMapper = new ReMapper(map, true);
+
+        Random random = new Random(278);
+        String alphabet = "abcä ";
+        for (int n = 0; n < 10000; n++) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String line = builder.toString();
+
+            String expected = line;
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                expected = expected.replace(entry.getKey(), entry.getValue());
+            }
+            assertEquals(expected, reMapper.convertLine(line), line);
+        }
+    }
+
+    @Test
+    void testTokens() {
+        ReMapper reMapper = new ReMapper(remap, ReMapper.Mode.TOKENS);
+        // qualified names are replaced from their first segment on, the rest of the name is looked up per identifier
+        assertEquals("import net.minecraft.level.Identifier;", reMapper.convertLine("import net.minecraft.world.ResourceLocation;"));
+        assertEquals("import net.minecraft.worlds.Identifier;", reMapper.convertLine("import net.minecraft.worlds.ResourceLocation;"));
+        // only whole names, never inside literals or comments
+        assertEquals("Identifier Loc MyLocation = \"Location\"; // Location", reMapper.convertLine("ResourceLocation Location MyLocation = \"Location\"; // Location"));
+        assertEquals("char c = '\\''; Loc l = 1L + 0x1Location;", reMapper.convertLine("char c = '\\''; Location l = 1L + 0x1Location;"));
+        String line = "nothing to see, not even Locations";
+        assertSame(line, reMapper.convertLine(line));
+
+        assertThrows(IllegalArgumentException.class, () -> new ReMapper(Map.of("a+b", "c"), ReMapper.Mode.TOKENS));
+    }
+
+    @Test
+    void testTokensAcrossLines() {
+        ReMapper reMapper = new ReMapper(remap, ReMapper.Mode.TOKENS);
+        ReMapper.FileMapper java = reMapper.forFile("Test.java", "//$$");
+        assertEquals("/* Location", java.convertLine("/* Location"));
+        assertEquals("   Location */ Loc", java.convertLine("   Location */ Location"));
+        assertEquals("String s = \"\"\"", java.convertLine("String s = \"\"\""));
+        assertEquals("    Location", java.convertLine("    Location"));
+        assertEquals("    \"\"\"; Loc", java.convertLine("    \"\"\"; Location"));
+        // disabled code is code, without changing the state of the lines around it
+        assertEquals("    //$$ Loc l; /*", java.convertLine("    //$$ Location l; /*"));
+        assertEquals("Loc", java.convertLine("Location"));
+
+        // Kotlin block comments nest
+        ReMapper.FileMapper kotlin = reMapper.forFile("Test.kt", "//$$");
+        assertEquals("/* /* */ Location */ Loc", kotlin.convertLine("/* /* */ Location */ Location"));
+        ReMapper.FileMapper java2 = reMapper.forFile("Test.java", "//$$");
+        assertEquals("/* /* */ Loc */ Loc", java2.convertLine("/* /* */ Location */ Location"));
+
+        // other files are only split into names
+        assertEquals("{\"class\": \"net.minecraft.level.Identifier\"}", reMapper.forFile("mixins.json", null).convertLine("{\"class\": \"net.minecraft.world.ResourceLocation\"}"));
+    }
+
+    @Test
+    void testTokensMatchWordBoundaryRegex() {
+        // for code without literals and comments, token mode equals word bounded regular expressions
+        String[] keys = {"a", "ab", "b.c", "a.b.c", "c"};
+        Map<String, String> tokens = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            tokens.put(keys[i], "r" + i);
+        }
+        ReMapper reMapper = new ReMapper(tokens, ReMapper.Mode.TOKENS);
+
+        Random random = new Random(278);
+        String alphabet = "abc. (";
+        for (int n = 0; n < 10000; n++) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String line = builder.toString();
+            assertEquals(expectedTokens(line, keys), reMapper.convertLine(line), line);
+        }
+    }
+
+    /**
+     * Straightforward reference: splits the line into names and tries the longest dotted prefix, then every identifier
+     */
+    private static String expectedTokens(String line, String[] keys) {
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (!Character.isJavaIdentifierStart(c)) {
+                result.append(c);
+                i++;
+                continue;
+            }
+            List<String> segments = new ArrayList<>();
+            while (true) {
+                int segmentStart = i;
+                while (i < line.length() && Character.isJavaIdentifierPart(line.charAt(i))) {
+                    i++;
+                }
+                segments.add(line.substring(segmentStart, i));
+                if (i + 1 < line.length() && line.charAt(i) == '.' && Character.isJavaIdentifierStart(line.charAt(i + 1))) {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            int first = 0;
+            for (int last = segments.size() - 1; last > 0 && first == 0; last--) {
+                String name = String.join(".", segments.subList(0, last + 1));
+                for (int k = 0; k < keys.length; k++) {
+                    if (keys[k].equals(name)) {
+                        result.append("r").append(k);
+                        first = last + 1;
+                    }
+                }
+            }
+            for (int s = first; s < segments.size(); s++) {
+                if (s > 0) {
+                    result.append('.');
+                }
+                String replacement = segments.get(s);
+                for (int k = 0; k < keys.length; k++) {
+                    if (keys[k].equals(segments.get(s))) {
+                        replacement = "r" + k;
+                    }
+                }
+                result.append(replacement);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+
+package net.william278.preprocessor;
+
+import net.william278.preprocessor.util.PreProcessor;
+import net.william278.preprocessor.util.ReMapper;
+import net.william278.preprocessor.util.SkeletonIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SkeletonIndexTest {
+    @Test
+    void testUpToDate(@TempDir Path tempDir) throws IOException {
+        ReMapper reMapper = new ReMapper(new HashMap<>());
+        Path inFile = TestFiles.write(tempDir, "Test.java", "//#if one\n//$$ one\n//#elseif two\n//$$ two\n//#else\nelse\n//#endif\n");
+        Path outFile = tempDir.resolve("out/Test.java");
+        Path indexFile = tempDir.resolve("skeletons.idx");
+
+        PreProcessor first = new PreProcessor(Map.of("one", "1", "two", "1"));
+        SkeletonIndex index = SkeletonIndex.create(1);
+        SkeletonIndex.Recorder recorder = new SkeletonIndex.Recorder();
+        first.convertFile(reMapper, inFile.toFile(), outFile.toFile(), null, recorder);
+        index.put("Test.java", inFile.toFile(), outFile.toFile(), recorder, first);
+        index.write(indexFile);
+
+        assertEquals(0, SkeletonIndex.load(indexFile, 2).size());
+        index = SkeletonIndex.load(indexFile, 1);
+        assertEquals(1, index.size());
+        assertTrue(index.isUpToDate("Test.java", inFile.toFile(), outFile.toFile(), first));
+        // the elseif is not evaluated, as long as the if is true
+        assertTrue(index.isUpToDate("Test.java", inFile.toFile(), outFile.toFile(), new PreProcessor(Map.of("one", "2", "two", "0"))));
+        assertFalse(index.isUpToDate("Test.java", inFile.toFile(), outFile.toFile(), new PreProcessor(Map.of("one", "0", "two", "1"))));
+        assertFalse(index.isUpToDate("Test.java", inFile.toFile(), outFile.toFile(), new PreProcessor(Map.of("two", "1"))));
+
+        // changed sources and outputs are always converted again
+        Files.writeString(outFile, "changed\n");
+        assertFalse(index.isUpToDate("Test.java", inFile.toFile(), outFile.toFile(), first));
+        first.convertFile(reMapper, inFile.toFile(), outFile.toFile(), null, recorder = new SkeletonIndex.Recorder());
+        index.put("Test.java", inFile.toFile(), outFile.toFile(), recorder, first);
+        assertTrue(index.isUpToDate("Test.java", inFile.toFile(), outFile.toFile(), first));
+        Files.writeString(inFile, "//#if two\n//$$ one\n//#elseif one\n//$$ two\n//#else\nelse\n//#endif\n");
+        assertFalse(index.isUpToDate("Test.java", inFile.toFile(), outFile.toFile(), first));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+
+package net.william278.preprocessor;
+
+import net.william278.preprocessor.util.SourceFilter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceFilterTest {
+    @Test
+    void testWalk(@TempDir Path tempDir) throws IOException {
+        for (String file : List.of("A.java", "a/B.java", "a/b/C.java", "a/b/c.json", "legacy/D.java", "legacy/x/E.java", "gen/a/F.java")) {
+            TestFiles.write(tempDir, "src/" + file, "//#if mc >= 1.20\nnew();\n//#endif\n");
+        }
+
+        SourceFilter filter = SourceFilter.of(List.of("**/*.java"), List.of("legacy/", "**/gen/**", "a/b/C.java"));
+        // '**/' also matches no folder at all
+        assertTrue(filter.includes(Path.of("A.java")));
+        assertTrue(filter.includes(Path.of("a/B.java")));
+        assertFalse(filter.includes(Path.of("a/b/c.json")));
+        assertFalse(filter.includes(Path.of("a/b/C.java")));
+        assertFalse(filter.includes(Path.of("legacy/x/E.java")));
+        assertTrue(filter.excludesFolder(Path.of("legacy")));
+        assertTrue(filter.excludesFolder(Path.of("gen")));
+        assertFalse(filter.excludesFolder(Path.of("a")));
+        assertSame(SourceFilter.ALL, SourceFilter.of(List.of(), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> SourceFilter.of(List.of("a/[b"), List.of()));
+
+        for (int parallelism : new int[]{1, 4}) {
+            assertEquals(List.of("A.java", "a/B.java"), TestFiles.sorted(filter.walk(tempDir.resolve("src"), parallelism)));
+        }
+        assertEquals(7, SourceFilter.ALL.walk(tempDir.resolve("src"), 2).size());
+        // like with Gradle, a folder matched by a plain exclude is excluded with its content
+        SourceFilter folders = SourceFilter.of(List.of(), List.of("legacy", "**/b"));
+        assertTrue(folders.excludesFolder(Path.of("a/b")));
+        assertFalse(folders.includes(Path.of("legacy/x/E.java")));
+        assertEquals(List.of("A.java", "a/B.java", "gen/a/F.java"), TestFiles.sorted(folders.walk(tempDir.resolve("src"), 2)));
+        assertEquals(List.of(), filter.walk(tempDir.resolve("missing"), 2));
+    }
+
+    @Test
+    void testResolve(@TempDir Path tempDir) throws IOException {
+        List<Path> roots = new ArrayList<>();
+        for (String root : List.of("version", "platform", "common")) {
+            roots.add(Files.createDirectories(tempDir.resolve(root)));
+        }
+        for (String file : List.of("common/a/A.java", "common/a/B.java", "platform/a/B.java", "version/a/B.java", "version/C.java", "platform/C.java", "common/D.java")) {
+            TestFiles.write(tempDir, file, file);
+        }
+
+        Map<String, List<Path>> resolved = SourceFilter.ALL.resolve(roots, 4);
+        String a = Path.of("a", "A.java").toString();
+        String b = Path.of("a", "B.java").toString();
+        assertEquals(List.of("C.java", "D.java", a, b), new ArrayList<>(resolved.keySet()));
+        assertEquals(List.of(roots.get(0), roots.get(1), roots.get(2)), resolved.get(b));
+        assertEquals(List.of(roots.get(0), roots.get(1)), resolved.get("C.java"));
+        assertEquals(List.of(roots.get(2)), resolved.get(a));
+    }
+}
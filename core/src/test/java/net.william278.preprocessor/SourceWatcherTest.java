@@ -0,0 +1,108 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+
+package net.william278.preprocessor;
+
+import net.william278.preprocessor.util.PreProcessor;
+import net.william278.preprocessor.util.ReMapper;
+import net.william278.preprocessor.util.SourceWatcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceWatcherTest {
+    @Test
+    void testWatch(@TempDir Path tempDir) throws IOException, InterruptedException {
+        Path sourceDir = Files.createDirectories(tempDir.resolve("src"));
+        Path targetDir = tempDir.resolve("out");
+        List<Path> converted = new ArrayList<>();
+        List<Path> deleted = new ArrayList<>();
+        try (SourceWatcher watcher = new SourceWatcher(50, 1, new SourceWatcher.Listener() {
+            @Override
+            public void converted(Path outFile, PreProcessor.FileResult result, long nanos) {
+                converted.add(outFile);
+            }
+
+            @Override
+            public void deleted(Path outFile) {
+                deleted.add(outFile);
+            }
+
+            @Override
+            public void failed(Path inFile, RuntimeException error) {
+                fail(error);
+            }
+        })) {
+            watcher.watch(List.of(sourceDir), targetDir, new PreProcessor(PreProcessorTest.vars), new ReMapper(new HashMap<>()));
+
+            TestFiles.write(sourceDir, "Test.java", "//#if one\n//$$ code\n//#endif\n");
+            assertEquals(1, watcher.awaitBatch(30_000));
+            assertEquals("//#if one\ncode\n//#endif\n", TestFiles.read(targetDir, "Test.java"));
+
+            // files in new folders
+            TestFiles.write(sourceDir, "a/b/Other.java", "class Other {}\n");
+            while (!Files.exists(targetDir.resolve("a/b/Other.java"))) {
+                assertNotEquals(0, watcher.awaitBatch(30_000));
+            }
+            assertTrue(converted.contains(targetDir.toAbsolutePath().normalize().resolve("a/b/Other.java")));
+
+            Files.delete(sourceDir.resolve("Test.java"));
+            assertEquals(1, watcher.awaitBatch(30_000));
+            assertFalse(Files.exists(targetDir.resolve("Test.java")));
+            assertEquals(List.of(targetDir.toAbsolutePath().normalize().resolve("Test.java")), deleted);
+        }
+    }
+
+    @Test
+    void testMissingSourceFolder(@TempDir Path tempDir) throws IOException, InterruptedException {
+        Path sourceDir = tempDir.resolve("src");
+        Path targetDir = tempDir.resolve("out");
+        try (SourceWatcher watcher = new SourceWatcher(50, 1, new SourceWatcher.Listener() {
+            @Override
+            public void converted(Path outFile, PreProcessor.FileResult result, long nanos) {
+            }
+
+            @Override
+            public void deleted(Path outFile) {
+            }
+
+            @Override
+            public void failed(Path inFile, RuntimeException error) {
+                fail(error);
+            }
+        })) {
+            watcher.watch(List.of(sourceDir), targetDir, new PreProcessor(PreProcessorTest.vars), new ReMapper(new HashMap<>()));
+            assertEquals(0, watcher.awaitBatch(100));
+
+            // the folder is watched once it has been created, with the files created in it so far
+            TestFiles.write(sourceDir, "a/Test.java", "//#if one\n//$$ code\n//#endif\n");
+            while (!Files.exists(targetDir.resolve("a/Test.java"))) {
+                assertNotEquals(0, watcher.awaitBatch(30_000));
+            }
+            assertEquals("//#if one\ncode\n//#endif\n", TestFiles.read(targetDir, "a/Test.java"));
+
+            TestFiles.write(sourceDir, "a/Test.java", "//#if one\n//$$ other\n//#endif\n");
+            while (!TestFiles.read(targetDir, "a/Test.java").contains("other")) {
+                assertNotEquals(0, watcher.awaitBatch(30_000));
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The file setup shared by the tests, that work on a temporary folder
+ */
+final class TestFiles {
+    private TestFiles() {
+    }
+
+    /**
+     * @param dir     the temporary folder
+     * @param relPath the path of the file within the folder, with '/' as separator
+     * @param content the text to write as UTF-8
+     * @return the written file, its folders are created as needed
+     */
+    static @NotNull Path write(@NotNull Path dir, @NotNull String relPath, @NotNull String content) throws IOException {
+        Path path = dir.resolve(relPath);
+        Files.createDirectories(path.getParent());
+        return Files.writeString(path, content);
+    }
+
+    /**
+     * @param dir     the temporary folder
+     * @param relPath the path of the file within the folder, with '/' as separator
+     * @param content the bytes to write
+     * @return the written file, its folders are created as needed
+     */
+    static @NotNull Path write(@NotNull Path dir, @NotNull String relPath, byte @NotNull [] content) throws IOException {
+        Path path = dir.resolve(relPath);
+        Files.createDirectories(path.getParent());
+        return Files.write(path, content);
+    }
+
+    /**
+     * @param dir     the temporary folder
+     * @param relPath the path of the file within the folder, with '/' as separator
+     * @return the content of the file as UTF-8
+     */
+    static @NotNull String read(@NotNull Path dir, @NotNull String relPath) throws IOException {
+        return Files.readString(dir.resolve(relPath));
+    }
+
+    /**
+     * @param relPaths relative paths, e.g. the result of a walk
+     * @return the paths with '/' as separator, sorted
+     */
+    static @NotNull List<String> sorted(@NotNull Collection<Path> relPaths) {
+        List<String> paths = new ArrayList<>();
+        for (Path relPath : relPaths) {
+            paths.add(relPath.toString().replace(File.separatorChar, '/'));
+        }
+        paths.sort(null);
+        return paths;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+
+package net.william278.preprocessor;
+
+import net.william278.preprocessor.util.BinaryDetector;
+import net.william278.preprocessor.util.PreProcessor;
+import net.william278.preprocessor.util.ReMapper;
+import net.william278.preprocessor.util.VariantConverter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VariantConverterTest {
+    @Test
+    void testConvertFile(@TempDir Path tempDir) throws IOException {
+        Map<String, PreProcessor> engines = new LinkedHashMap<>();
+        engines.put("a", new PreProcessor(Map.of("one", "1")));
+        engines.put("b", new PreProcessor(Map.of("one", "0")));
+        engines.put("c", new PreProcessor(Map.of("one", "2")));
+        VariantConverter converter = new VariantConverter(engines, new ReMapper(Map.of("code", "mapped")), StandardCharsets.UTF_8);
+        Map<String, File> outFiles = new LinkedHashMap<>();
+        for (String variant : engines.keySet()) {
+            outFiles.put(variant, tempDir.resolve(variant).resolve("Test.java").toFile());
+        }
+
+        Path inFile = TestFiles.write(tempDir, "Test.java", "//#if one\n//$$ code\n//#endif\n");
+        assertEquals(PreProcessor.FileResult.CONVERTED, converter.convertFile(inFile.toFile(), outFiles));
+        assertEquals("//#if one\nmapped\n//#endif\n", Files.readString(outFiles.get("a").toPath()));
+        assertEquals("//#if one\n//$$ mapped\n//#endif\n", Files.readString(outFiles.get("b").toPath()));
+        // c is the same as a
+        assertEquals("//#if one\nmapped\n//#endif\n", Files.readString(outFiles.get("c").toPath()));
+        assertEquals(1, converter.getLinkedFiles());
+
+        // without directives every variant is the same
+        Files.writeString(inFile, "class Test {}\n");
+        assertEquals(PreProcessor.FileResult.PASSTHROUGH, converter.convertFile(inFile.toFile(), outFiles));
+        for (File outFile : outFiles.values()) {
+            assertEquals("class Test {}\n", Files.readString(outFile.toPath()));
+        }
+        assertEquals(3, converter.getLinkedFiles());
+    }
+
+    @Test
+    void testConvertFileMatchesEngine(@TempDir Path tempDir) throws IOException {
+        // the import is only used after remapping, so it must be remapped before the imports are organized
+        PreProcessor engine = new PreProcessor(false, Map.of("mc", "1.20"), Map.of(), BinaryDetector.DEFAULT, true);
+        ReMapper reMapper = new ReMapper(Map.of("Old", "New"));
+        VariantConverter converter = new VariantConverter(Map.of("a", engine), reMapper, StandardCharsets.UTF_8);
+
+        Path inFile = TestFiles.write(tempDir, "A.java", "import x.New;\nclass A {\n//#if mc >= 1.20\n//$$ Old a;\n//#endif\n}\n");
+        Path engineOut = tempDir.resolve("engine/A.java");
+        Path variantOut = tempDir.resolve("variant/A.java");
+        assertEquals(PreProcessor.FileResult.CONVERTED, engine.convertFile(reMapper, inFile.toFile(), engineOut.toFile()));
+        assertEquals(PreProcessor.FileResult.CONVERTED, converter.convertFile(inFile.toFile(), Map.of("a", variantOut.toFile())));
+        assertEquals("import x.New;\nclass A {\n//#if mc >= 1.20\nNew a;\n//#endif\n}\n", Files.readString(engineOut));
+        assertEquals(Files.readString(engineOut), Files.readString(variantOut));
+    }
+}
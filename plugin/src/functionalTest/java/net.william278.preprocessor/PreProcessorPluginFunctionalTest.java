@@ -193,6 +193,154 @@ class PreProcessorPluginFunctionalTest {
                         "}\n", new String(Files.readAllBytes(getTestJsonFile().toPath())));
     }
 
+    @Test
+    void testIncrementalPreProcess() throws IOException {
+        File otherJavaFile = new File(projectDir, "src/main/java/test/Other.java");
+        writeString(getTestJavaFile(),
+                "package test;\n" +
+                        "class Test {\n" +
+                        "//#if a\n" +
+                        "//$$ int a = 1;\n" +
+                        "//#endif\n" +
+                        "}\n"
+        );
+        writeString(otherJavaFile, "package test;\nclass Other {}\n");
+
+        GradleRunner runner = setupGradle();
+        runner.withArguments("preprocessJava");
+        assertEquals(TaskOutcome.SUCCESS, runner.build().task(":preprocessJava").getOutcome());
+        assertEquals(TaskOutcome.UP_TO_DATE, runner.build().task(":preprocessJava").getOutcome());
+
+        // modify one file and remove the other
+        writeString(getTestJavaFile(),
+                "package test;\n" +
+                        "class Test {\n" +
+                        "//#if a\n" +
+                        "//$$ int a = 2;\n" +
+                        "//#endif\n" +
+                        "}\n"
+        );
+        //noinspection ResultOfMethodCallIgnored
+        otherJavaFile.delete();
+        assertEquals(TaskOutcome.SUCCESS, runner.build().task(":preprocessJava").getOutcome());
+
+        File outDir = new File(projectDir, "build/generated/preprocessed/main/java/test");
+        assertEquals(
+                "package test;\n" +
+                        "class Test {\n" +
+                        "//#if a\n" +
+                        "int a = 2;\n" +
+                        "//#endif\n" +
+                        "}\n", new String(Files.readAllBytes(new File(outDir, "Test.java").toPath())));
+        assertEquals(false, new File(outDir, "Other.java").exists());
+    }
+
+    @Test
+    void testChangedVarsReuseOutputs() throws IOException {
+        File otherJavaFile = new File(projectDir, "src/main/java/test/Other.java");
+        writeString(getTestJavaFile(),
+                "package test;\n" +
+                        "class Test {\n" +
+                        "//#if a\n" +
+                        "//$$ int a = 1;\n" +
+                        "//#endif\n" +
+                        "}\n"
+        );
+        writeString(otherJavaFile,
+                "package test;\n" +
+                        "class Other {\n" +
+                        "//#if b\n" +
+                        "//$$ int b = 1;\n" +
+                        "//#endif\n" +
+                        "}\n"
+        );
+
+        GradleRunner runner = setupGradle();
+        runner.withArguments("preprocessJava");
+        assertEquals(TaskOutcome.SUCCESS, runner.build().task(":preprocessJava").getOutcome());
+        File outDir = new File(projectDir, "build/generated/preprocessed/main/java/test");
+        long testModified = Files.getLastModifiedTime(new File(outDir, "Test.java").toPath()).toMillis();
+
+        // only Other.java depends on the changed var
+        writeString(getBuildFile(), new String(Files.readAllBytes(getBuildFile().toPath())).replace("vars.put(\"a\", \"1\");", "vars.put(\"a\", \"1\");\nvars.put(\"b\", \"1\");"));
+        assertEquals(TaskOutcome.SUCCESS, runner.build().task(":preprocessJava").getOutcome());
+        assertEquals(testModified, Files.getLastModifiedTime(new File(outDir, "Test.java").toPath()).toMillis());
+        assertEquals(
+                "package test;\n" +
+                        "class Test {\n" +
+                        "//#if a\n" +
+                        "int a = 1;\n" +
+                        "//#endif\n" +
+                        "}\n", new String(Files.readAllBytes(new File(outDir, "Test.java").toPath())));
+        assertEquals(
+                "package test;\n" +
+                        "class Other {\n" +
+                        "//#if b\n" +
+                        "int b = 1;\n" +
+                        "//#endif\n" +
+                        "}\n", new String(Files.readAllBytes(new File(outDir, "Other.java").toPath())));
+        String info = new String(Files.readAllBytes(new File(projectDir, "build/generated/preprocessed/main/preprocessJava.json").toPath()));
+        assertEquals(true, info.contains("\"converted\": 1,"));
+        assertEquals(true, info.contains("\"unchanged\": 1,"));
+    }
+
+    @Test
+    void testBuildCache() throws IOException {
+        writeString(getTestJavaFile(),
+                "package test;\n" +
+                        "class Test {\n" +
+                        "//#if a\n" +
+                        "//$$ int a = 1;\n" +
+                        "//#endif\n" +
+                        "}\n"
+        );
+
+        GradleRunner runner = setupGradle();
+        runner.withArguments("preprocessJava", "--build-cache");
+        assertEquals(TaskOutcome.SUCCESS, runner.build().task(":preprocessJava").getOutcome());
+
+        // a clean build restores the preprocessed files from the cache
+        runner.withArguments("clean", "preprocessJava", "--build-cache");
+        assertEquals(TaskOutcome.FROM_CACHE, runner.build().task(":preprocessJava").getOutcome());
+        assertEquals(
+                "package test;\n" +
+                        "class Test {\n" +
+                        "//#if a\n" +
+                        "int a = 1;\n" +
+                        "//#endif\n" +
+                        "}\n", new String(Files.readAllBytes(new File(projectDir, "build/generated/preprocessed/main/java/test/Test.java").toPath())));
+    }
+
+    @Test
+    void testConfigurationCache() throws IOException {
+        writeString(getTestJavaFile(),
+                "package test;\n" +
+                        "class Test {\n" +
+                        "//#if a\n" +
+                        "//$$ int a = 1;\n" +
+                        "//#endif\n" +
+                        "}\n"
+        );
+
+        GradleRunner runner = setupGradle();
+        runner.withArguments("applyPreProcess", "--configuration-cache");
+        BuildResult firstResult = runner.build();
+        assertEquals(TaskOutcome.SUCCESS, firstResult.task(":applyPreProcessJava").getOutcome());
+        assertEquals(true, firstResult.getOutput().contains("Configuration cache entry stored."));
+
+        // the second build skips the configuration phase
+        BuildResult secondResult = runner.build();
+        assertEquals(true, secondResult.getOutput().contains("Reusing configuration cache."));
+        assertEquals(TaskOutcome.SUCCESS, secondResult.task(":applyPreProcessJava").getOutcome());
+        assertEquals(
+                "package test;\n" +
+                        "class Test {\n" +
+                        "//#if a\n" +
+                        "int a = 1;\n" +
+                        "//#endif\n" +
+                        "}\n", new String(Files.readAllBytes(getTestJavaFile().toPath())));
+    }
+
     private void writeString(@NotNull File file, String string) throws IOException {
         //noinspection ResultOfMethodCallIgnored
         file.getParentFile().mkdirs();
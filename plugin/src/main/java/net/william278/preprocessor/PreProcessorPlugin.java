@@ -14,12 +14,18 @@ package net.william278.preprocessor;
 
 import net.william278.preprocessor.data.PreprocessExtension;
 import net.william278.preprocessor.tasks.ApplyPreProcessTask;
+import net.william278.preprocessor.tasks.ImpactPreProcessTask;
+import net.william278.preprocessor.tasks.ParseCacheService;
+import net.william278.preprocessor.tasks.PreProcessSettings;
 import net.william278.preprocessor.tasks.PreProcessTask;
+import net.william278.preprocessor.tasks.PreProcessVariantsTask;
+import net.william278.preprocessor.tasks.WatchPreProcessTask;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.file.DuplicatesStrategy;
 import org.gradle.api.file.RegularFile;
 import org.gradle.api.file.SourceDirectorySet;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.compile.JavaCompile;
@@ -28,6 +34,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.kotlin.gradle.tasks.KotlinCompile;
 
 import java.io.File;
+import java.util.Set;
 
 /**
  * Main class for the PreProcessor-Plugin
@@ -40,19 +47,34 @@ public class PreProcessorPlugin implements Plugin<Project> {
 
         boolean hasKotlin = project.getPlugins().hasPlugin("kotlin");
 
+        // shared by all projects, so the value of the first one applying the plugin counts
+        Provider<ParseCacheService> cacheService = project.getGradle().getSharedServices().registerIfAbsent("preprocessorParseCache", ParseCacheService.class,
+                spec -> spec.getParameters().getMemory().set(project.provider(() -> ext.cacheMemory)));
+
+        TaskProvider<ImpactPreProcessTask> impact = project.getTasks().register("preprocessImpact", ImpactPreProcessTask.class, task -> {
+            task.getVariants().convention(ext.variants);
+            task.getReportFile().convention(project.getLayout().getBuildDirectory().file("preprocessImpact.json").map(RegularFile::getAsFile));
+            task.getParallelism().convention(project.provider(() -> ext.parallelism));
+            task.getCacheService().convention(cacheService);
+            task.usesService(cacheService);
+        });
+
         SourceSetContainer sourceSetContainer = project.getExtensions().findByType(SourceSetContainer.class);
         if (sourceSetContainer != null) {
             sourceSetContainer.configureEach(sourceSet -> {
                 String generated = "generated" + File.separatorChar + "preprocessed" + File.separatorChar + sourceSet.getName() + File.separatorChar;
 
+                TaskProvider<WatchPreProcessTask> watch = project.getTasks().register(sourceSet.getTaskName("watchPreprocess", null), WatchPreProcessTask.class, task -> {
+                    task.getParallelism().convention(project.provider(() -> ext.parallelism));
+                    task.getCacheService().convention(cacheService);
+                    task.usesService(cacheService);
+                });
+
                 // Java Source
                 TaskProvider<PreProcessTask> preprocessJava = project.getTasks().register(sourceSet.getTaskName("preprocess", "Java"), PreProcessTask.class, task -> {
                     task.getSources().convention(sourceSet.getJava().getSrcDirs());
-                    task.getVars().convention(ext.vars);
-                    task.getRemap().convention(ext.remapper);
-                    task.getKeywords().convention(ext.keywords);
+                    applyConventions(project, ext, cacheService, task);
                     task.getTarget().set(project.getLayout().getBuildDirectory().file(generated + "java").map(RegularFile::getAsFile));
-                    task.getOutputs().upToDateWhen(t -> false);
                 });
 
                 project.getTasks().named(sourceSet.getCompileJavaTaskName(), JavaCompile.class, task -> {
@@ -60,17 +82,21 @@ public class PreProcessorPlugin implements Plugin<Project> {
                     task.setSource(preprocessJava.flatMap(PreProcessTask::getTarget));
                 });
 
-                project.getTasks().register(sourceSet.getTaskName("applyPreProcess", "Java"), ApplyPreProcessTask.class, preprocessJava).configure(task -> task.dependsOn(preprocessJava));
+                project.getTasks().register(sourceSet.getTaskName("applyPreProcess", "Java"), ApplyPreProcessTask.class, preprocessJava).configure(task -> {
+                    task.dependsOn(preprocessJava);
+                    task.usesService(cacheService);
+                });
+
+                watchTarget(watch, preprocessJava);
+                impactTarget(impact, preprocessJava);
+                registerVariants(project, ext, cacheService, sourceSet.getTaskName("preprocessVariants", "Java"), sourceSet.getJava().getSrcDirs(), generated + "variants" + File.separatorChar + "java");
 
                 // Kotlin
                 if (hasKotlin) {
                     TaskProvider<PreProcessTask> preprocessKotlin = project.getTasks().register(sourceSet.getTaskName("preprocess", "Kotlin"), PreProcessTask.class, task -> {
                         task.getSources().convention(((SourceDirectorySet) sourceSet.getExtensions().getByName("kotlin")).getSrcDirs());
-                        task.getVars().convention(ext.vars);
-                    task.getRemap().convention(ext.remapper);
-                    task.getKeywords().convention(ext.keywords);
+                        applyConventions(project, ext, cacheService, task);
                         task.getTarget().set(project.getLayout().getBuildDirectory().file(generated + "kotlin").map(RegularFile::getAsFile));
-                        task.getOutputs().upToDateWhen(t -> false);
                     });
 
                     project.getTasks().named(sourceSet.getCompileTaskName("kotlin"), KotlinCompile.class, task -> {
@@ -78,17 +104,21 @@ public class PreProcessorPlugin implements Plugin<Project> {
                         task.setSource(preprocessKotlin.flatMap(PreProcessTask::getTarget));
                     });
 
-                    project.getTasks().register(sourceSet.getTaskName("applyPreProcess", "Kotlin"), ApplyPreProcessTask.class, preprocessKotlin).configure(task -> task.dependsOn(preprocessKotlin));
+                    project.getTasks().register(sourceSet.getTaskName("applyPreProcess", "Kotlin"), ApplyPreProcessTask.class, preprocessKotlin).configure(task -> {
+                        task.dependsOn(preprocessKotlin);
+                        task.usesService(cacheService);
+                    });
+
+                    watchTarget(watch, preprocessKotlin);
+                    impactTarget(impact, preprocessKotlin);
+                    registerVariants(project, ext, cacheService, sourceSet.getTaskName("preprocessVariants", "Kotlin"), ((SourceDirectorySet) sourceSet.getExtensions().getByName("kotlin")).getSrcDirs(), generated + "variants" + File.separatorChar + "kotlin");
                 }
 
                 // Resources
                 TaskProvider<PreProcessTask> preprocessResources = project.getTasks().register(sourceSet.getTaskName("preprocess", "Resources"), PreProcessTask.class, task -> {
                     task.getSources().convention(sourceSet.getResources().getSrcDirs());
-                    task.getVars().convention(ext.vars);
-                    task.getRemap().convention(ext.remapper);
-                    task.getKeywords().convention(ext.keywords);
+                    applyConventions(project, ext, cacheService, task);
                     task.getTarget().set(project.getLayout().getBuildDirectory().file(generated + "resources").map(RegularFile::getAsFile));
-                    task.getOutputs().upToDateWhen(t -> false);
                 });
 
                 project.getTasks().named(sourceSet.getProcessResourcesTaskName(), ProcessResources.class, task -> {
@@ -98,18 +128,74 @@ public class PreProcessorPlugin implements Plugin<Project> {
                     task.setDuplicatesStrategy(DuplicatesStrategy.INCLUDE);
                 });
 
-                project.getTasks().register(sourceSet.getTaskName("applyPreProcess", "Resources"), ApplyPreProcessTask.class, preprocessResources).configure(task -> task.dependsOn(preprocessResources));
+                project.getTasks().register(sourceSet.getTaskName("applyPreProcess", "Resources"), ApplyPreProcessTask.class, preprocessResources).configure(task -> {
+                    task.dependsOn(preprocessResources);
+                    task.usesService(cacheService);
+                });
+
+                watchTarget(watch, preprocessResources);
+                impactTarget(impact, preprocessResources);
+                registerVariants(project, ext, cacheService, sourceSet.getTaskName("preprocessVariants", "Resources"), sourceSet.getResources().getSrcDirs(), generated + "variants" + File.separatorChar + "resources");
             });
         }
 
         project.getTasks().register("applyPreProcess").configure(task -> {
-            for (ApplyPreProcessTask subApplyPreProcessTask : project.getTasks().withType(ApplyPreProcessTask.class)) {
-                task.dependsOn(subApplyPreProcessTask);
-            }
+            // the live collection is only resolved, once the task graph is built with this task in it
+            task.dependsOn(project.getTasks().withType(ApplyPreProcessTask.class));
 
+            // by path, so the subprojects don't have to be configured by this project
             for (Project subproject : project.getSubprojects()) {
-                task.dependsOn(subproject.getTasks().named("applyPreProcess"));
+                task.dependsOn(subproject.getPath() + ":applyPreProcess");
             }
         });
     }
+
+    /**
+     * Lets the watch task keep the outputs of the preprocess task up-to-date, starting with a regular execution of it
+     */
+    private static void watchTarget(@NotNull TaskProvider<WatchPreProcessTask> watch, @NotNull TaskProvider<PreProcessTask> preprocess) {
+        watch.configure(task -> {
+            task.getTargets().add(preprocess.map(PreProcessSettings::of));
+            task.dependsOn(preprocess);
+        });
+    }
+
+    /**
+     * Lets the impact task analyze the sources of the preprocess task, without running it
+     */
+    private static void impactTarget(@NotNull TaskProvider<ImpactPreProcessTask> impact, @NotNull TaskProvider<PreProcessTask> preprocess) {
+        impact.configure(task -> task.getTargets().add(preprocess.map(PreProcessSettings::of)));
+    }
+
+    /**
+     * Registers a task, that preprocesses the sources for all {@link PreprocessExtension#variants}. It is not wired into the build, so it only runs when requested.
+     */
+    private static void registerVariants(@NotNull Project project, @NotNull PreprocessExtension ext, @NotNull Provider<ParseCacheService> cacheService, @NotNull String name, @NotNull Set<File> srcDirs, @NotNull String target) {
+        project.getTasks().register(name, PreProcessVariantsTask.class, task -> {
+            task.getSources().convention(srcDirs);
+            applyConventions(project, ext, cacheService, task);
+            task.getVariants().convention(ext.variants);
+            task.getTarget().set(project.getLayout().getBuildDirectory().file(target).map(RegularFile::getAsFile));
+        });
+    }
+
+    /**
+     * Lets the task use the settings of the preprocess extension, unless set otherwise
+     */
+    private static void applyConventions(@NotNull Project project, @NotNull PreprocessExtension ext, @NotNull Provider<ParseCacheService> cacheService, @NotNull PreProcessTask task) {
+        task.getCacheService().convention(cacheService);
+        task.usesService(cacheService);
+        task.getVars().convention(ext.vars);
+        task.getIncludes().convention(ext.includes);
+        task.getExcludes().convention(ext.excludes);
+        task.getRemap().convention(ext.remapper);
+        task.getRemapLiteral().convention(project.provider(() -> ext.remapLiteral));
+        task.getRemapTokens().convention(project.provider(() -> ext.remapTokens));
+        task.getOrganizeImports().convention(project.provider(() -> ext.organizeImports));
+        task.getKeywords().convention(ext.keywords);
+        task.getParallelism().convention(project.provider(() -> ext.parallelism));
+        task.getCharset().convention(project.provider(() -> ext.charset));
+        task.getTextExtensions().convention(ext.textExtensions);
+        task.getBinaryExtensions().convention(ext.binaryExtensions);
+    }
 }
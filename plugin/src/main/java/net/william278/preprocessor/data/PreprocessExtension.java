@@ -12,9 +12,16 @@
 
 package net.william278.preprocessor.data;
 
+import net.william278.preprocessor.util.BinaryDetector;
+import net.william278.preprocessor.util.ParseCache;
+
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Gradle Extension for setting general PreProcessor variables
@@ -24,6 +31,18 @@ public class PreprocessExtension {
      * the vars that shall be used for the custom if-statements
      */
     public Map<String, Object> vars = new HashMap<>();
+    /**
+     * named variants, each with vars that override the {@link #vars}. Every variant is written to its own folder by the preprocessVariants tasks
+     */
+    public Map<String, Map<String, Object>> variants = new LinkedHashMap<>();
+    /**
+     * glob patterns relative to the source folders (e.g. '**&#47;*.java'), of which a file has to match any to be preprocessed. All files are included if empty
+     */
+    public List<String> includes = new ArrayList<>();
+    /**
+     * glob patterns relative to the source folders (e.g. 'legacy/'), of files that are not preprocessed. A folder matching one is excluded with its content and not even walked
+     */
+    public List<String> excludes = new ArrayList<>();
     /**
      * custom keywords, where the key is something the target file name should end with (e.g. '.json') and the Keywords are the custom keywords for this file type.
      */
@@ -32,4 +51,39 @@ public class PreprocessExtension {
      * A map where each occurrence of a key in the code will be replaced with the respective value
      */
     public Map<String, String> remapper = new LinkedHashMap<>();
+    /**
+     * if the keys of the {@link #remapper} are plain strings instead of regular expressions. All keys are then matched in a single pass
+     */
+    public boolean remapLiteral = false;
+    /**
+     * if the keys of the {@link #remapper} are identifiers and qualified names, that only replace whole names in code and never
+     * touch string literals or comments. Java and Kotlin files are lexed once, and every name is looked up in a hash table. Takes precedence over {@link #remapLiteral}
+     */
+    public boolean remapTokens = false;
+    /**
+     * if imports of Java files, that are unused after preprocessing (e.g. as they were only used in inactive branches), shall be removed from the output.
+     * Removed imports leave empty lines behind, so line numbers stay the same
+     */
+    public boolean organizeImports = false;
+    /**
+     * the maximum amount of files that are preprocessed at the same time
+     */
+    public int parallelism = Runtime.getRuntime().availableProcessors();
+    /**
+     * the charset of all preprocessed text files
+     */
+    public String charset = "UTF-8";
+    /**
+     * extensions (without dot) of files that are always preprocessed as text
+     */
+    public Set<String> textExtensions = new HashSet<>(BinaryDetector.DEFAULT_TEXT_EXTENSIONS);
+    /**
+     * extensions (without dot) of binary files, that are always copied. Files with an extension in neither list are checked for NUL bytes and invalid text
+     */
+    public Set<String> binaryExtensions = new HashSet<>(BinaryDetector.DEFAULT_BINARY_EXTENSIONS);
+    /**
+     * the memory budget in MiB of the cache, that keeps compiled conditions, remap tables and parsed files in the Gradle daemon between builds. 0 disables it.
+     * The cache is shared by all projects, so the value of the first project applying the plugin is used
+     */
+    public int cacheMemory = (int) (ParseCache.DEFAULT_MAX_BYTES >> 20);
 }
@@ -13,50 +13,80 @@
 package net.william278.preprocessor.tasks;
 
 import net.william278.preprocessor.data.Keywords;
+import net.william278.preprocessor.util.BinaryDetector;
+import net.william278.preprocessor.util.ParallelExecutor;
+import net.william278.preprocessor.util.ParseCache;
 import net.william278.preprocessor.util.PreProcessor;
 import net.william278.preprocessor.util.ReMapper;
+import net.william278.preprocessor.util.SourceFilter;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.ProjectLayout;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
+import org.gradle.api.provider.SetProperty;
 import org.gradle.api.tasks.*;
 import org.jetbrains.annotations.NotNull;
 
 import javax.inject.Inject;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Task to overwrite the original source files with the results of the {@link PreProcessTask}
+ * Task to overwrite the original source files with the results of the {@link PreProcessTask}. Like the {@link PreProcessTask}, it is compatible with the configuration cache.
  */
 public class ApplyPreProcessTask extends DefaultTask {
     private final Property<Boolean> removeComments;
+    private final Property<Integer> parallelism;
     private final MapProperty<String, Object> vars;
     private final MapProperty<String, String> remap;
+    private final Property<Boolean> remapLiteral;
+    private final Property<Boolean> remapTokens;
     private final MapProperty<String, Keywords> keywords;
+    private final Property<String> charset;
+    private final SetProperty<String> textExtensions;
+    private final SetProperty<String> binaryExtensions;
     private final ListProperty<File> targets;
+    private final ListProperty<String> includes;
+    private final ListProperty<String> excludes;
     private final ConfigurableFileCollection comingFiles;
+    private final Property<ParseCacheService> cacheService;
+    private final ProjectLayout layout;
 
     /**
      * @param factory        some object factory to crate the properties
+     * @param layout         the layout of the project, to resolve relative source folders
      * @param preProcessTask the delgate preprocess task to be used
      */
     @Inject
-    public ApplyPreProcessTask(final @NotNull ObjectFactory factory, final @NotNull TaskProvider<PreProcessTask> preProcessTask) {
+    public ApplyPreProcessTask(final @NotNull ObjectFactory factory, final @NotNull ProjectLayout layout, final @NotNull TaskProvider<PreProcessTask> preProcessTask) {
+        this.layout = layout;
         this.removeComments = factory.property(Boolean.class).convention(false);
+        this.parallelism = factory.property(Integer.class).convention(preProcessTask.flatMap(PreProcessTask::getParallelism));
 
         this.targets = factory.listProperty(File.class).convention(preProcessTask.flatMap(PreProcessTask::getSources));
+        this.includes = factory.listProperty(String.class).convention(preProcessTask.flatMap(PreProcessTask::getIncludes));
+        this.excludes = factory.listProperty(String.class).convention(preProcessTask.flatMap(PreProcessTask::getExcludes));
 
         this.vars = factory.mapProperty(String.class, Object.class).convention(preProcessTask.flatMap(PreProcessTask::getVars));
         this.remap = factory.mapProperty(String.class, String.class).convention(preProcessTask.flatMap(PreProcessTask::getRemap));
+        this.remapLiteral = factory.property(Boolean.class).convention(preProcessTask.flatMap(PreProcessTask::getRemapLiteral));
+        this.remapTokens = factory.property(Boolean.class).convention(preProcessTask.flatMap(PreProcessTask::getRemapTokens));
         this.keywords = factory.mapProperty(String.class, Keywords.class).convention(preProcessTask.flatMap(PreProcessTask::getKeywords));
+        this.charset = factory.property(String.class).convention(preProcessTask.flatMap(PreProcessTask::getCharset));
+        this.textExtensions = factory.setProperty(String.class).convention(preProcessTask.flatMap(PreProcessTask::getTextExtensions));
+        this.binaryExtensions = factory.setProperty(String.class).convention(preProcessTask.flatMap(PreProcessTask::getBinaryExtensions));
 
         this.comingFiles = factory.fileCollection();
+        this.cacheService = factory.property(ParseCacheService.class).convention(preProcessTask.flatMap(PreProcessTask::getCacheService));
     }
 
     /**
@@ -67,6 +97,14 @@ public class ApplyPreProcessTask extends DefaultTask {
         return removeComments;
     }
 
+    /**
+     * @return the maximum amount of files that are preprocessed at the same time
+     */
+    @Internal
+    public Property<Integer> getParallelism() {
+        return parallelism;
+    }
+
     /**
      * @return target folder where the sources files should be overwritten
      */
@@ -75,6 +113,32 @@ public class ApplyPreProcessTask extends DefaultTask {
         return targets;
     }
 
+    /**
+     * @return glob patterns relative to the source folders, of which a file has to match any to be rewritten. All files are included if empty
+     * @see PreProcessTask#getIncludes()
+     */
+    @Internal
+    public ListProperty<String> getIncludes() {
+        return includes;
+    }
+
+    /**
+     * @return glob patterns relative to the source folders, of files that are never rewritten
+     * @see PreProcessTask#getExcludes()
+     */
+    @Internal
+    public ListProperty<String> getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * @return the service keeping the skeletons of unchanged files
+     */
+    @Internal
+    public Property<ParseCacheService> getCacheService() {
+        return cacheService;
+    }
+
     /**
      * @return the overwritten files
      */
@@ -94,25 +158,45 @@ public class ApplyPreProcessTask extends DefaultTask {
      */
     @TaskAction
     public void applyPreProcess() {
-        Set<File> foundFiles = new HashSet<>();
+        Set<File> foundFiles = new LinkedHashSet<>();
+        ParseCache cache = cacheService.isPresent() ? cacheService.get().getCache() : null;
 
-        PreProcessor preProcessor = new PreProcessor(removeComments.get(), vars.get(), keywords.get());
-        ReMapper reMapper = new ReMapper(remap.get());
+        PreProcessor preProcessor = new PreProcessor(removeComments.get(), vars.get(), keywords.get(),
+                new BinaryDetector(textExtensions.get(), binaryExtensions.get(), Charset.forName(charset.get())));
+        ReMapper reMapper = new ReMapper(remap.get(), PreProcessTask.remapMode(remapLiteral.get(), remapTokens.get()));
 
         // place file in their original source folder
+        File projectDir = layout.getProjectDirectory().getAsFile();
+        SourceFilter filter = SourceFilter.of(includes.get(), excludes.get());
         for (File srcFolder : targets.get()) {
-            final File srcFolderFile = srcFolder.isAbsolute() ? srcFolder : new File(getProject().getProjectDir(), srcFolder.getPath());
+            final File srcFolderFile = srcFolder.isAbsolute() ? srcFolder : new File(projectDir, srcFolder.getPath());
             Path outBasePath = srcFolderFile.toPath();
             // iterate over the existing files in the targets folders so the preprocessed files can be copied to their exact source folder
             // might be buggy when interfered by externals
-            for (File file : getProject().fileTree(outBasePath)) {
-                // old school preprocessing
-                preProcessor.convertFile(reMapper, file, file);
-
-                foundFiles.add(file);
+            try {
+                for (Path relPath : filter.walk(outBasePath, parallelism.get())) {
+                    foundFiles.add(outBasePath.resolve(relPath).toFile());
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
         }
 
+        // old school preprocessing
+        // only files whose content actually changes are rewritten, so mtimes of all others stay untouched
+        LongAdder changedFiles = new LongAdder();
+        LongAdder passthroughFiles = new LongAdder();
+        ParallelExecutor.forEach(foundFiles, parallelism.get(), file -> {
+            PreProcessor.FileResult result = preProcessor.convertFile(reMapper, file, file, null, null, cache);
+            if (result == PreProcessor.FileResult.CONVERTED) {
+                changedFiles.increment();
+            } else if (result == PreProcessor.FileResult.PASSTHROUGH) {
+                passthroughFiles.increment();
+            }
+        });
+        getLogger().lifecycle("Applied preprocessing: {} files changed, {} untouched ({} without directives or remap keys)",
+                changedFiles.sum(), foundFiles.size() - changedFiles.sum(), passthroughFiles.sum());
+
         this.comingFiles.setFrom(foundFiles);
     }
 }
@@ -0,0 +1,224 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.tasks;
+
+import net.william278.preprocessor.data.PreprocessExtension;
+import net.william278.preprocessor.util.ImpactAnalyzer;
+import net.william278.preprocessor.util.ParallelExecutor;
+import net.william278.preprocessor.util.ParseCache;
+import net.william278.preprocessor.util.PreProcessor;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
+import org.jetbrains.annotations.NotNull;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Reports which files and lines would change, if the vars were replaced by candidate vars, e.g. before bumping a platform version.
+ * Only the directives are evaluated, nothing is preprocessed or written besides the report.
+ * <p>
+ * The candidate vars are the vars of each preprocess task, overridden by the vars of the {@link #getVariant() variant} and
+ * the {@link #getCandidateVars() candidate vars}, in that order.
+ */
+public class ImpactPreProcessTask extends DefaultTask {
+    private final ListProperty<PreProcessSettings> targets;
+    private final MapProperty<String, Map<String, Object>> variants;
+    private final Property<String> variant;
+    private final ListProperty<String> candidateVars;
+    private final Property<File> reportFile;
+    private final Property<Integer> parallelism;
+    private final Property<ParseCacheService> cacheService;
+    private final ProjectLayout layout;
+
+    /**
+     * @param factory some object factory to create the properties
+     * @param layout  the layout of the project, to resolve relative source folders
+     */
+    @Inject
+    @SuppressWarnings("unchecked")
+    public ImpactPreProcessTask(final @NotNull ObjectFactory factory, final @NotNull ProjectLayout layout) {
+        this.layout = layout;
+        this.targets = factory.listProperty(PreProcessSettings.class);
+        this.variants = factory.mapProperty(String.class, (Class<Map<String, Object>>) (Class<?>) Map.class);
+        this.variant = factory.property(String.class);
+        this.candidateVars = factory.listProperty(String.class);
+        this.reportFile = factory.property(File.class);
+        this.parallelism = factory.property(Integer.class).convention(Runtime.getRuntime().availableProcessors());
+        this.cacheService = factory.property(ParseCacheService.class);
+        doNotTrackState("Depends on the candidate vars given on the command line");
+    }
+
+    /**
+     * @return the settings of the analyzed preprocess tasks
+     */
+    @Internal
+    public ListProperty<PreProcessSettings> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return the variants, one of which can be chosen as candidate
+     * @see PreprocessExtension#variants
+     */
+    @Internal
+    public MapProperty<String, Map<String, Object>> getVariants() {
+        return variants;
+    }
+
+    /**
+     * @return the name of the variant, whose vars are the candidate
+     */
+    @Internal
+    @Option(option = "variant", description = "The variant, whose vars are compared with the current ones")
+    public Property<String> getVariant() {
+        return variant;
+    }
+
+    /**
+     * @return candidate vars as 'name=value', overriding the vars of the tasks and the variant
+     */
+    @Internal
+    @Option(option = "var", description = "A candidate var as 'name=value', can be given several times")
+    public ListProperty<String> getCandidateVars() {
+        return candidateVars;
+    }
+
+    /**
+     * @return where the JSON report of the affected files and line ranges is written to
+     */
+    @OutputFile
+    public Property<File> getReportFile() {
+        return reportFile;
+    }
+
+    /**
+     * @return the maximum amount of files that are analyzed at the same time
+     * @see PreprocessExtension#parallelism
+     */
+    @Internal
+    public Property<Integer> getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the service keeping the parsed files between builds
+     */
+    @Internal
+    public Property<ParseCacheService> getCacheService() {
+        return cacheService;
+    }
+
+    @Internal
+    @Override
+    public String getDescription() {
+        return "Reports the files and lines, that candidate vars would change.";
+    }
+
+    /**
+     * Analyzes the sources of all targets
+     */
+    @TaskAction
+    public void analyze() {
+        long startTime = System.nanoTime();
+        Map<String, Object> overrides = new LinkedHashMap<>();
+        if (variant.isPresent()) {
+            Map<String, Object> variantVars = variants.get().get(variant.get());
+            if (variantVars == null) {
+                throw new IllegalArgumentException("Unknown variant '" + variant.get() + "', expected one of " + variants.get().keySet());
+            }
+            overrides.putAll(variantVars);
+        }
+        for (String var : candidateVars.get()) {
+            int separator = var.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected '--var <name>=<value>', got '" + var + "'");
+            }
+            overrides.put(var.substring(0, separator), var.substring(separator + 1));
+        }
+        if (overrides.isEmpty()) {
+            throw new IllegalArgumentException("No candidate vars given, use --var <name>=<value> or --variant <name>");
+        }
+
+        ParseCache cache = cacheService.isPresent() ? cacheService.get().getCache() : null;
+        Path projectPath = layout.getProjectDirectory().getAsFile().toPath();
+        List<ImpactAnalyzer> analyzers = new ArrayList<>();
+        for (PreProcessSettings target : targets.get()) {
+            Map<String, Object> vars = new HashMap<>(target.getVars());
+            vars.putAll(overrides);
+            PreProcessor current = target.createPreProcessor(cache, target.getVars());
+            ImpactAnalyzer analyzer = new ImpactAnalyzer(current, target.createPreProcessor(cache, vars), cache);
+            analyzers.add(analyzer);
+
+            List<Path> inBasePaths = new ArrayList<>();
+            for (File srcFolder : target.getSources()) {
+                inBasePaths.add(projectPath.resolve(srcFolder.toPath()));
+            }
+            try {
+                // shadowed files never reach the outputs
+                Map<String, List<Path>> sourceFiles = target.createSourceFilter().resolve(inBasePaths, parallelism.get());
+                ParallelExecutor.forEach(sourceFiles.entrySet(), parallelism.get(), source -> {
+                    Path inPath = source.getValue().get(0).resolve(source.getKey());
+                    analyzer.analyzeFile(projectPath.relativize(inPath).toString(), inPath.toFile());
+                });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        long activated = 0;
+        long deactivated = 0;
+        int files = 0;
+        for (ImpactAnalyzer analyzer : analyzers) {
+            for (Map.Entry<String, List<ImpactAnalyzer.Block>> impact : analyzer.getImpacts().entrySet()) {
+                getLogger().lifecycle("{}: {}", impact.getKey(), impact.getValue());
+            }
+            for (String error : analyzer.getErrors()) {
+                getLogger().error("Can't evaluate {}", error);
+            }
+            files += analyzer.getImpacts().size();
+            activated += analyzer.getActivatedLines();
+            deactivated += analyzer.getDeactivatedLines();
+        }
+        getLogger().lifecycle("{} files would change: {} lines activated, {} lines deactivated", files, activated, deactivated);
+
+        try {
+            List<String> vars = new ArrayList<>();
+            for (Map.Entry<String, Object> var : overrides.entrySet()) {
+                vars.add(var.getKey() + "=" + var.getValue());
+            }
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("task", getPath());
+            info.put("candidateVars", vars);
+            info.put("millis", (System.nanoTime() - startTime) / 1_000_000);
+            Path reportPath = reportFile.get().toPath();
+            Files.createDirectories(reportPath.getParent());
+            Files.writeString(reportPath, ImpactAnalyzer.toJson(info, analyzers), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
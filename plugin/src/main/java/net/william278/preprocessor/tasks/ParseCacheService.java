@@ -0,0 +1,61 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.tasks;
+
+import net.william278.preprocessor.data.PreprocessExtension;
+import net.william278.preprocessor.util.ParseCache;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Gives the tasks access to the {@link ParseCache#shared() shared cache}, which outlives this service and stays in the Gradle daemon between builds.
+ * At the end of every build, the statistics of the build are logged.
+ */
+public abstract class ParseCacheService implements BuildService<ParseCacheService.Params>, AutoCloseable {
+    private static final Logger LOGGER = Logging.getLogger(ParseCacheService.class);
+
+    private final ParseCache cache = ParseCache.shared();
+    private final ParseCache.Stats start;
+
+    /**
+     * Parameters of the service
+     */
+    public interface Params extends BuildServiceParameters {
+        /**
+         * @return the memory budget of the cache in MiB
+         * @see PreprocessExtension#cacheMemory
+         */
+        Property<Integer> getMemory();
+    }
+
+    public ParseCacheService() {
+        cache.setMaxBytes((long) getParameters().getMemory().get() << 20);
+        start = cache.getStats();
+    }
+
+    /**
+     * @return the cache, that is shared by all builds in this daemon
+     */
+    public @NotNull ParseCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void close() {
+        LOGGER.info("PreProcessor cache: {}", cache.getStats().since(start));
+    }
+}
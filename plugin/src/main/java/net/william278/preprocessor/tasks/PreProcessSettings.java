@@ -0,0 +1,129 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.tasks;
+
+import net.william278.preprocessor.data.Keywords;
+import net.william278.preprocessor.util.BinaryDetector;
+import net.william278.preprocessor.util.ParseCache;
+import net.william278.preprocessor.util.PreProcessor;
+import net.william278.preprocessor.util.ReMapper;
+import net.william278.preprocessor.util.SourceFilter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * The settings of a preprocess task, taken over when the task graph is built, for tasks working on the sources of other preprocess
+ * tasks, see {@link WatchPreProcessTask} and {@link ImpactPreProcessTask}
+ */
+public final class PreProcessSettings implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<File> sources;
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final File target;
+    private final boolean removeComments;
+    private final boolean organizeImports;
+    private final Map<String, Object> vars;
+    private final Map<String, String> remap;
+    private final boolean remapLiteral;
+    private final boolean remapTokens;
+    private final Map<String, Keywords> keywords;
+    private final String charset;
+    private final Set<String> textExtensions;
+    private final Set<String> binaryExtensions;
+
+    private PreProcessSettings(@NotNull PreProcessTask task) {
+        this.sources = new ArrayList<>(task.getSources().get());
+        this.includes = new ArrayList<>(task.getIncludes().get());
+        this.excludes = new ArrayList<>(task.getExcludes().get());
+        this.target = task.getTarget().get();
+        this.removeComments = task.getRemoveComments().get();
+        this.organizeImports = task.getOrganizeImports().get();
+        this.vars = new HashMap<>(task.getVars().get());
+        this.remap = new LinkedHashMap<>(task.getRemap().get());
+        this.remapLiteral = task.getRemapLiteral().get();
+        this.remapTokens = task.getRemapTokens().get();
+        this.keywords = new HashMap<>(task.getKeywords().get());
+        this.charset = task.getCharset().get();
+        this.textExtensions = new HashSet<>(task.getTextExtensions().get());
+        this.binaryExtensions = new HashSet<>(task.getBinaryExtensions().get());
+    }
+
+    /**
+     * @param task the preprocess task
+     * @return the settings of the task
+     */
+    public static @NotNull PreProcessSettings of(@NotNull PreProcessTask task) {
+        return new PreProcessSettings(task);
+    }
+
+    /**
+     * @return the source folders, in order of priority
+     */
+    @NotNull List<File> getSources() {
+        return sources;
+    }
+
+    /**
+     * @return the output folder of the task
+     */
+    @NotNull File getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the compiled include and exclude patterns of the task
+     */
+    @NotNull SourceFilter createSourceFilter() {
+        return SourceFilter.of(includes, excludes);
+    }
+
+    /**
+     * @return the vars of the task
+     */
+    @NotNull Map<String, Object> getVars() {
+        return vars;
+    }
+
+    /**
+     * @return an engine with the settings of the task
+     */
+    @NotNull PreProcessor createPreProcessor(@Nullable ParseCache cache) {
+        return createPreProcessor(cache, vars);
+    }
+
+    /**
+     * @param vars the vars to use instead of the ones of the task
+     * @return an engine with the other settings of the task
+     */
+    @NotNull PreProcessor createPreProcessor(@Nullable ParseCache cache, @NotNull Map<String, Object> vars) {
+        if (cache != null) {
+            return cache.getPreProcessor(removeComments, vars, keywords, textExtensions, binaryExtensions, Charset.forName(charset), organizeImports);
+        }
+        return new PreProcessor(removeComments, vars, keywords, new BinaryDetector(textExtensions, binaryExtensions, Charset.forName(charset)), organizeImports);
+    }
+
+    /**
+     * @return the remapper of the task
+     */
+    @NotNull ReMapper createReMapper(@Nullable ParseCache cache) {
+        ReMapper.Mode mode = PreProcessTask.remapMode(remapLiteral, remapTokens);
+        return cache != null ? cache.getReMapper(remap, mode) : new ReMapper(remap, mode);
+    }
+}
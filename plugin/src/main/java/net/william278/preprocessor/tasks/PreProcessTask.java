@@ -14,76 +14,154 @@ package net.william278.preprocessor.tasks;
 
 import net.william278.preprocessor.data.Keywords;
 import net.william278.preprocessor.data.PreprocessExtension;
-import net.william278.preprocessor.util.ParseException;
+import net.william278.preprocessor.util.BinaryDetector;
+import net.william278.preprocessor.util.ParallelExecutor;
+import net.william278.preprocessor.util.ParseCache;
+import net.william278.preprocessor.util.PerformanceReport;
 import net.william278.preprocessor.util.PreProcessor;
 import net.william278.preprocessor.util.ReMapper;
+import net.william278.preprocessor.util.SkeletonIndex;
+import net.william278.preprocessor.util.SourceFilter;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.FileType;
+import org.gradle.api.file.ProjectLayout;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.SetProperty;
 import org.gradle.api.tasks.*;
+import org.gradle.work.FileChange;
+import org.gradle.work.InputChanges;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
 
 /**
- * The actual preprocessor task
+ * The actual preprocessor task. Its outputs only depend on the contents and relative paths of the sources, so they can be reused from the build cache.
+ * <p>
+ * The project is never accessed while executing, so the task is compatible with the configuration cache.
  */
+@CacheableTask
 public class PreProcessTask extends DefaultTask {
+    /**
+     * the amount of slowest and largest files listed in the report
+     */
+    static final int REPORT_TOP_FILES = 10;
+    /**
+     * the name of the skeleton index in the temporary directory of the task
+     */
+    private static final String INDEX_FILE = "skeletons.idx";
+    /**
+     * the folder in the temporary directory of the task, that keeps a link to every indexed output. Gradle deletes the outputs before
+     * every non-incremental execution, but leaves the temporary directory alone
+     */
+    private static final String KEPT_OUTPUTS_DIR = "outputs";
+
     private final Property<Boolean> removeComments;
+    private final Property<Boolean> organizeImports;
+    private final Property<Integer> parallelism;
     private final MapProperty<String, Object> vars;
     private final MapProperty<String, String> remap;
+    private final Property<Boolean> remapLiteral;
+    private final Property<Boolean> remapTokens;
     private final MapProperty<String, Keywords> keywords;
+    private final Property<String> charset;
+    private final SetProperty<String> textExtensions;
+    private final SetProperty<String> binaryExtensions;
     private final Property<File> target;
     private final ListProperty<File> sources;
-    private final ConfigurableFileCollection outcomingFiles;
-    private final ConfigurableFileCollection incomingFiles;
+    private final ListProperty<String> includes;
+    private final ListProperty<String> excludes;
+    private final Provider<List<String>> sourceOrder;
+    private final ConfigurableFileCollection sourceDirectories;
+    private final Property<File> infoFile;
+    private final Property<ParseCacheService> cacheService;
+    private final ObjectFactory objects;
+    private final ProjectLayout layout;
+    private final FileSystemOperations fileSystem;
 
     /**
-     * @param factory some object factory to create the properties
+     * @param factory    some object factory to create the properties
+     * @param layout     the layout of the project, to resolve relative source folders
+     * @param fileSystem to delete previous outputs
      */
     @Inject
-    public PreProcessTask(final @NotNull ObjectFactory factory) {
+    public PreProcessTask(final @NotNull ObjectFactory factory, final @NotNull ProjectLayout layout, final @NotNull FileSystemOperations fileSystem) {
+        this.objects = factory;
+        this.layout = layout;
+        this.fileSystem = fileSystem;
         this.removeComments = factory.property(Boolean.class).convention(false);
+        this.organizeImports = factory.property(Boolean.class).convention(false);
+        this.parallelism = factory.property(Integer.class).convention(Runtime.getRuntime().availableProcessors());
         this.vars = factory.mapProperty(String.class, Object.class);
         this.remap = factory.mapProperty(String.class, String.class);
+        this.remapLiteral = factory.property(Boolean.class).convention(false);
+        this.remapTokens = factory.property(Boolean.class).convention(false);
         this.sources = factory.listProperty(File.class);
         this.keywords = factory.mapProperty(String.class, Keywords.class);
+        this.charset = factory.property(String.class).convention("UTF-8");
+        this.textExtensions = factory.setProperty(String.class).convention(BinaryDetector.DEFAULT_TEXT_EXTENSIONS);
+        this.binaryExtensions = factory.setProperty(String.class).convention(BinaryDetector.DEFAULT_BINARY_EXTENSIONS);
         this.target = factory.property(File.class);
+        // only the project folder is captured, so the provider can be stored in the configuration cache
+        File projectDir = layout.getProjectDirectory().getAsFile();
+        this.sourceOrder = this.sources.map(folders -> {
+            Path projectPath = projectDir.toPath();
+            List<String> paths = new ArrayList<>();
+            for (File folder : folders) {
+                paths.add(projectPath.relativize(projectPath.resolve(folder.toPath())).toString().replace(File.separatorChar, '/'));
+            }
+            return paths;
+        });
+        this.includes = factory.listProperty(String.class);
+        this.excludes = factory.listProperty(String.class);
+        // excluded files are neither snapshotted nor reported as changes
+        this.sourceDirectories = factory.fileCollection().from(this.includes.zip(this.excludes,
+                (includes, excludes) -> factory.fileCollection().from(this.sources).getAsFileTree().matching(patterns -> patterns.include(includes).exclude(excludes))));
 
-        this.incomingFiles = factory.fileCollection();
-        this.outcomingFiles = factory.fileCollection();
+        this.cacheService = factory.property(ParseCacheService.class);
+        // not mapped from the target, since Gradle doesn't allow querying a mapped output before the task has completed
+        this.infoFile = factory.property(File.class).convention(getProject().getProviders().provider(() -> new File(this.target.get().getParentFile(), getName() + ".json")));
     }
 
-    private static final class Entry {
-        private final String relPath;
-        private final Path inBase;
-        private final Path outBase;
+    /**
+     * @return if the preprocess task will remove commented preprocessor commands
+     */
+    @Input
+    public Property<Boolean> getRemoveComments() {
+        return removeComments;
+    }
 
-        public Entry(String relPath, Path inBase, Path outBase) {
-            this.relPath = relPath;
-            this.inBase = inBase;
-            this.outBase = outBase;
-        }
+    /**
+     * @return if imports of Java files, that are unused after preprocessing, are removed
+     * @see PreprocessExtension#organizeImports
+     */
+    @Input
+    public Property<Boolean> getOrganizeImports() {
+        return organizeImports;
     }
 
     /**
-     * @return if the preprocess task will remove commented preprocessor commands
+     * @return the maximum amount of files that are preprocessed at the same time
+     * @see PreprocessExtension#parallelism
      */
     @Internal
-    public Property<Boolean> getRemoveComments() {
-        return removeComments;
+    public Property<Integer> getParallelism() {
+        return parallelism;
     }
 
     /**
@@ -95,21 +173,78 @@ public class PreProcessTask extends DefaultTask {
     }
 
     /**
-     * @return the target folder where the preprocessed files will be written to
+     * @return if the remap keys are plain strings instead of regular expressions
+     * @see PreprocessExtension#remapLiteral
+     */
+    @Input
+    public Property<Boolean> getRemapLiteral() {
+        return remapLiteral;
+    }
+
+    /**
+     * @return if the remap keys are identifiers and qualified names, that are matched against the tokens of the code
+     * @see PreprocessExtension#remapTokens
      */
     @Input
+    public Property<Boolean> getRemapTokens() {
+        return remapTokens;
+    }
+
+    /**
+     * @return the target folder where the preprocessed files will be written to
+     */
+    @OutputDirectory
     public Property<File> getTarget() {
         return target;
     }
 
     /**
-     * @return the directories where the files, that shall be preprocessed, lie
+     * @return the directories where the files, that shall be preprocessed, lie. If several directories contain the same file, the first one wins,
+     * and the files of the others are neither read nor written.
      */
-    @InputFiles
+    @Internal
     public ListProperty<File> getSources() {
         return sources;
     }
 
+    /**
+     * @return glob patterns relative to the source folders, of which a file has to match any to be preprocessed. All files are included if empty
+     * @see PreprocessExtension#includes
+     */
+    @Input
+    public ListProperty<String> getIncludes() {
+        return includes;
+    }
+
+    /**
+     * @return glob patterns relative to the source folders, of files that are not preprocessed
+     * @see PreprocessExtension#excludes
+     */
+    @Input
+    public ListProperty<String> getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * @return the paths of the {@link #getSources() source folders} relative to the project, in order of priority. The file tree of the sources
+     * is tracked regardless of order, but the order decides which of several files with the same path is used
+     */
+    @Input
+    public Provider<List<String>> getSourceOrder() {
+        return sourceOrder;
+    }
+
+    /**
+     * @return the included contents of {@link #getSources()}, tracked file by file so only changed files have to be preprocessed again.
+     * Gradle reports the changes of {@link SkipWhenEmpty} inputs without {@link org.gradle.work.Incremental}, and rejects the combination.
+     */
+    @InputFiles
+    @SkipWhenEmpty
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getSourceDirectories() {
+        return sourceDirectories;
+    }
+
     /**
      * @return the vars that shall be used for the custom if-statements
      * @see PreprocessExtension#vars
@@ -129,19 +264,48 @@ public class PreProcessTask extends DefaultTask {
     }
 
     /**
-     * @return the preprocessed files
+     * @return the charset of all preprocessed text files
+     * @see PreprocessExtension#charset
      */
-    @OutputFiles
-    public FileCollection getOutcomingFiles() {
-        return this.outcomingFiles;
+    @Input
+    public Property<String> getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return extensions of files that are always preprocessed as text
+     * @see PreprocessExtension#textExtensions
+     */
+    @Input
+    public SetProperty<String> getTextExtensions() {
+        return textExtensions;
+    }
+
+    /**
+     * @return extensions of binary files, that are always copied
+     * @see PreprocessExtension#binaryExtensions
+     */
+    @Input
+    public SetProperty<String> getBinaryExtensions() {
+        return binaryExtensions;
     }
 
     /**
-     * @return the files to be preprocessed
+     * @return a JSON report of the last execution: the amount of files per outcome, bytes read and written, the time spent per phase,
+     * the evaluated directives and the slowest and largest files
+     * @see PerformanceReport
+     */
+    @OutputFile
+    public Property<File> getInfoFile() {
+        return infoFile;
+    }
+
+    /**
+     * @return the service keeping compiled conditions and remap tables between builds. Without it, every execution starts from scratch
      */
     @Internal
-    public FileCollection getIncomingFiles() {
-        return this.incomingFiles;
+    public Property<ParseCacheService> getCacheService() {
+        return cacheService;
     }
 
     @Internal
@@ -151,60 +315,302 @@ public class PreProcessTask extends DefaultTask {
     }
 
     /**
-     * The actual preprocess action
+     * The actual preprocess action. Changes to the vars, remap or keywords cause a full rebuild, otherwise only changed files are preprocessed.
+     * <p>
+     * If only the vars have changed, the full rebuild uses the {@link SkeletonIndex} of the previous execution: files whose active branches
+     * stay the same are not preprocessed again, their previous output is restored from the temporary directory instead.
+     *
+     * @param inputChanges the changed source files since the last execution
      */
     @TaskAction
-    public void preprocess() {
-        if (sources.get().isEmpty()) {
-            throw new ParseException("No sources defined or source folder is empty!");
+    public void preprocess(@NotNull InputChanges inputChanges) {
+        long startTime = System.nanoTime();
+        PerformanceReport report = new PerformanceReport(REPORT_TOP_FILES);
+        PreProcessor preProcessor = createPreProcessor(vars.get());
+        ReMapper reMapper = createReMapper();
+        ParseCache cache = getCache();
+        Path indexPath = new File(getTemporaryDir(), INDEX_FILE).toPath();
+        Path keptBasePath = new File(getTemporaryDir(), KEPT_OUTPUTS_DIR).toPath();
+        SkeletonIndex index = SkeletonIndex.load(indexPath, getIndexFingerprint());
+        boolean reuseOutputs = !inputChanges.isIncremental() && index.size() > 0;
+
+        File projectDir = layout.getProjectDirectory().getAsFile();
+        List<Path> inBasePaths = new ArrayList<>();
+        for (File srcFolder : sources.get()) {
+            final File srcFolderFile = srcFolder.isAbsolute() ? srcFolder : new File(projectDir, srcFolder.getPath());
+            inBasePaths.add(srcFolderFile.toPath());
         }
+        Path outBasePath = target.get().toPath();
+
+        getLogger().info("Source folders in use: {}", sources);
 
-        PreProcessor preProcessor = new PreProcessor(removeComments.get(), vars.get(), keywords.get());
-        ReMapper reMapper = new ReMapper(remap.get());
+        if (inputChanges.isIncremental()) {
+            long walkStart = System.nanoTime();
+            Set<String> changedPaths = new LinkedHashSet<>();
+            for (FileChange change : inputChanges.getFileChanges(sourceDirectories)) {
+                if (change.getFileType() != FileType.DIRECTORY) {
+                    changedPaths.add(change.getNormalizedPath());
+                }
+            }
+            report.addTime(PerformanceReport.Phase.WALK, System.nanoTime() - walkStart);
 
-        List<Entry> sourceFiles = new ArrayList<>();
+            ParallelExecutor.forEach(changedPaths, parallelism.get(), relPath -> {
+                File outFile = outBasePath.resolve(relPath).toFile();
+                File inFile = findSourceFile(inBasePaths, relPath);
+                try {
+                    boolean deleted = Files.deleteIfExists(outFile.toPath());
+                    // the file was removed from every source folder
+                    if (inFile == null) {
+                        index.remove(relPath);
+                        Files.deleteIfExists(keptBasePath.resolve(relPath));
+                        if (deleted) {
+                            report.addDeletedFile();
+                        }
+                        return;
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
 
-        for (File srcFolder : sources.get()) {
-            final File srcFolderFile = srcFolder.isAbsolute() ? srcFolder : new File(this.getProject().getProjectDir(), srcFolder.getPath());
-            Path inBasePath = srcFolderFile.toPath();
-            for (File file : this.getProject().fileTree(inBasePath)) {
-                Path relPath = inBasePath.relativize(file.toPath());
-                sourceFiles.add(new Entry(relPath.toString(), inBasePath, target.get().toPath()));
+                convertFile(preProcessor, reMapper, cache, report, index, keptBasePath, relPath, inFile, outFile);
+            });
+
+            getLogger().info("PreProcessed {} changed files incrementally", changedPaths.size());
+        } else {
+            long walkStart = System.nanoTime();
+            Map<String, Path> sourceFiles = resolveSources(inBasePaths, report);
+
+            // Gradle has already deleted the outputs, unless they were created by an older version of the task
+            fileSystem.delete(spec -> spec.delete(outBasePath.toFile()));
+            if (reuseOutputs) {
+                // only kept outputs, whose source is gone, are deleted
+                for (File file : objects.fileTree().from(keptBasePath)) {
+                    if (!sourceFiles.containsKey(keptBasePath.relativize(file.toPath()).toString().replace(File.separatorChar, '/'))) {
+                        fileSystem.delete(spec -> spec.delete(file));
+                        report.addDeletedFile();
+                    }
+                }
+                index.retainAll(sourceFiles.keySet());
+                report.addTime(PerformanceReport.Phase.WALK, System.nanoTime() - walkStart);
+
+                ParallelExecutor.forEach(sourceFiles.entrySet(), parallelism.get(), source -> {
+                    String relPath = source.getKey();
+                    File inFile = source.getValue().resolve(relPath).toFile();
+                    File outFile = outBasePath.resolve(relPath).toFile();
+
+                    long start = System.nanoTime();
+                    Path keptFile = keptBasePath.resolve(relPath);
+                    if (index.isUpToDate(relPath, inFile, keptFile.toFile(), preProcessor) && restoreOutput(keptFile, outFile.toPath())) {
+                        report.addFile(relPath, PreProcessor.FileResult.UNCHANGED, 0, 0, System.nanoTime() - start);
+                    } else {
+                        convertFile(preProcessor, reMapper, cache, report, index, keptBasePath, relPath, inFile, outFile);
+                    }
+                });
+            } else {
+                // the kept outputs don't belong to the index
+                fileSystem.delete(spec -> spec.delete(keptBasePath.toFile()));
+                report.addTime(PerformanceReport.Phase.WALK, System.nanoTime() - walkStart);
+
+                ParallelExecutor.forEach(sourceFiles.entrySet(), parallelism.get(), source -> {
+                    String relPath = source.getKey();
+                    convertFile(preProcessor, reMapper, cache, report, index, keptBasePath, relPath, source.getValue().resolve(relPath).toFile(), outBasePath.resolve(relPath).toFile());
+                });
             }
         }
 
-        getProject().getLogger().info("Source folders in use: {}", sources);
+        try {
+            // paths relative to the project, so the file can be restored from the build cache on any machine
+            Path projectPath = projectDir.toPath();
+            List<Path> relSources = new ArrayList<>();
+            for (Path inBasePath : inBasePaths) {
+                relSources.add(projectPath.relativize(inBasePath));
+            }
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("task", getPath());
+            info.put("target", projectPath.relativize(outBasePath).toString());
+            info.put("sources", relSources);
+            info.put("incremental", inputChanges.isIncremental());
+            info.put("reusedOutputs", reuseOutputs);
+            info.put("parallelism", parallelism.get());
+            index.write(indexPath);
+            Path infoFile = this.infoFile.get().toPath();
+            Files.createDirectories(infoFile.getParent());
+            Files.writeString(infoFile, report.toJson(info, System.nanoTime() - startTime), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
 
-        getProject().delete(target.get());
+        getLogger().info("PreProcessed Successfully, {} of {} files passed through unchanged", report.getFiles(PreProcessor.FileResult.PASSTHROUGH), report.getFiles());
+    }
 
-        Set<File> foundInFiles = new HashSet<>();
-        Set<File> foundOutFiles = new HashSet<>();
+    private static void convertFile(@NotNull PreProcessor preProcessor, @NotNull ReMapper reMapper, @Nullable ParseCache cache, @NotNull PerformanceReport report,
+                                    @NotNull SkeletonIndex index, @NotNull Path keptBasePath, @NotNull String relPath, @NotNull File inFile, @NotNull File outFile) {
+        long start = System.nanoTime();
+        SkeletonIndex.Recorder recorder = new SkeletonIndex.Recorder();
+        PreProcessor.FileResult result = preProcessor.convertFile(reMapper, inFile, outFile, report, recorder, cache);
+        long nanos = System.nanoTime() - start;
+        report.addFile(relPath, result, inFile.length(), result == PreProcessor.FileResult.UNCHANGED ? 0 : outFile.length(), nanos);
+        try {
+            Path keptFile = keptBasePath.resolve(relPath);
+            Files.deleteIfExists(keptFile);
+            index.put(relPath, inFile, outFile, recorder, preProcessor);
+            Files.createDirectories(keptFile.getParent());
+            link(outFile.toPath(), keptFile);
+        } catch (IOException e) {
+            index.remove(relPath);
+        }
+    }
 
-        // iterate backwards so files can overwrite each other
-        for (int i =  sourceFiles.size() - 1; i >= 0; i--) {
-            Entry entry = sourceFiles.get(i);
+    /**
+     * Restores an output, that was kept from a previous execution
+     *
+     * @return whether the output has been restored
+     */
+    private static boolean restoreOutput(@NotNull Path keptFile, @NotNull Path outFile) {
+        try {
+            Files.createDirectories(outFile.getParent());
+            link(keptFile, outFile);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Hard links the target to the source, or copies it with its attributes if the file system doesn't support that.
+     * Outputs are always deleted before they are written again, so a kept file never changes through its link.
+     */
+    private static void link(@NotNull Path source, @NotNull Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
 
-            File inFile = entry.inBase.resolve(entry.relPath).toFile();
-            File outFile = entry.outBase.resolve(entry.relPath).toFile();
+    /**
+     * @return the layout of the project, to resolve relative source folders
+     */
+    @Internal
+    protected ProjectLayout getLayout() {
+        return layout;
+    }
 
-            preProcessor.convertFile(reMapper, inFile, outFile);
+    /**
+     * @return to delete previous outputs
+     */
+    @Internal
+    protected FileSystemOperations getFileSystem() {
+        return fileSystem;
+    }
 
-            foundInFiles.add(inFile);
-            foundOutFiles.add(outFile);
+    /**
+     * @return the cache of the {@link #getCacheService() service} or null, if there is none
+     */
+    @Internal
+    @Nullable ParseCache getCache() {
+        return cacheService.isPresent() ? cacheService.get().getCache() : null;
+    }
+
+    /**
+     * @param vars the vars of the engine
+     * @return an engine with the settings of this task, from the cache if possible
+     */
+    @NotNull PreProcessor createPreProcessor(@NotNull Map<String, Object> vars) {
+        ParseCache cache = getCache();
+        Charset charset = Charset.forName(this.charset.get());
+        if (cache != null) {
+            return cache.getPreProcessor(removeComments.get(), vars, keywords.get(), textExtensions.get(), binaryExtensions.get(), charset, organizeImports.get());
+        }
+        return new PreProcessor(removeComments.get(), vars, keywords.get(), new BinaryDetector(textExtensions.get(), binaryExtensions.get(), charset), organizeImports.get());
+    }
+
+    /**
+     * @return the ReMapper with the settings of this task, from the cache if possible
+     */
+    @NotNull ReMapper createReMapper() {
+        ParseCache cache = getCache();
+        if (cache != null) {
+            return cache.getReMapper(remap.get(), remapMode(remapLiteral.get(), remapTokens.get()));
         }
+        return new ReMapper(remap.get(), remapMode(remapLiteral.get(), remapTokens.get()));
+    }
 
-        this.outcomingFiles.setFrom(foundOutFiles);
-        this.incomingFiles.setFrom(foundInFiles);
+    /**
+     * @return the remap mode for the options of the tasks, where token matching takes precedence
+     */
+    static @NotNull ReMapper.Mode remapMode(boolean literal, boolean tokens) {
+        return tokens ? ReMapper.Mode.TOKENS : literal ? ReMapper.Mode.LITERAL : ReMapper.Mode.REGEX;
+    }
+
+    /**
+     * @return the compiled {@link #getIncludes() includes} and {@link #getExcludes() excludes}
+     */
+    @NotNull SourceFilter createSourceFilter() {
+        return SourceFilter.of(includes.get(), excludes.get());
+    }
 
+    /**
+     * Finds the included files of all source folders. Of the files sharing a path, only the one of the first source folder is used,
+     * the others are listed as shadowed in the report.
+     *
+     * @param inBasePaths the source folders, in order of priority
+     * @param report      the report to list the shadowed files in
+     * @return by path relative to the source folders in sorted order, the source folder to use
+     */
+    @NotNull Map<String, Path> resolveSources(@NotNull List<Path> inBasePaths, @NotNull PerformanceReport report) {
+        Map<String, List<Path>> resolved;
         try {
-            Path infoFile = target.get().toPath().getParent().resolve(getName() + ".txt");
-            //noinspection ResultOfMethodCallIgnored
-            infoFile.getParent().toFile().mkdirs();
-            Files.write(infoFile, ("Target: " + getTarget().get().toPath() + "\nSources: " + getSources().get() + "\nTotal Files: " + sourceFiles.size()).getBytes());
+            resolved = createSourceFilter().resolve(inBasePaths, parallelism.get());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        getProject().getLogger().info("PreProcessed Successfully");
+        Path projectPath = layout.getProjectDirectory().getAsFile().toPath();
+        Map<String, Path> sourceFiles = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Path>> entry : resolved.entrySet()) {
+            List<Path> sources = entry.getValue();
+            sourceFiles.put(entry.getKey(), sources.get(0));
+            if (sources.size() > 1) {
+                List<String> shadowed = new ArrayList<>();
+                for (Path source : sources.subList(1, sources.size())) {
+                    shadowed.add(projectPath.relativize(source).toString());
+                }
+                report.addShadowedFile(entry.getKey(), projectPath.relativize(sources.get(0)).toString(), shadowed);
+            }
+        }
+        if (report.getShadowedFiles() > 0) {
+            getLogger().info("{} files are shadowed by a source folder of higher priority and are skipped", report.getShadowedFiles());
+        }
+        return sourceFiles;
+    }
+
+    /**
+     * @return a hash of all inputs, that change the output of a file besides the vars
+     */
+    private long getIndexFingerprint() {
+        Map<String, List<String>> keywordSettings = new TreeMap<>();
+        for (Map.Entry<String, Keywords> entry : keywords.get().entrySet()) {
+            Keywords value = entry.getValue();
+            keywordSettings.put(entry.getKey(), List.of(value.IF(), value.ELSEIF(), value.ELSE(), value.ENDIF(), value.EVAL()));
+        }
+        // the source folders decide which file wins, if several contain the same path
+        return SkeletonIndex.fingerprint(List.of(sources.get(), target.get(), removeComments.get(), organizeImports.get(), remap.get(), remapLiteral.get(), remapTokens.get(), keywordSettings, charset.get(),
+                new TreeSet<>(textExtensions.get()), new TreeSet<>(binaryExtensions.get())));
+    }
+
+    /**
+     * @param inBasePaths the source folders, in order of priority
+     * @param relPath     the path relative to the source folders
+     * @return the file from the first source folder that contains the path or null, if no source folder does
+     */
+    static @Nullable File findSourceFile(@NotNull List<Path> inBasePaths, @NotNull String relPath) {
+        for (Path inBasePath : inBasePaths) {
+            File file = inBasePath.resolve(relPath).toFile();
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
     }
 }
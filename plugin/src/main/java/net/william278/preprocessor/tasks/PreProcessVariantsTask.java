@@ -0,0 +1,216 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.tasks;
+
+import net.william278.preprocessor.data.PreprocessExtension;
+import net.william278.preprocessor.util.ParallelExecutor;
+import net.william278.preprocessor.util.PerformanceReport;
+import net.william278.preprocessor.util.PreProcessor;
+import net.william278.preprocessor.util.VariantConverter;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.FileType;
+import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.FileChange;
+import org.gradle.work.InputChanges;
+import org.jetbrains.annotations.NotNull;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Preprocesses the sources for several variants in one pass. Each file is read and parsed once and then evaluated for every variant,
+ * which is written to {@code <target>/<variant>}. Outputs that are identical for several variants are hard linked.
+ * <p>
+ * Like {@link PreProcessTask}, only changed files are preprocessed again, for every variant. Changes to the variants or any other setting cause a full rebuild.
+ */
+@CacheableTask
+public class PreProcessVariantsTask extends PreProcessTask {
+    private final MapProperty<String, Map<String, Object>> variants;
+
+    /**
+     * @param factory    some object factory to create the properties
+     * @param layout     the layout of the project, to resolve relative source folders
+     * @param fileSystem to delete previous outputs
+     */
+    @Inject
+    @SuppressWarnings("unchecked")
+    public PreProcessVariantsTask(final @NotNull ObjectFactory factory, final @NotNull ProjectLayout layout, final @NotNull FileSystemOperations fileSystem) {
+        super(factory, layout, fileSystem);
+        this.variants = factory.mapProperty(String.class, (Class<Map<String, Object>>) (Class<?>) Map.class);
+    }
+
+    /**
+     * @return the variants by name, each with the vars that override {@link #getVars()}
+     * @see PreprocessExtension#variants
+     */
+    @Input
+    public MapProperty<String, Map<String, Object>> getVariants() {
+        return variants;
+    }
+
+    /**
+     * @param name the name of a variant, which is used as folder name
+     * @throws IllegalArgumentException if the name is not a single plain path segment, so the variant would be written outside the target folder
+     */
+    static void checkVariantName(@NotNull String name) {
+        boolean valid = !name.isEmpty() && !name.equals(".") && !name.equals("..") && name.indexOf('/') < 0 && name.indexOf('\\') < 0;
+        if (valid) {
+            try {
+                Path path = Path.of(name);
+                valid = !path.isAbsolute() && path.getNameCount() == 1 && path.toString().equals(name);
+            } catch (InvalidPathException e) {
+                valid = false;
+            }
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid variant name '" + name + "', it must be a plain folder name");
+        }
+    }
+
+    @Internal
+    @Override
+    public String getDescription() {
+        return "PreProcess files for every variant.";
+    }
+
+    /**
+     * Preprocesses the changed files for every variant, or all files if the execution is not incremental
+     *
+     * @param inputChanges the changed source files since the last execution
+     */
+    @TaskAction
+    @Override
+    public void preprocess(@NotNull InputChanges inputChanges) {
+        long startTime = System.nanoTime();
+        PerformanceReport report = new PerformanceReport(REPORT_TOP_FILES);
+        Map<String, PreProcessor> engines = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Object>> variant : variants.get().entrySet()) {
+            checkVariantName(variant.getKey());
+            Map<String, Object> vars = new HashMap<>(getVars().get());
+            vars.putAll(variant.getValue());
+            engines.put(variant.getKey(), createPreProcessor(vars));
+        }
+        if (engines.isEmpty()) {
+            getLogger().warn("No variants configured for {}", getPath());
+            return;
+        }
+        VariantConverter converter = new VariantConverter(engines, createReMapper(), Charset.forName(getCharset().get()), getCache());
+
+        File projectDir = getLayout().getProjectDirectory().getAsFile();
+        List<Path> inBasePaths = new ArrayList<>();
+        for (File srcFolder : getSources().get()) {
+            final File srcFolderFile = srcFolder.isAbsolute() ? srcFolder : new File(projectDir, srcFolder.getPath());
+            inBasePaths.add(srcFolderFile.toPath());
+        }
+        Path outBasePath = getTarget().get().toPath();
+
+        if (inputChanges.isIncremental()) {
+            long walkStart = System.nanoTime();
+            Set<String> changedPaths = new LinkedHashSet<>();
+            for (FileChange change : inputChanges.getFileChanges(getSourceDirectories())) {
+                if (change.getFileType() != FileType.DIRECTORY) {
+                    changedPaths.add(change.getNormalizedPath());
+                }
+            }
+            report.addTime(PerformanceReport.Phase.WALK, System.nanoTime() - walkStart);
+
+            ParallelExecutor.forEach(changedPaths, getParallelism().get(), relPath -> {
+                Map<String, File> outFiles = outFiles(engines.keySet(), outBasePath, relPath);
+                File inFile = findSourceFile(inBasePaths, relPath);
+                if (inFile == null) {
+                    // the file was removed from every source folder
+                    boolean deleted = false;
+                    try {
+                        for (File outFile : outFiles.values()) {
+                            deleted |= Files.deleteIfExists(outFile.toPath());
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    if (deleted) {
+                        report.addDeletedFile();
+                    }
+                    return;
+                }
+                convertFile(converter, report, relPath, inFile, outFiles);
+            });
+        } else {
+            // only the first source folder containing a path is used, every variant is written exactly once per path
+            long walkStart = System.nanoTime();
+            Map<String, Path> sourceFiles = resolveSources(inBasePaths, report);
+
+            getFileSystem().delete(spec -> spec.delete(outBasePath.toFile()));
+            report.addTime(PerformanceReport.Phase.WALK, System.nanoTime() - walkStart);
+
+            ParallelExecutor.forEach(sourceFiles.entrySet(), getParallelism().get(), source -> {
+                String relPath = source.getKey();
+                convertFile(converter, report, relPath, source.getValue().resolve(relPath).toFile(), outFiles(engines.keySet(), outBasePath, relPath));
+            });
+        }
+
+        try {
+            Path projectPath = projectDir.toPath();
+            List<Path> relSources = new ArrayList<>();
+            for (Path inBasePath : inBasePaths) {
+                relSources.add(projectPath.relativize(inBasePath));
+            }
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("task", getPath());
+            info.put("target", projectPath.relativize(outBasePath).toString());
+            info.put("sources", relSources);
+            info.put("incremental", inputChanges.isIncremental());
+            info.put("variants", new ArrayList<>(engines.keySet()));
+            info.put("linkedFiles", converter.getLinkedFiles());
+            info.put("parallelism", getParallelism().get());
+            Path infoFile = getInfoFile().get().toPath();
+            Files.createDirectories(infoFile.getParent());
+            Files.writeString(infoFile, report.toJson(info, System.nanoTime() - startTime), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        getLogger().info("PreProcessed {} files for {} variants, {} outputs were linked", report.getFiles(), engines.size(), converter.getLinkedFiles());
+    }
+
+    private static void convertFile(@NotNull VariantConverter converter, @NotNull PerformanceReport report, @NotNull String relPath,
+                                    @NotNull File inFile, @NotNull Map<String, File> outFiles) {
+        long start = System.nanoTime();
+        PreProcessor.FileResult result = converter.convertFile(inFile, outFiles);
+        long nanos = System.nanoTime() - start;
+        report.addFile(relPath, result, inFile.length(), outFiles.values().iterator().next().length(), nanos);
+    }
+
+    /**
+     * @return the output file of every variant, by variant
+     */
+    private static @NotNull Map<String, File> outFiles(@NotNull Collection<String> variants, @NotNull Path outBasePath, @NotNull String relPath) {
+        Map<String, File> outFiles = new LinkedHashMap<>();
+        for (String variant : variants) {
+            outFiles.put(variant, outBasePath.resolve(variant).resolve(relPath).toFile());
+        }
+        return outFiles;
+    }
+}
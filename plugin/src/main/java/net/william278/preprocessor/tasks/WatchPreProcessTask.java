@@ -0,0 +1,139 @@
+/*
+ * This file is part of WiIIiam278/PreProcessor, licensed under CC BY-NC-SA 4.0 (the "License").
+ * The License applies under the Adapted Material clause of CC BY-NC-SA 4.0 (see Section 1 - Definitions)
+ * WiIIiam278/PreProcessor is a derivative work of ToCraft/PreProcessor (https://github.com/ToCraft/PreProcessor)
+ *
+ *  Copyright (c) To_Craft <development@tocraft.dev>
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ * You can obtain a copy of the license at: https://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package net.william278.preprocessor.tasks;
+
+import net.william278.preprocessor.data.PreprocessExtension;
+import net.william278.preprocessor.util.ParseCache;
+import net.william278.preprocessor.util.PreProcessor;
+import net.william278.preprocessor.util.SourceWatcher;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.jetbrains.annotations.NotNull;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Keeps the outputs of preprocess tasks up-to-date without going through Gradle for every change: the sources are watched
+ * and every saved file is preprocessed right away, until the build is cancelled.
+ * <p>
+ * The skeleton index and the {@link PreProcessTask#getInfoFile() info file} of the tasks are not updated. Since their outputs have changed,
+ * the next execution of a task preprocesses the touched files again and writes both.
+ */
+public class WatchPreProcessTask extends DefaultTask {
+    private final ListProperty<PreProcessSettings> targets;
+    private final Property<Long> debounce;
+    private final Property<Integer> parallelism;
+    private final Property<ParseCacheService> cacheService;
+    private final ProjectLayout layout;
+
+    /**
+     * @param factory some object factory to create the properties
+     * @param layout  the layout of the project, to resolve relative source folders
+     */
+    @Inject
+    public WatchPreProcessTask(final @NotNull ObjectFactory factory, final @NotNull ProjectLayout layout) {
+        this.layout = layout;
+        this.targets = factory.listProperty(PreProcessSettings.class);
+        this.debounce = factory.property(Long.class).convention(50L);
+        this.parallelism = factory.property(Integer.class).convention(Runtime.getRuntime().availableProcessors());
+        this.cacheService = factory.property(ParseCacheService.class);
+        doNotTrackState("Runs until the build is cancelled");
+    }
+
+    /**
+     * @return the settings of the watched preprocess tasks
+     */
+    @Internal
+    public ListProperty<PreProcessSettings> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return how many milliseconds no change must happen, before a batch of changes is preprocessed
+     */
+    @Internal
+    public Property<Long> getDebounce() {
+        return debounce;
+    }
+
+    /**
+     * @return the maximum amount of files that are preprocessed at the same time
+     * @see PreprocessExtension#parallelism
+     */
+    @Internal
+    public Property<Integer> getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the service keeping the engines warm
+     */
+    @Internal
+    public Property<ParseCacheService> getCacheService() {
+        return cacheService;
+    }
+
+    @Internal
+    @Override
+    public String getDescription() {
+        return "Watches the sources and preprocesses every change right away.";
+    }
+
+    /**
+     * Watches until the build is cancelled
+     *
+     * @throws IOException if the sources can't be watched
+     */
+    @TaskAction
+    public void watch() throws IOException {
+        ParseCache cache = cacheService.isPresent() ? cacheService.get().getCache() : null;
+        File projectDir = layout.getProjectDirectory().getAsFile();
+        try (SourceWatcher watcher = new SourceWatcher(debounce.get(), parallelism.get(), new SourceWatcher.Listener() {
+            @Override
+            public void converted(@NotNull Path outFile, PreProcessor.@NotNull FileResult result, long nanos) {
+                getLogger().lifecycle("PreProcessed {} ({}) in {} ms", outFile, result, String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0));
+            }
+
+            @Override
+            public void deleted(@NotNull Path outFile) {
+                getLogger().lifecycle("Deleted {}", outFile);
+            }
+
+            @Override
+            public void failed(@NotNull Path inFile, @NotNull RuntimeException error) {
+                getLogger().error("Failed to preprocess {}: {}", inFile, error.getMessage());
+            }
+        })) {
+            for (PreProcessSettings target : targets.get()) {
+                List<Path> sourceDirs = new ArrayList<>();
+                for (File srcFolder : target.getSources()) {
+                    sourceDirs.add((srcFolder.isAbsolute() ? srcFolder : new File(projectDir, srcFolder.getPath())).toPath());
+                }
+                watcher.watch(sourceDirs, target.getTarget().toPath(), target.createPreProcessor(cache), target.createReMapper(cache), target.createSourceFilter(), cache);
+            }
+            getLogger().lifecycle("Watching the sources of {} tasks, cancel the build to stop", targets.get().size());
+            watcher.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}